@@ -0,0 +1,140 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Signals that an execution, or a single stage of it, should stop. Stages poll the token
+ * between units of work, blocking calls are released by the callbacks registered on it,
+ * which interrupt the thread running the stage.
+ * <p>
+ * A callback never runs once its registration has been closed: closing a registration whose
+ * callback is running waits for the callback to finish. So a stage that closes its interrupt
+ * registration and then clears the interrupted flag hands its thread back to the pool without
+ * an interrupt arriving late for whatever the thread runs next.
+ */
+public class CancellationToken {
+
+    /**
+     * Handle of a registered callback, closing it removes the callback
+     */
+    @FunctionalInterface
+    public interface Registration extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private final List<CallbackRegistration> callbacks = new ArrayList<>();
+    private volatile String reason;
+
+    /**
+     * Cancel the token and run the registered callbacks, only the first call has any effect
+     * @param reason Why the work is cancelled
+     * @return true if this call cancelled the token
+     */
+    public boolean cancel(final String reason) {
+        final List<CallbackRegistration> toRun;
+        synchronized (callbacks) {
+            if (this.reason != null) {
+                return false;
+            }
+            this.reason = reason;
+            toRun = new ArrayList<>(callbacks);
+            callbacks.clear();
+        }
+        toRun.forEach(CallbackRegistration::run);
+        return true;
+    }
+
+    public boolean isCancelled() {
+        return reason != null;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * @throws CancellationException if the token has been cancelled
+     */
+    public void throwIfCancelled() {
+        if (reason != null) {
+            throw new CancellationException(reason);
+        }
+    }
+
+    /**
+     * Run the callback once the token is cancelled, right away if it already is
+     * @param callback The callback, it must not block
+     * @return The registration to remove the callback once it is no longer needed
+     */
+    public Registration onCancel(final Runnable callback) {
+        final CallbackRegistration registration = new CallbackRegistration(callback);
+        synchronized (callbacks) {
+            if (reason == null) {
+                callbacks.add(registration);
+                return registration;
+            }
+        }
+        callback.run();
+        return () -> { };
+    }
+
+    /**
+     * A registered callback, run at most once and never after it was closed
+     */
+    private final class CallbackRegistration implements Registration {
+
+        private final Runnable callback;
+        // Guarded by this registration's monitor
+        private boolean closed;
+        private Thread runner;
+
+        CallbackRegistration(final Runnable callback) {
+            this.callback = callback;
+        }
+
+        void run() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                runner = Thread.currentThread();
+            }
+            try {
+                callback.run();
+            } finally {
+                synchronized (this) {
+                    runner = null;
+                    closed = true;
+                    notifyAll();
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            synchronized (callbacks) {
+                callbacks.remove(this);
+            }
+            boolean interrupted = false;
+            synchronized (this) {
+                closed = true;
+                // The callback may close its own registration, e.g. by completing the stage it cancels
+                while (runner != null && runner != Thread.currentThread()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // Most likely the very callback being waited for, keep the flag for the caller
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+}
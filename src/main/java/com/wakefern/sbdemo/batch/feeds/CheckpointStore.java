@@ -0,0 +1,266 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+
+/**
+ * Keeps the stage checkpoints of executions on local disk, one directory per execution ID.
+ * Execution IDs are only unique within a database, and an in-memory database starts over
+ * on every restart while the work directory survives it. So every checkpoint records the feed
+ * and the time it was created in a manifest, and a checkpoint only counts as the one of an
+ * execution if it belongs to the execution's feed and was not created before the execution.
+ * <p>
+ * A resume first claims the checkpoint by renaming its directory, which only one of several
+ * concurrent resumes can do. Claims of resumes that never ran are released again, on startup
+ * for those of a previous run of the application.
+ * Checkpoints of failed executions are kept so the execution can be resumed, a resumed
+ * execution takes over the checkpoint directory of the execution it resumes. They are deleted
+ * with the history of their execution, and {@link #sweep} removes whatever is left in the
+ * work directory once it has not been touched for the work directory's time to live.
+ */
+@Component
+public class CheckpointStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(CheckpointStore.class);
+    private static final String MANIFEST = "checkpoint.properties";
+    private static final String CLAIMED_PREFIX = "claimed-";
+
+    private final Path workDir;
+    private final Path checkpointDir;
+
+    public CheckpointStore(@Value("${app.feeds.work-dir:${java.io.tmpdir}/sb-demo}") final Path workDir) {
+        this.workDir = workDir;
+        this.checkpointDir = workDir.resolve("checkpoints");
+        releaseAbandonedClaims();
+    }
+
+    /**
+     * Create an empty checkpoint for a new execution
+     */
+    public ExecutionCheckpoint open(final Long executionId, final Long feedId) {
+        final Path directory = directoryOf(executionId);
+        try {
+            deleteRecursively(directory);
+            Files.createDirectories(directory);
+            writeManifest(directory, feedId);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create checkpoint directory " + directory, e);
+        }
+        return new ExecutionCheckpoint(executionId, directory, null, Set.of());
+    }
+
+    /**
+     * Claim the checkpoint of a failed execution for a resume, before the resuming execution
+     * is queued
+     * @throws ExecutionNotResumableException if the execution has no checkpoint or another resume claimed it
+     */
+    public void claim(final FeedExecution execution) {
+        if (!exists(execution)) {
+            throw new ExecutionNotResumableException("Execution " + execution.getId()
+                    + " has no checkpoint to resume from, it may have been resumed already");
+        }
+        try {
+            Files.move(directoryOf(execution.getId()), claimedDirectoryOf(execution.getId()), StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException | FileAlreadyExistsException e) {
+            throw new ExecutionNotResumableException("Execution " + execution.getId() + " is already being resumed");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to claim checkpoint of execution " + execution.getId(), e);
+        }
+    }
+
+    /**
+     * Give back the claimed checkpoint of a failed execution whose resume did not run, so it
+     * can be resumed again
+     */
+    public void release(final Long executionId) {
+        final Path claimed = claimedDirectoryOf(executionId);
+        try {
+            if (Files.isDirectory(claimed)) {
+                Files.move(claimed, directoryOf(executionId), StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to release checkpoint of execution {}", executionId, e);
+        }
+    }
+
+    private void releaseAbandonedClaims() {
+        if (!Files.isDirectory(checkpointDir)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.list(checkpointDir)) {
+            for (Path claimed : paths.filter(path -> path.getFileName().toString().startsWith(CLAIMED_PREFIX)).toList()) {
+                release(Long.valueOf(claimed.getFileName().toString().substring(CLAIMED_PREFIX.length())));
+            }
+        } catch (IOException | NumberFormatException e) {
+            logger.warn("Failed to release abandoned checkpoint claims in {}", checkpointDir, e);
+        }
+    }
+
+    /**
+     * Take over the claimed checkpoint of a failed execution for the execution resuming it
+     * @param executionId The resuming execution
+     * @param feedId The feed of both executions
+     * @param resumedFromExecutionId The failed execution
+     * @param succeededStages Stages recorded as successful for the failed execution, only those are restored
+     */
+    public ExecutionCheckpoint resume(final Long executionId, final Long feedId, final Long resumedFromExecutionId,
+                                      final Set<String> succeededStages) {
+        final Path source = claimedDirectoryOf(resumedFromExecutionId);
+        final Path directory = directoryOf(executionId);
+        try {
+            deleteRecursively(directory);
+            if (Files.isDirectory(source)) {
+                Files.move(source, directory);
+            } else {
+                logger.warn("No checkpoint found for execution {}, execution {} starts from scratch",
+                        resumedFromExecutionId, executionId);
+                Files.createDirectories(directory);
+            }
+            writeManifest(directory, feedId);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to take over checkpoint of execution " + resumedFromExecutionId, e);
+        }
+        final Set<String> restorable = succeededStages.stream()
+                .filter(stage -> ExecutionCheckpoint.isMarkedComplete(directory, stage))
+                .collect(Collectors.toSet());
+        return new ExecutionCheckpoint(executionId, directory, resumedFromExecutionId, restorable);
+    }
+
+    /**
+     * Check whether there is a checkpoint of the execution, rather than one left behind by
+     * an execution with the same ID from before the database was recreated
+     */
+    public boolean exists(final FeedExecution execution) {
+        final Path manifest = directoryOf(execution.getId()).resolve(MANIFEST);
+        if (!Files.isRegularFile(manifest)) {
+            return false;
+        }
+        final Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+            return execution.getFeedId().toString().equals(properties.getProperty("feedId"))
+                    && !LocalDateTime.parse(properties.getProperty("created"))
+                            .isBefore(execution.getCreatedAt().truncatedTo(ChronoUnit.MILLIS));
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Ignoring checkpoint of execution {} with an unreadable manifest", execution.getId(), e);
+            return false;
+        }
+    }
+
+    private static void writeManifest(final Path directory, final Long feedId) throws IOException {
+        final Properties properties = new Properties();
+        properties.setProperty("feedId", feedId.toString());
+        properties.setProperty("created", LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS).toString());
+        try (Writer writer = Files.newBufferedWriter(directory.resolve(MANIFEST), StandardCharsets.UTF_8)) {
+            properties.store(writer, null);
+        }
+    }
+
+    /**
+     * Delete the checkpoint of an execution, failures are logged and otherwise ignored
+     */
+    public void discard(final Long executionId) {
+        try {
+            deleteRecursively(directoryOf(executionId));
+        } catch (IOException e) {
+            logger.warn("Failed to delete checkpoint of execution {}", executionId, e);
+        }
+    }
+
+    /**
+     * Delete the checkpoints and spool directories in the work directory that nothing was
+     * written to for the time to live, left behind by executions that were never resumed or
+     * by a crash. Failures are logged and the entry is tried again on the next sweep.
+     * @return The number of entries deleted
+     */
+    public int sweep(final Duration ttl) {
+        final FileTime cutoff = FileTime.from(Instant.now().minus(ttl));
+        int deleted = 0;
+        for (Path directory : List.of(checkpointDir, workDir)) {
+            if (!Files.isDirectory(directory)) {
+                continue;
+            }
+            final List<Path> entries;
+            try (Stream<Path> paths = Files.list(directory)) {
+                entries = paths.filter(path -> !path.equals(checkpointDir)).toList();
+            } catch (IOException e) {
+                logger.warn("Failed to list work directory {}", directory, e);
+                continue;
+            }
+            for (Path entry : entries) {
+                try {
+                    if (lastModified(entry).compareTo(cutoff) < 0) {
+                        deleteRecursively(entry);
+                        deleted++;
+                    }
+                } catch (IOException | UncheckedIOException e) {
+                    logger.warn("Failed to delete expired work directory entry {}", entry, e);
+                }
+            }
+        }
+        if (deleted > 0) {
+            logger.info("Deleted {} expired entries from work directory {}", deleted, workDir);
+        }
+        return deleted;
+    }
+
+    /**
+     * The most recent modification of a file or of anything in a directory, a running
+     * execution keeps writing to its checkpoint and spool files
+     */
+    private static FileTime lastModified(final Path entry) throws IOException {
+        try (Stream<Path> paths = Files.walk(entry)) {
+            return paths.map(path -> {
+                try {
+                    return Files.getLastModifiedTime(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }).max(Comparator.naturalOrder()).orElseThrow();
+        }
+    }
+
+    private Path directoryOf(final Long executionId) {
+        return checkpointDir.resolve("execution-" + executionId);
+    }
+
+    private Path claimedDirectoryOf(final Long executionId) {
+        return checkpointDir.resolve(CLAIMED_PREFIX + executionId);
+    }
+
+    private void deleteRecursively(final Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+}
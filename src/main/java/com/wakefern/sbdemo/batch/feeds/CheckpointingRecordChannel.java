@@ -0,0 +1,78 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Decorates a record channel so every batch sent through it is also appended to a checkpoint
+ * file. The file is complete once the producer completed the channel and can be read back
+ * with {@link SpoolRecordChannel#restore} when the execution is resumed.
+ * @param <T> The record type
+ */
+public class CheckpointingRecordChannel<T> implements RecordChannel<T> {
+
+    private final RecordChannel<T> delegate;
+    private final RecordCodec<T> codec;
+    private final BufferedWriter writer;
+
+    public CheckpointingRecordChannel(RecordChannel<T> delegate, Path file, RecordCodec<T> codec) throws IOException {
+        this.delegate = delegate;
+        this.codec = codec;
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void send(List<T> batch) throws IOException, InterruptedException {
+        // Only the producer thread writes, so the file needs no further synchronization
+        for (T record : batch) {
+            writer.write(codec.encode(record));
+            writer.newLine();
+        }
+        delegate.send(batch);
+    }
+
+    @Override
+    public void complete() throws IOException {
+        writer.close();
+        delegate.complete();
+    }
+
+    @Override
+    public List<T> receive() throws IOException, InterruptedException {
+        return delegate.receive();
+    }
+
+    @Override
+    public void abort() {
+        delegate.abort();
+    }
+
+    @Override
+    public long getSentCount() {
+        return delegate.getSentCount();
+    }
+
+    @Override
+    public long getSendWaitNanos() {
+        return delegate.getSendWaitNanos();
+    }
+
+    @Override
+    public long getReceiveWaitNanos() {
+        return delegate.getReceiveWaitNanos();
+    }
+
+    @Override
+    public void close() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            // The checkpoint is incomplete anyway unless the producer completed the channel
+        }
+        delegate.close();
+    }
+}
@@ -0,0 +1,144 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Histogram of durations in milliseconds with log-linear buckets, in the style of HdrHistogram.
+ * Durations below 64ms are counted exactly, above that every power of two is split into 32
+ * buckets, so a percentile is at most about 3% above the real value whatever the range of
+ * durations. Histograms merge by adding their buckets, which is what makes percentiles over
+ * time windows and over restarts possible.
+ * <p>
+ * Not thread-safe, callers synchronize on the histogram.
+ */
+public final class DurationHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+    private static final byte VERSION = 1;
+
+    private long[] counts = new long[LINEAR_LIMIT];
+    private long totalCount;
+    private long sum;
+    private long max;
+
+    public void record(final long durationMillis) {
+        final long value = Math.max(0, durationMillis);
+        final int index = indexOf(value);
+        if (index >= counts.length) {
+            counts = Arrays.copyOf(counts, index + SUB_BUCKETS);
+        }
+        counts[index]++;
+        totalCount++;
+        sum += value;
+        max = Math.max(max, value);
+    }
+
+    public void merge(final DurationHistogram other) {
+        if (other.counts.length > counts.length) {
+            counts = Arrays.copyOf(counts, other.counts.length);
+        }
+        for (int i = 0; i < other.counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return totalCount == 0 ? 0.0 : (double) sum / totalCount;
+    }
+
+    public boolean isEmpty() {
+        return totalCount == 0;
+    }
+
+    /**
+     * Get the duration at or below which the given percentage of durations fall, reported as
+     * the upper end of its bucket so it never understates the tail
+     * @param percentile Between 0 and 100
+     */
+    public long getValueAtPercentile(final double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Encode the histogram, only the buckets that have counts are stored
+     */
+    public byte[] encode() {
+        int used = 0;
+        for (long count : counts) {
+            if (count != 0) {
+                used++;
+            }
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(1 + 8 * 3 + 4 + used * (2 + 8));
+        buffer.put(VERSION).putLong(totalCount).putLong(sum).putLong(max).putInt(used);
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                buffer.putShort((short) i).putLong(counts[i]);
+            }
+        }
+        return buffer.array();
+    }
+
+    public static DurationHistogram decode(final byte[] data) {
+        final ByteBuffer buffer = ByteBuffer.wrap(data);
+        if (buffer.get() != VERSION) {
+            throw new IllegalArgumentException("Unsupported histogram format");
+        }
+        final DurationHistogram histogram = new DurationHistogram();
+        histogram.totalCount = buffer.getLong();
+        histogram.sum = buffer.getLong();
+        histogram.max = buffer.getLong();
+        final int used = buffer.getInt();
+        for (int i = 0; i < used; i++) {
+            final int index = Short.toUnsignedInt(buffer.getShort());
+            if (index >= histogram.counts.length) {
+                histogram.counts = Arrays.copyOf(histogram.counts, index + SUB_BUCKETS);
+            }
+            histogram.counts[index] = buffer.getLong();
+        }
+        return histogram;
+    }
+
+    static int indexOf(final long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    static long highestValueOf(final int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKETS - 1;
+        final long subBucket = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+}
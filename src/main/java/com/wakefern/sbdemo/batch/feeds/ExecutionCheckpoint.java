@@ -0,0 +1,87 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+
+/**
+ * Durable stage outputs of a single execution, kept in a directory of their own. A stage
+ * counts as checkpointed once its marker file exists, which is only written after the stage
+ * succeeded and flushed its outputs, so a crash halfway through never leaves a stage that
+ * looks complete.
+ */
+public class ExecutionCheckpoint {
+
+    private static final String MARKER_SUFFIX = ".done";
+
+    private final Long executionId;
+    private final Path directory;
+    private final Long resumedFromExecutionId;
+    private final Set<String> restorableStages;
+
+    ExecutionCheckpoint(final Long executionId, final Path directory, final Long resumedFromExecutionId,
+                        final Set<String> restorableStages) {
+        this.executionId = executionId;
+        this.directory = directory;
+        this.resumedFromExecutionId = resumedFromExecutionId;
+        this.restorableStages = Set.copyOf(restorableStages);
+    }
+
+    /**
+     * Resolve a stage output file inside the checkpoint directory
+     * @param fileName The file name
+     * @return The path of the file
+     */
+    public Path resolve(final String fileName) {
+        return directory.resolve(fileName);
+    }
+
+    /**
+     * Check whether the stage completed in the execution this one resumes, so it can be skipped
+     * @param stageName The stage name
+     * @return true if the stage's outputs can be restored from the checkpoint
+     */
+    public boolean isRestorable(final String stageName) {
+        return restorableStages.contains(stageName);
+    }
+
+    /**
+     * Record that the stage succeeded and its outputs in the checkpoint directory are complete
+     * @param stageName The stage name
+     * @throws IOException if the marker cannot be written
+     */
+    public void markStageComplete(final String stageName) throws IOException {
+        final Path marker = markerFile(directory, stageName);
+        final Path temp = directory.resolve(marker.getFileName() + ".tmp");
+        Files.writeString(temp, stageName, StandardCharsets.UTF_8);
+        Files.move(temp, marker, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static boolean isMarkedComplete(final Path directory, final String stageName) {
+        return Files.exists(markerFile(directory, stageName));
+    }
+
+    private static Path markerFile(final Path directory, final String stageName) {
+        return directory.resolve(stageName.replaceAll("[^A-Za-z0-9]+", "-").toLowerCase() + MARKER_SUFFIX);
+    }
+
+    public Long getExecutionId() {
+        return executionId;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public Long getResumedFromExecutionId() {
+        return resumedFromExecutionId;
+    }
+
+    public boolean isResumed() {
+        return resumedFromExecutionId != null;
+    }
+
+}
@@ -0,0 +1,47 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Position in a feed's execution history, newest first. History is paged by the start time
+ * and ID of the last execution of the previous page rather than by offset, so every page is a
+ * range scan of the {@code (feed_id, start_time, id)} index however deep it is, and executions
+ * started while paging do not shift the following pages.
+ * <p>
+ * Clients only see the opaque encoded form.
+ */
+public record ExecutionCursor(LocalDateTime startTime, Long id) {
+
+    /** Before the newest execution, Derby timestamps end with year 9999 */
+    public static final ExecutionCursor FIRST = new ExecutionCursor(LocalDateTime.of(9999, 12, 31, 23, 59, 59), Long.MAX_VALUE);
+
+    public static ExecutionCursor after(final ExecutionSummary execution) {
+        return new ExecutionCursor(execution.startTime(), execution.id());
+    }
+
+    public String encode() {
+        final String value = startTime + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param cursor An encoded cursor, or empty for the first page
+     */
+    public static ExecutionCursor decode(final String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return FIRST;
+        }
+        try {
+            final String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            final int separator = value.lastIndexOf('|');
+            return new ExecutionCursor(LocalDateTime.parse(value.substring(0, separator)),
+                    Long.valueOf(value.substring(separator + 1)));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException | DateTimeParseException e) {
+            throw new InvalidCursorException("Invalid cursor: " + cursor);
+        }
+    }
+
+}
@@ -0,0 +1,16 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import java.time.LocalDateTime;
+
+/**
+ * Conditions on the execution history of a feed, null for no condition
+ * @param from Earliest start time, inclusive
+ * @param to Latest start time, inclusive
+ * @param hasError Only executions with, or only executions without an error
+ */
+public record ExecutionHistoryFilter(FeedExecution.Status status, LocalDateTime from, LocalDateTime to,
+                                     Long minDurationMillis, Boolean hasError) {
+
+    public static final ExecutionHistoryFilter NONE = new ExecutionHistoryFilter(null, null, null, null, null);
+
+}
@@ -0,0 +1,159 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+
+/**
+ * Deletes execution history older than the retention period of its feed, the feed's
+ * {@code retentionDays} or {@code app.feeds.history.retention.default-days}.
+ * <p>
+ * The purge runs every {@code interval} in bounded batches: for up to {@code execution-batch-size}
+ * expired executions at a time it deletes their log rows in ID ranges of up to
+ * {@code batch-size} rows, then their log chunks, stages and the executions themselves. Every
+ * delete is its own short transaction, so the purge never holds locks for long and running
+ * executions keep writing their history while it runs. Queued and running executions are
+ * never purged.
+ * <p>
+ * Deleted rows are counted in {@code feeds.history.purged}, each run is timed in
+ * {@code feeds.history.purge} and logged with its rate in rows per second.
+ * <p>
+ * The checkpoints of purged executions are deleted with them. Independently of the history
+ * retention, every {@code interval} the work directory is swept of checkpoints and spool files
+ * untouched for {@code app.feeds.work-dir-ttl}.
+ */
+@Component
+public class ExecutionHistoryRetention {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionHistoryRetention.class);
+
+    private final FeedRepository feedRepository;
+    private final FeedExecutionHistoryService executionHistoryService;
+    private final CheckpointStore checkpointStore;
+    private final boolean enabled;
+    private final int defaultDays;
+    private final Duration interval;
+    private final int executionBatchSize;
+    private final int batchSize;
+    private final Duration workDirTtl;
+    private final Counter purged;
+    private final Timer purgeTimer;
+    private final ScheduledThreadPoolExecutor executor;
+
+    public ExecutionHistoryRetention(final FeedRepository feedRepository,
+                                     final FeedExecutionHistoryService executionHistoryService,
+                                     final CheckpointStore checkpointStore,
+                                     final MeterRegistry meterRegistry,
+                                     @Value("${app.feeds.history.retention.enabled:true}") final boolean enabled,
+                                     @Value("${app.feeds.history.retention.default-days:30}") final int defaultDays,
+                                     @Value("${app.feeds.history.retention.interval:PT1H}") final Duration interval,
+                                     @Value("${app.feeds.history.retention.execution-batch-size:100}") final int executionBatchSize,
+                                     @Value("${app.feeds.history.retention.batch-size:1000}") final int batchSize,
+                                     @Value("${app.feeds.work-dir-ttl:P7D}") final Duration workDirTtl) {
+        this.feedRepository = feedRepository;
+        this.executionHistoryService = executionHistoryService;
+        this.checkpointStore = checkpointStore;
+        this.enabled = enabled;
+        this.defaultDays = defaultDays;
+        this.interval = interval;
+        this.executionBatchSize = executionBatchSize;
+        this.batchSize = batchSize;
+        this.workDirTtl = workDirTtl;
+        this.purged = Counter.builder("feeds.history.purged")
+                .description("Execution history rows deleted by the retention job")
+                .register(meterRegistry);
+        this.purgeTimer = Timer.builder("feeds.history.purge")
+                .description("Duration of a run of the execution history retention job")
+                .register(meterRegistry);
+        this.executor = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("history-retention-"));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        executor.scheduleWithFixedDelay(this::sweepQuietly, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+        if (!enabled) {
+            logger.info("Execution history retention is disabled");
+            return;
+        }
+        executor.scheduleWithFixedDelay(this::purgeQuietly, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void purgeQuietly() {
+        try {
+            purge();
+        } catch (RuntimeException e) {
+            // Try again on the next run, a failing run must not cancel the schedule
+            logger.error("Execution history retention failed", e);
+        }
+    }
+
+    private void sweepQuietly() {
+        try {
+            checkpointStore.sweep(workDirTtl);
+        } catch (RuntimeException e) {
+            logger.error("Work directory sweep failed", e);
+        }
+    }
+
+    /**
+     * Purge the expired history of all feeds
+     * @return The number of rows deleted
+     */
+    public long purge() {
+        final long start = System.nanoTime();
+        long executions = 0;
+        long rows = 0;
+        for (Feed feed : feedRepository.findAll()) {
+            final int days = feed.getRetentionDays() != null ? feed.getRetentionDays() : defaultDays;
+            final LocalDateTime cutoff = LocalDateTime.now().minusDays(days);
+            List<Long> executionIds;
+            while (!Thread.currentThread().isInterrupted()
+                    && !(executionIds = executionHistoryService.findExpiredExecutionIds(feed.getId(), cutoff, executionBatchSize)).isEmpty()) {
+                rows += purgeExecutions(executionIds);
+                executions += executionIds.size();
+            }
+        }
+        final long elapsed = System.nanoTime() - start;
+        purgeTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        if (rows > 0) {
+            logger.info("Purged {} expired executions, {} rows in {}ms ({} rows/s)", executions, rows,
+                    elapsed / 1_000_000, (long) (rows / (elapsed / 1e9)));
+        }
+        return rows;
+    }
+
+    private long purgeExecutions(final List<Long> executionIds) {
+        long rows = 0;
+        int deleted;
+        // Logs first, they are most of the rows and reference the stages and executions
+        while ((deleted = executionHistoryService.purgeLogRows(executionIds, batchSize)) > 0) {
+            rows += deleted;
+            purged.increment(deleted);
+        }
+        deleted = executionHistoryService.purgeExecutions(executionIds);
+        purged.increment(deleted);
+        // Failed executions kept theirs to be resumed, which they no longer can be
+        executionIds.forEach(checkpointStore::discard);
+        return rows + deleted;
+    }
+
+}
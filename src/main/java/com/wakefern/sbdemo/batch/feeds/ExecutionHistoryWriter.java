@@ -0,0 +1,423 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+
+/**
+ * Writes execution history in the background, so workers do not wait on the database for a
+ * best-effort write.
+ * <p>
+ * Executions tracked while they run are written incrementally: every {@code flush-interval} the
+ * writer inserts the records of new stages, updates the stages and the execution that changed
+ * status and appends the log lines logged since the previous flush. Log lines that have been
+ * written are dropped from memory except for the last {@code live-log-lines}, so a long run does
+ * not keep its whole log in heap, and a crash only loses the last interval.
+ * <p>
+ * Finished executions are queued and written right away, up to {@code max-batch} executions per
+ * transaction together with the increments of the running ones. If a transaction fails, its
+ * writes are retried one execution per transaction, so one bad execution does not hold up the
+ * others. The final write of an execution that still fails is retried on the next flushes, up to
+ * {@value #FINAL_WRITE_ATTEMPTS} attempts, after which the execution is only marked as failed,
+ * so its record does not stay in progress. When the queue is full the finished execution is written on the calling thread
+ * instead, which slows down workers rather than dropping history. On shutdown the queue is
+ * drained before the database goes away.
+ * <p>
+ * The queue depth is published as {@code feeds.history.queue.depth}, the time from queueing a
+ * finished execution to committing it as {@code feeds.history.lag}.
+ */
+@Service
+public class ExecutionHistoryWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionHistoryWriter.class);
+    private static final int FINAL_WRITE_ATTEMPTS = 3;
+
+    private final FeedExecutionHistoryService executionHistoryService;
+    private final FeedLatencyService latencyService;
+    private final TransactionTemplate transactionTemplate;
+    private final BlockingQueue<PendingWrite> queue;
+    // Final writes that failed, retried with the next flush
+    private final Queue<PendingWrite> retries = new ConcurrentLinkedQueue<>();
+    // Running executions written incrementally, keyed by execution ID
+    private final Map<Long, TrackedExecution> tracked = new ConcurrentHashMap<>();
+    private final int maxBatch;
+    private final long flushIntervalNanos;
+    private final int liveLogLines;
+    private final Duration shutdownTimeout;
+    // Before any execution of this run of the application was accepted, nothing can be submitted without the writer
+    private final LocalDateTime startedAt = LocalDateTime.now();
+    private final Timer lag;
+    private final Counter failed;
+    private final Thread writer;
+    // Held around every write, so a worker writing its own execution never overlaps the writer thread
+    private final Object writeLock = new Object();
+    private volatile boolean running = true;
+
+    public ExecutionHistoryWriter(final FeedExecutionHistoryService executionHistoryService,
+                                  final FeedLatencyService latencyService,
+                                  final PlatformTransactionManager transactionManager,
+                                  final MeterRegistry meterRegistry,
+                                  @Value("${app.feeds.history.writer.queue-capacity:1000}") final int queueCapacity,
+                                  @Value("${app.feeds.history.writer.max-batch:20}") final int maxBatch,
+                                  @Value("${app.feeds.history.writer.flush-interval:PT1S}") final Duration flushInterval,
+                                  @Value("${app.feeds.history.live-log-lines:1000}") final int liveLogLines,
+                                  @Value("${app.feeds.history.writer.shutdown-timeout:PT30S}") final Duration shutdownTimeout) {
+        this.executionHistoryService = executionHistoryService;
+        this.latencyService = latencyService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxBatch = maxBatch;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.liveLogLines = liveLogLines;
+        this.shutdownTimeout = shutdownTimeout;
+        this.lag = Timer.builder("feeds.history.lag")
+                .description("Time from an execution finishing to its history being committed")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.failed = Counter.builder("feeds.history.failed")
+                .description("Executions whose history could not be written")
+                .register(meterRegistry);
+        meterRegistry.gauge("feeds.history.queue.depth", queue, BlockingQueue::size);
+        this.writer = new CustomizableThreadFactory("history-writer-").newThread(this::writeLoop);
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Executions still marked as queued or running were cut short by the previous shutdown.
+     * By the time the application is ready the scheduler and HTTP requests may already have
+     * submitted executions, only those created before this writer are failed.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void failAbandonedExecutions() {
+        final Integer abandoned = transactionTemplate.execute(status -> executionHistoryService.failAbandonedExecutions(startedAt));
+        if (abandoned != null && abandoned > 0) {
+            logger.warn("Marked {} executions interrupted by the last shutdown as failed", abandoned);
+        }
+    }
+
+    /**
+     * Start writing the history of an execution while it runs. Executions without a record
+     * are only written once they have finished.
+     */
+    public void track(final Long feedId, final String parameters, final ExecutionResult result) {
+        if (result.getExecutionId() != null && running) {
+            tracked.put(result.getExecutionId(), new TrackedExecution(feedId, parameters, result));
+        }
+    }
+
+    /**
+     * Queue the history of a finished execution to be written. The result must not change anymore.
+     */
+    public void write(final Long feedId, final String parameters, final ExecutionResult result) {
+        final PendingWrite pending = new PendingWrite(feedId, parameters, result, System.nanoTime());
+        if (!running || !queue.offer(pending)) {
+            // Full or shutting down, write it ourselves rather than lose it
+            synchronized (writeLock) {
+                writeEach(List.of(finish(pending)));
+            }
+        }
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    private void writeLoop() {
+        final List<PendingWrite> finished = new ArrayList<>(maxBatch);
+        long nextFlush = System.nanoTime() + flushIntervalNanos;
+        while (running || !queue.isEmpty() || !retries.isEmpty()) {
+            try {
+                final PendingWrite first = queue.poll(Math.max(0, nextFlush - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (first != null) {
+                    finished.add(first);
+                    queue.drainTo(finished, maxBatch - 1);
+                }
+                final List<HistoryWrite> writes = new ArrayList<>();
+                for (PendingWrite pending : finished) {
+                    writes.add(finish(pending));
+                }
+                if (System.nanoTime() >= nextFlush) {
+                    PendingWrite retry;
+                    while ((retry = retries.poll()) != null) {
+                        writes.add(finish(retry));
+                    }
+                    writes.addAll(tracked.values());
+                    nextFlush = System.nanoTime() + flushIntervalNanos;
+                }
+                if (!writes.isEmpty()) {
+                    synchronized (writeLock) {
+                        writeBatch(writes);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                logger.error("Execution history writer failed", e);
+            } finally {
+                finished.clear();
+            }
+        }
+    }
+
+    /**
+     * The final write of a finished execution, the rest of its history if it was tracked
+     */
+    private HistoryWrite finish(final PendingWrite pending) {
+        final TrackedExecution execution = pending.result().getExecutionId() != null
+                ? tracked.remove(pending.result().getExecutionId())
+                : null;
+        if (execution == null) {
+            return pending;
+        }
+        return new HistoryWrite() {
+            @Override
+            public void write() {
+                execution.write(true);
+            }
+
+            @Override
+            public void committed() {
+                execution.committed();
+                pending.committed();
+            }
+
+            @Override
+            public void failed(final RuntimeException e) {
+                // Tracked again before the retry is queued, so the retry writes the rest and not everything
+                tracked.put(pending.result().getExecutionId(), execution);
+                if (!pending.retry(e)) {
+                    tracked.remove(pending.result().getExecutionId());
+                }
+            }
+        };
+    }
+
+    private void writeBatch(final List<HistoryWrite> writes) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> writes.forEach(HistoryWrite::write));
+            writes.forEach(HistoryWrite::committed);
+        } catch (RuntimeException e) {
+            if (writes.size() == 1) {
+                writes.get(0).failed(e);
+                return;
+            }
+            logger.warn("Failed to write the history of {} executions at once, writing them one by one: {}",
+                    writes.size(), e.getMessage());
+            writeEach(writes);
+        }
+    }
+
+    private void writeEach(final List<HistoryWrite> writes) {
+        for (HistoryWrite write : writes) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> write.write());
+                write.committed();
+            } catch (RuntimeException e) {
+                write.failed(e);
+            }
+        }
+    }
+
+    /**
+     * Stop taking new writes and wait for the queued ones to be committed
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        writer.join(shutdownTimeout.toMillis());
+        if (writer.isAlive()) {
+            logger.warn("Execution history writer did not finish within {}, {} executions were not saved",
+                    shutdownTimeout, queue.size());
+            writer.interrupt();
+        }
+    }
+
+    /**
+     * Database work done in a writer transaction. {@link #write()} may run again in a new
+     * transaction if the first one rolled back, so it must only change state in {@link #committed()}.
+     */
+    private interface HistoryWrite {
+
+        void write();
+
+        void committed();
+
+        void failed(RuntimeException e);
+
+    }
+
+    private final class PendingWrite implements HistoryWrite {
+
+        private final Long feedId;
+        private final String parameters;
+        private final ExecutionResult result;
+        private final long queuedNanos;
+        private int attempts;
+
+        PendingWrite(final Long feedId, final String parameters, final ExecutionResult result, final long queuedNanos) {
+            this.feedId = feedId;
+            this.parameters = parameters;
+            this.result = result;
+            this.queuedNanos = queuedNanos;
+        }
+
+        ExecutionResult result() {
+            return result;
+        }
+
+        @Override
+        public void write() {
+            executionHistoryService.persistExecution(feedId, parameters, result);
+        }
+
+        @Override
+        public void committed() {
+            lag.record(System.nanoTime() - queuedNanos, TimeUnit.NANOSECONDS);
+            // Only once committed, a write retried after a rollback must not count twice
+            latencyService.record(feedId, result);
+        }
+
+        @Override
+        public void failed(final RuntimeException e) {
+            retry(e);
+        }
+
+        /**
+         * Queue the write again, or give up and mark the execution as failed
+         * @return true if the write is retried
+         */
+        boolean retry(final RuntimeException e) {
+            if (++attempts < FINAL_WRITE_ATTEMPTS && writer.isAlive()) {
+                logger.warn("Failed to save execution history for execution {} of feed {}, retrying: {}",
+                        result.getExecutionId(), feedId, e.getMessage());
+                retries.add(this);
+                return true;
+            }
+            failed.increment();
+            logger.error("Failed to save execution history for execution {} of feed {}",
+                    result.getExecutionId(), feedId, e);
+            if (result.getExecutionId() != null) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> executionHistoryService.failExecution(
+                            result.getExecutionId(), "Execution history could not be saved: " + e.getMessage()));
+                } catch (RuntimeException statusFailure) {
+                    logger.error("Failed to mark execution {} as failed", result.getExecutionId(), statusFailure);
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A running execution and how much of it has been written. It is only written while holding
+     * the write lock, so its state needs no further locking.
+     */
+    private final class TrackedExecution implements HistoryWrite {
+
+        private final Long feedId;
+        private final String parameters;
+        private final ExecutionResult result;
+        // Written so far
+        private final List<Long> stageIds = new ArrayList<>();
+        private final List<ExecutionStage.Status> stageStatuses = new ArrayList<>();
+        private ExecutionResult.Status status;
+        private int logPosition;
+        // Written by the current transaction, taken over once it commits
+        private List<Long> pendingStageIds;
+        private List<ExecutionStage.Status> pendingStageStatuses;
+        private ExecutionResult.Status pendingStatus;
+        private int pendingLogPosition;
+
+        TrackedExecution(final Long feedId, final String parameters, final ExecutionResult result) {
+            this.feedId = feedId;
+            this.parameters = parameters;
+            this.result = result;
+        }
+
+        @Override
+        public void write() {
+            write(false);
+        }
+
+        /**
+         * Write what changed since the last commit
+         * @param last Whether the execution has finished, which rewrites its final timings
+         */
+        void write(final boolean last) {
+            pendingStageIds = new ArrayList<>(stageIds);
+            pendingStageStatuses = new ArrayList<>(stageStatuses);
+            final Long executionId = result.getExecutionId();
+
+            // Read the status first, stages and logs written below are at least as recent
+            final ExecutionResult.Status currentStatus = result.getStatus();
+            if (last || currentStatus != status) {
+                executionHistoryService.updateExecution(feedId, parameters, result);
+            }
+            pendingStatus = currentStatus;
+
+            final List<ExecutionStage> stages = result.getStages();
+            for (int i = 0; i < stages.size(); i++) {
+                final ExecutionStage stage = stages.get(i);
+                final ExecutionStage.Status stageStatus = stage.getStatus();
+                if (i >= pendingStageIds.size()) {
+                    pendingStageIds.add(executionHistoryService.insertStage(executionId, stage));
+                    pendingStageStatuses.add(stageStatus);
+                } else if (last || pendingStageStatuses.get(i) != stageStatus) {
+                    executionHistoryService.updateStage(pendingStageIds.get(i), stage);
+                    pendingStageStatuses.set(i, stageStatus);
+                }
+            }
+
+            final ExecutionLog.Slice slice = result.getLog().slice(logPosition);
+            if (!slice.events().isEmpty()) {
+                executionHistoryService.appendLogs(executionId, slice.events(), pendingStageIds);
+            }
+            pendingLogPosition = slice.from() + slice.events().size();
+        }
+
+        @Override
+        public void committed() {
+            stageIds.clear();
+            stageIds.addAll(pendingStageIds);
+            stageStatuses.clear();
+            stageStatuses.addAll(pendingStageStatuses);
+            status = pendingStatus;
+            logPosition = pendingLogPosition;
+            // Written lines only stay in memory for the execute page's tail of the log
+            final ExecutionLog log = result.getLog();
+            log.discardBefore(Math.min(logPosition, log.size() - liveLogLines));
+        }
+
+        @Override
+        public void failed(final RuntimeException e) {
+            // Retried with the next flush, the final write of a finished execution counts as failed
+            logger.warn("Failed to update execution history of running execution {}: {}",
+                    result.getExecutionId(), e.getMessage());
+        }
+    }
+
+}
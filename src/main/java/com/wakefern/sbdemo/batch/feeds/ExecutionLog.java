@@ -0,0 +1,156 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Append-only buffer of the log events of an execution. Appends only store the event,
+ * formatting is left to the readers, which render a snapshot when they need text. Stages
+ * log into the log of their execution, every event is tagged with the index of the stage
+ * that logged it, so the log of a stage is a view of its events rather than a copy.
+ * Safe for concurrent appends from the stages of an execution and reads by status pollers.
+ * <p>
+ * Events that have been written to the execution history can be discarded from the head of
+ * the buffer, positions keep counting every event ever appended.
+ */
+public class ExecutionLog {
+
+    /**
+     * Events read from a position in the log, {@code from} is the position of the first event
+     */
+    public record Slice(int from, List<LogEvent> events) {
+    }
+
+    private LogEvent[] events = new LogEvent[64];
+    // Events held in the buffer, and events discarded before them
+    private int size;
+    private int discarded;
+    // Told about every append, outside the lock
+    private final Runnable onAppend;
+
+    public ExecutionLog() {
+        this(() -> { });
+    }
+
+    public ExecutionLog(Runnable onAppend) {
+        this.onAppend = onAppend;
+    }
+
+    public void append(LogEvent.Level level, int stageIndex, String template, Object... args) {
+        append(new LogEvent(level, stageIndex, template, args));
+    }
+
+    public void append(LogEvent event) {
+        synchronized (this) {
+            if (size == events.length) {
+                events = Arrays.copyOf(events, size * 2);
+            }
+            events[size++] = event;
+        }
+        onAppend.run();
+    }
+
+    /**
+     * Get the number of events ever appended, including discarded ones
+     */
+    public synchronized int size() {
+        return discarded + size;
+    }
+
+    public synchronized boolean isEmpty() {
+        return discarded + size == 0;
+    }
+
+    public synchronized int getDiscarded() {
+        return discarded;
+    }
+
+    /**
+     * Get the events held in the buffer, in order
+     */
+    public synchronized List<LogEvent> snapshot() {
+        return List.of(Arrays.copyOf(events, size));
+    }
+
+    /**
+     * Get the events appended since a position in the log, for readers following it. Readers
+     * that fell behind the discarded events continue with the oldest event still held.
+     * @param from The number of events the reader has already seen
+     */
+    public synchronized Slice slice(int from) {
+        int start = Math.max(from, discarded);
+        if (start >= discarded + size) {
+            return new Slice(start, List.of());
+        }
+        return new Slice(start, List.of(Arrays.copyOfRange(events, start - discarded, size)));
+    }
+
+    /**
+     * Drop the events before a position, once they have been written elsewhere
+     * @param position The position of the first event to keep
+     */
+    public synchronized void discardBefore(int position) {
+        int count = Math.min(position - discarded, size);
+        if (count <= 0) {
+            return;
+        }
+        size -= count;
+        discarded += count;
+        LogEvent[] kept = new LogEvent[Math.max(64, Integer.highestOneBit(Math.max(1, size)) * 2)];
+        System.arraycopy(events, count, kept, 0, size);
+        events = kept;
+    }
+
+    /**
+     * Get the events a stage appended so far, in order
+     * @param stageIndex The index of the stage in its execution
+     */
+    public synchronized List<LogEvent> snapshot(int stageIndex) {
+        List<LogEvent> stageEvents = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (events[i].getStageIndex() == stageIndex) {
+                stageEvents.add(events[i]);
+            }
+        }
+        return stageEvents;
+    }
+
+    /**
+     * Get the events formatted for display, preceded by a note on the discarded events
+     */
+    public List<String> render() {
+        int skipped;
+        List<LogEvent> held;
+        synchronized (this) {
+            skipped = discarded;
+            held = snapshot();
+        }
+        List<String> lines = format(held);
+        if (skipped > 0) {
+            lines.add(0, "... " + skipped + " earlier lines are in the execution history");
+        }
+        return lines;
+    }
+
+    public List<String> render(int stageIndex) {
+        return format(snapshot(stageIndex));
+    }
+
+    public String renderAsString() {
+        return String.join("\n", render());
+    }
+
+    public String renderAsString(int stageIndex) {
+        return String.join("\n", render(stageIndex));
+    }
+
+    private static List<String> format(List<LogEvent> events) {
+        List<String> lines = new ArrayList<>(events.size());
+        for (LogEvent event : events) {
+            lines.add(event.format());
+        }
+        return lines;
+    }
+
+}
@@ -0,0 +1,14 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+
+@ResponseStatus(HttpStatus.CONFLICT)
+public class ExecutionNotResumableException extends RuntimeException {
+
+    public ExecutionNotResumableException(final String message) {
+        super(message);
+    }
+
+}
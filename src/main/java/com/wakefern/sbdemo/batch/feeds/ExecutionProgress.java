@@ -0,0 +1,118 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stage counters of an execution, updated by the stages as they change status, so progress
+ * can be read in constant time without walking the stage list. The number of stages in each
+ * status is packed into a single long, which keeps the counters consistent with each other
+ * without locking: a reader never sees a stage counted in both its old and its new status.
+ */
+public final class ExecutionProgress {
+
+    private static final int BITS = 12;
+    private static final long MASK = (1L << BITS) - 1;
+    /** Most stages an execution can have, five statuses of 12 bits fit in a long */
+    public static final int MAX_STAGES = (int) MASK;
+
+    private final AtomicLong counts = new AtomicLong();
+    private final AtomicLong finishedStagesMillis = new AtomicLong();
+    private final AtomicInteger timedStages = new AtomicInteger();
+
+    /**
+     * Counts of the stages of an execution in each status, read at one instant
+     */
+    public record Counts(int pending, int inProgress, int succeeded, int failed, int cancelled) {
+
+        public int total() {
+            return pending + inProgress + succeeded + failed + cancelled;
+        }
+
+        public int completed() {
+            return succeeded + failed;
+        }
+
+        public double completionPercentage() {
+            int total = total();
+            return total == 0 ? 0.0 : completed() * 100.0 / total;
+        }
+    }
+
+    void stageAdded() {
+        counts.updateAndGet(current -> {
+            if (total(current) >= MAX_STAGES) {
+                throw new IllegalStateException("An execution can have at most " + MAX_STAGES + " stages");
+            }
+            return current + unit(ExecutionStage.Status.PENDING);
+        });
+    }
+
+    /**
+     * Move a stage from one status to another
+     * @param durationMillis The duration of the stage, accounted when it reaches a final status
+     */
+    void stageTransitioned(ExecutionStage.Status from, ExecutionStage.Status to, long durationMillis) {
+        counts.addAndGet(unit(to) - unit(from));
+        if (!isFinal(from) && isFinal(to)) {
+            finishedStagesMillis.addAndGet(durationMillis);
+            if (durationMillis > 0) {
+                timedStages.incrementAndGet();
+            }
+        }
+    }
+
+    public Counts getCounts() {
+        long current = counts.get();
+        return new Counts(count(current, ExecutionStage.Status.PENDING),
+                count(current, ExecutionStage.Status.IN_PROGRESS),
+                count(current, ExecutionStage.Status.SUCCESS),
+                count(current, ExecutionStage.Status.FAILED),
+                count(current, ExecutionStage.Status.CANCELLED));
+    }
+
+    public int getCount(ExecutionStage.Status status) {
+        return count(counts.get(), status);
+    }
+
+    public int getTotal() {
+        return total(counts.get());
+    }
+
+    /**
+     * Summed duration of the stages that have finished
+     */
+    public long getFinishedStagesMillis() {
+        return finishedStagesMillis.get();
+    }
+
+    /**
+     * Number of finished stages that took any measurable time
+     */
+    public int getTimedStages() {
+        return timedStages.get();
+    }
+
+    private static boolean isFinal(ExecutionStage.Status status) {
+        return status == ExecutionStage.Status.SUCCESS
+                || status == ExecutionStage.Status.FAILED
+                || status == ExecutionStage.Status.CANCELLED;
+    }
+
+    private static long unit(ExecutionStage.Status status) {
+        return 1L << (status.ordinal() * BITS);
+    }
+
+    private static int count(long packed, ExecutionStage.Status status) {
+        return (int) ((packed >>> (status.ordinal() * BITS)) & MASK);
+    }
+
+    private static int total(long packed) {
+        int total = 0;
+        for (ExecutionStage.Status status : ExecutionStage.Status.values()) {
+            total += count(packed, status);
+        }
+        return total;
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Getter;
+import lombok.Setter;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+@Getter
+@Setter
+@Schema(description = "Progress of a queued or running execution, read from its stage counters")
+public class ExecutionProgressDTO {
+
+    @Schema(description = "ID of the execution", example = "10001")
+    private Long executionId;
+
+    @Schema(description = "ID of the executed feed", example = "1")
+    private Long feedId;
+
+    @Schema(description = "Execution status", example = "IN_PROGRESS", allowableValues = {"QUEUED", "IN_PROGRESS"})
+    private String status;
+
+    @Schema(description = "Name of the stage started most recently", example = "Data Processing")
+    private String currentStage;
+
+    @Schema(description = "Number of stages of the execution", example = "5")
+    private Integer totalStages;
+
+    @Schema(description = "Number of stages that succeeded or failed", example = "2")
+    private Integer completedStages;
+
+    @Schema(description = "Number of stages running", example = "2")
+    private Integer inProgressStages;
+
+    @Schema(description = "Number of stages that failed", example = "0")
+    private Integer failedStages;
+
+    @Schema(description = "Percentage of stages that succeeded or failed", example = "40.0")
+    private Double completionPercentage;
+
+    @Schema(description = "Execution start time")
+    private LocalDateTime startTime;
+
+    @Schema(description = "Time since the execution started in milliseconds", example = "1500")
+    private Long elapsedMillis;
+
+    public static ExecutionProgressDTO fromExecutionResult(ExecutionResult result) {
+        ExecutionProgress.Counts counts = result.getProgress().getCounts();
+        ExecutionStage currentStage = result.getCurrentStage();
+        ExecutionProgressDTO dto = new ExecutionProgressDTO();
+        dto.setExecutionId(result.getExecutionId());
+        dto.setFeedId(result.getFeedId());
+        dto.setStatus(result.getStatus().name());
+        dto.setCurrentStage(currentStage != null ? currentStage.getName() : null);
+        dto.setTotalStages(counts.total());
+        dto.setCompletedStages(counts.completed());
+        dto.setInProgressStages(counts.inProgress());
+        dto.setFailedStages(counts.failed());
+        dto.setCompletionPercentage(counts.completionPercentage());
+        dto.setStartTime(result.getStartTime());
+        dto.setElapsedMillis(Duration.between(result.getStartTime(), LocalDateTime.now()).toMillis());
+        return dto;
+    }
+}
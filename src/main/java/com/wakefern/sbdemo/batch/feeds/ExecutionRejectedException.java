@@ -0,0 +1,14 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class ExecutionRejectedException extends RuntimeException {
+
+    public ExecutionRejectedException(final String message) {
+        super(message);
+    }
+
+}
@@ -1,48 +1,163 @@
 package com.wakefern.sbdemo.batch.feeds;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class ExecutionResult {
     
     public enum Status {
-        SUCCESS, FAILED, IN_PROGRESS
-    }
-    
-    private Status status;
-    private List<String> logs;
-    private LocalDateTime startTime;
-    private LocalDateTime endTime;
-    private String error;
-    private List<ExecutionStage> stages;
-    private ExecutionStage currentStage;
+        QUEUED, SUCCESS, FAILED, IN_PROGRESS, CANCELLED
+    }
+    
+    private volatile Long executionId;
+    private volatile Long feedId;
+    private volatile Long resumedFromExecutionId;
+    private volatile Status status;
+    private final ExecutionLog log = new ExecutionLog(this::fireChanged);
+    private final ExecutionProgress progress = new ExecutionProgress();
+    private volatile LocalDateTime startTime;
+    private volatile LocalDateTime endTime;
+    private volatile String error;
+    // Results are read by status pollers while a worker thread is still writing them
+    private final List<ExecutionStage> stages = new CopyOnWriteArrayList<>();
+    private volatile ExecutionStage currentStage;
+    // Stages may run concurrently, so each worker thread tracks the stage it is executing
+    private final ThreadLocal<ExecutionStage> stageContext = new ThreadLocal<>();
+    // Record channels connecting producing and consuming stages, keyed by channel name
+    private final Map<String, RecordChannel<?>> channels = new ConcurrentHashMap<>();
+    // Durable stage outputs, null when the execution is not checkpointed
+    private volatile ExecutionCheckpoint checkpoint;
+    private volatile CancellationToken cancellationToken = new CancellationToken();
+    // Told about log lines, stage transitions and the outcome, e.g. by live progress streams
+    private final List<Runnable> changeListeners = new CopyOnWriteArrayList<>();
     
     public ExecutionResult() {
-        this.logs = new ArrayList<>();
-        this.stages = new ArrayList<>();
         this.startTime = LocalDateTime.now();
         this.status = Status.IN_PROGRESS;
     }
     
-    public void addLog(String message) {
-        String timestamp = java.time.format.DateTimeFormatter.ofPattern("HH:mm:ss").format(LocalDateTime.now());
-        this.logs.add("[" + timestamp + "] " + message);
+    /**
+     * Log a message template with SLF4J style {} placeholders, formatted only when the log is read.
+     * On a thread running a stage the message is logged for that stage, otherwise for the execution.
+     * Either way it is appended once, to the execution log, which stage logs are views of.
+     */
+    public void info(String template, Object... args) {
+        log(LogEvent.Level.INFO, template, args);
+    }
+    
+    public void warn(String template, Object... args) {
+        log(LogEvent.Level.WARN, template, args);
+    }
+    
+    public void error(String template, Object... args) {
+        log(LogEvent.Level.ERROR, template, args);
+    }
+    
+    public void log(LogEvent.Level level, String template, Object... args) {
+        ExecutionStage stage = stageContext.get();
+        if (stage != null) {
+            stage.log(level, template, args);
+        } else {
+            log.append(level, LogEvent.NO_STAGE, template, args);
+        }
+    }
+    
+    public void markStarted() {
+        this.status = Status.IN_PROGRESS;
+        this.startTime = LocalDateTime.now();
+        fireChanged();
+    }
+    
+    public boolean isFinished() {
+        return status == Status.SUCCESS || status == Status.FAILED || status == Status.CANCELLED;
     }
     
     public void setSuccess() {
         this.status = Status.SUCCESS;
         this.endTime = LocalDateTime.now();
+        fireChanged();
     }
     
     public void setFailed(String error) {
         this.status = Status.FAILED;
         this.error = error;
         this.endTime = LocalDateTime.now();
+        fireChanged();
+    }
+    
+    public void setCancelled(String reason) {
+        this.status = Status.CANCELLED;
+        this.error = reason;
+        this.endTime = LocalDateTime.now();
+        fireChanged();
+    }
+    
+    /**
+     * Register a listener called whenever the execution logs a line, a stage is added or changes
+     * status, or the execution finishes. Listeners run on the thread making the change, so they
+     * should only take note of it and do their work elsewhere.
+     */
+    public void addChangeListener(Runnable listener) {
+        changeListeners.add(listener);
+    }
+    
+    public void removeChangeListener(Runnable listener) {
+        changeListeners.remove(listener);
+    }
+    
+    private void fireChanged() {
+        for (Runnable listener : changeListeners) {
+            listener.run();
+        }
     }
     
     // Getters and setters
+    public Long getExecutionId() {
+        return executionId;
+    }
+    
+    public void setExecutionId(Long executionId) {
+        this.executionId = executionId;
+    }
+    
+    public Long getFeedId() {
+        return feedId;
+    }
+    
+    public void setFeedId(Long feedId) {
+        this.feedId = feedId;
+    }
+    
+    public Long getResumedFromExecutionId() {
+        return resumedFromExecutionId;
+    }
+    
+    public void setResumedFromExecutionId(Long resumedFromExecutionId) {
+        this.resumedFromExecutionId = resumedFromExecutionId;
+    }
+    
+    public ExecutionCheckpoint getCheckpoint() {
+        return checkpoint;
+    }
+    
+    public void setCheckpoint(ExecutionCheckpoint checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+    
+    public CancellationToken getCancellationToken() {
+        return cancellationToken;
+    }
+    
+    public void setCancellationToken(CancellationToken cancellationToken) {
+        this.cancellationToken = cancellationToken;
+    }
+    
     public Status getStatus() {
         return status;
     }
@@ -51,12 +166,15 @@ public class ExecutionResult {
         this.status = status;
     }
     
-    public List<String> getLogs() {
-        return logs;
+    public ExecutionLog getLog() {
+        return log;
     }
     
-    public void setLogs(List<String> logs) {
-        this.logs = logs;
+    /**
+     * Get the execution log rendered for display
+     */
+    public List<String> getLogs() {
+        return log.render();
     }
     
     public LocalDateTime getStartTime() {
@@ -84,64 +202,156 @@ public class ExecutionResult {
     }
     
     public String getLogsAsString() {
-        return String.join("\n", logs);
+        return log.renderAsString();
     }
     
     public long getDurationMillis() {
         if (endTime != null) {
-            return java.time.Duration.between(startTime, endTime).toMillis();
+            return Duration.between(startTime, endTime).toMillis();
         }
         return 0;
     }
     
     // Stage management methods
-    public ExecutionStage addStage(String name, String description) {
-        ExecutionStage stage = new ExecutionStage(name, description);
+    public synchronized ExecutionStage addStage(String name, String description) {
+        ExecutionStage stage = new ExecutionStage(name, description, log, progress, stages.size());
         stages.add(stage);
+        fireChanged();
         return stage;
     }
     
     public ExecutionStage startStage(String name, String description, Map<String, String> parameters) {
-        ExecutionStage stage = addStage(name, description);
+        return startStage(addStage(name, description), parameters);
+    }
+    
+    public ExecutionStage startStage(ExecutionStage stage, Map<String, String> parameters) {
         if (parameters != null) {
             stage.setParameters(parameters);
             for (Map.Entry<String, String> param : parameters.entrySet()) {
-                stage.addLog("Parameter: " + param.getKey() + " = " + param.getValue());
+                stage.info("Parameter: {} = {}", param.getKey(), param.getValue());
             }
         }
         this.currentStage = stage;
+        stageContext.set(stage);
         stage.start();
-        addLog("Started stage: " + name);
         return stage;
     }
     
     public void completeCurrentStage() {
-        if (currentStage != null) {
-            currentStage.complete();
-            addLog("Completed stage: " + currentStage.getName());
-        }
+        completeStage(getStageForCurrentThread());
     }
     
     public void failCurrentStage(String error) {
-        if (currentStage != null) {
-            currentStage.fail(error);
-            addLog("Failed stage: " + currentStage.getName() + " - " + error);
+        failStage(getStageForCurrentThread(), error);
+    }
+    
+    public void cancelCurrentStage(String reason) {
+        cancelStage(getStageForCurrentThread(), reason);
+    }
+    
+    // Explicit variants for stages that finish on a thread other than the one that started them
+    public void completeStage(ExecutionStage stage) {
+        if (stage != null) {
+            stage.complete();
+            unbindStage(stage);
         }
     }
     
-    public void addLogToCurrentStage(String message) {
-        if (currentStage != null) {
-            currentStage.addLog(message);
+    public void failStage(ExecutionStage stage, String error) {
+        if (stage != null) {
+            stage.fail(error);
+            unbindStage(stage);
         }
-        addLog(message);
     }
     
-    public List<ExecutionStage> getStages() {
-        return stages;
+    public void cancelStage(ExecutionStage stage, String reason) {
+        if (stage != null) {
+            stage.cancel(reason);
+            unbindStage(stage);
+        }
+    }
+    
+    private void unbindStage(ExecutionStage stage) {
+        if (stageContext.get() == stage) {
+            stageContext.remove();
+        }
+    }
+    
+    /**
+     * Wrap a task so it runs in the context of the current thread's stage. Stages that continue
+     * on timer threads use this so their logs and wait times are attributed to them.
+     * @param task The continuation of the current stage
+     * @return The task bound to the current stage
+     */
+    public Runnable withCurrentStage(Runnable task) {
+        ExecutionStage stage = getStageForCurrentThread();
+        return () -> {
+            ExecutionStage previous = stageContext.get();
+            stageContext.set(stage);
+            try {
+                task.run();
+            } finally {
+                if (previous != null) {
+                    stageContext.set(previous);
+                } else {
+                    stageContext.remove();
+                }
+            }
+        };
+    }
+    
+    /**
+     * Detach the calling thread from the stage it was running, before the thread goes back to a pool
+     */
+    public void clearCurrentStage() {
+        stageContext.remove();
+    }
+    
+    /**
+     * Account time the current thread's stage spent waiting on other stages
+     * @param idleNanos Time spent waiting for input
+     * @param blockedNanos Time spent waiting for a downstream stage to accept output
+     */
+    public void addWaitTimeToCurrentStage(long idleNanos, long blockedNanos) {
+        ExecutionStage stage = getStageForCurrentThread();
+        if (stage != null) {
+            stage.addIdleNanos(idleNanos);
+            stage.addBlockedNanos(blockedNanos);
+        }
+    }
+    
+    private ExecutionStage getStageForCurrentThread() {
+        ExecutionStage stage = stageContext.get();
+        return stage != null ? stage : currentStage;
+    }
+    
+    // Record channel management methods
+    public void openChannel(String name, RecordChannel<?> channel) {
+        if (channels.putIfAbsent(name, channel) != null) {
+            throw new IllegalStateException("Channel '" + name + "' is already open");
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    public <T> RecordChannel<T> getChannel(String name) {
+        RecordChannel<?> channel = channels.get(name);
+        if (channel == null) {
+            throw new IllegalStateException("No channel named '" + name + "' is open");
+        }
+        return (RecordChannel<T>) channel;
+    }
+    
+    public void abortChannels() {
+        channels.values().forEach(RecordChannel::abort);
+    }
+    
+    public void closeChannels() {
+        channels.values().forEach(RecordChannel::close);
+        channels.clear();
     }
     
-    public void setStages(List<ExecutionStage> stages) {
-        this.stages = stages;
+    public List<ExecutionStage> getStages() {
+        return stages;
     }
     
     public ExecutionStage getCurrentStage() {
@@ -152,56 +362,115 @@ public class ExecutionResult {
         this.currentStage = currentStage;
     }
     
+    /**
+     * Get the stage counters, which are safe to read from any thread while the execution runs
+     */
+    public ExecutionProgress getProgress() {
+        return progress;
+    }
+    
     public boolean hasFailedStages() {
-        return stages.stream().anyMatch(stage -> stage.getStatus() == ExecutionStage.Status.FAILED);
+        return progress.getCount(ExecutionStage.Status.FAILED) > 0;
     }
     
     public long getTotalStagesDurationMillis() {
-        return stages.stream()
-                .mapToLong(ExecutionStage::getDurationMillis)
-                .sum();
+        return progress.getFinishedStagesMillis();
     }
     
     public int getSuccessfulStagesCount() {
-        return (int) stages.stream()
-                .filter(stage -> stage.getStatus() == ExecutionStage.Status.SUCCESS)
-                .count();
+        return progress.getCount(ExecutionStage.Status.SUCCESS);
     }
     
     public int getFailedStagesCount() {
-        return (int) stages.stream()
-                .filter(stage -> stage.getStatus() == ExecutionStage.Status.FAILED)
-                .count();
+        return progress.getCount(ExecutionStage.Status.FAILED);
     }
     
     public int getInProgressStagesCount() {
-        return (int) stages.stream()
-                .filter(stage -> stage.getStatus() == ExecutionStage.Status.IN_PROGRESS)
-                .count();
+        return progress.getCount(ExecutionStage.Status.IN_PROGRESS);
     }
     
     public int getPendingStagesCount() {
-        return (int) stages.stream()
-                .filter(stage -> stage.getStatus() == ExecutionStage.Status.PENDING)
-                .count();
+        return progress.getCount(ExecutionStage.Status.PENDING);
     }
     
     public double getAverageStageDurationMillis() {
-        return stages.stream()
-                .filter(stage -> stage.getDurationMillis() > 0)
-                .mapToLong(ExecutionStage::getDurationMillis)
-                .average()
-                .orElse(0.0);
+        int timedStages = progress.getTimedStages();
+        return timedStages == 0 ? 0.0 : (double) progress.getFinishedStagesMillis() / timedStages;
+    }
+    
+    /**
+     * Wall-clock time during which at least one stage was running
+     */
+    public long getStagesWallClockMillis() {
+        List<long[]> intervals = getStageIntervals();
+        intervals.sort((a, b) -> Long.compare(a[0], b[0]));
+        long total = 0;
+        long spanStart = -1;
+        long spanEnd = -1;
+        for (long[] interval : intervals) {
+            if (interval[0] > spanEnd) {
+                total += spanEnd - spanStart;
+                spanStart = interval[0];
+                spanEnd = interval[1];
+            } else {
+                spanEnd = Math.max(spanEnd, interval[1]);
+            }
+        }
+        return total + (spanEnd - spanStart);
+    }
+    
+    /**
+     * Stage time saved by running stages concurrently, i.e. the summed stage durations
+     * minus the wall-clock time the stages actually took
+     */
+    public long getStageOverlapMillis() {
+        long summed = getStageIntervals().stream()
+                .mapToLong(interval -> interval[1] - interval[0])
+                .sum();
+        return Math.max(0, summed - getStagesWallClockMillis());
+    }
+    
+    /**
+     * Highest number of stages that were running at the same time
+     */
+    public int getMaxConcurrentStages() {
+        List<long[]> events = new ArrayList<>();
+        for (long[] interval : getStageIntervals()) {
+            events.add(new long[] { interval[0], 1 });
+            events.add(new long[] { interval[1], -1 });
+        }
+        // Process stage ends before starts at the same instant
+        events.sort((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        int running = 0;
+        int max = 0;
+        for (long[] event : events) {
+            running += (int) event[1];
+            max = Math.max(max, running);
+        }
+        return max;
+    }
+    
+    private List<long[]> getStageIntervals() {
+        long now = toEpochMillis(LocalDateTime.now());
+        List<long[]> intervals = new ArrayList<>();
+        for (ExecutionStage stage : stages) {
+            if (stage.getStartTime() != null) {
+                long end = stage.getEndTime() != null ? toEpochMillis(stage.getEndTime()) : now;
+                intervals.add(new long[] { toEpochMillis(stage.getStartTime()), end });
+            }
+        }
+        return intervals;
+    }
+    
+    private static long toEpochMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
     }
     
     public int getCompletedStagesCount() {
-        return getSuccessfulStagesCount() + getFailedStagesCount();
+        return progress.getCounts().completed();
     }
     
     public double getCompletionPercentage() {
-        if (stages.isEmpty()) {
-            return 0.0;
-        }
-        return (getCompletedStagesCount() * 100.0) / stages.size();
+        return progress.getCounts().completionPercentage();
     }
 }
\ No newline at end of file
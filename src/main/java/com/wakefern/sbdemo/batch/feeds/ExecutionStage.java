@@ -1,67 +1,147 @@
 package com.wakefern.sbdemo.batch.feeds;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class ExecutionStage {
     
     public enum Status {
-        PENDING, IN_PROGRESS, SUCCESS, FAILED
+        PENDING, IN_PROGRESS, SUCCESS, FAILED, CANCELLED
     }
     
     private String name;
     private String description;
-    private Status status;
-    private List<String> logs;
-    private LocalDateTime startTime;
-    private LocalDateTime endTime;
+    private final AtomicReference<Status> status = new AtomicReference<>(Status.PENDING);
+    // Position of the stage in its execution, the stage's events in the shared log carry it
+    private final int index;
+    private final ExecutionLog log;
+    // Stage counters of the execution, kept in step with the status of its stages
+    private final ExecutionProgress progress;
+    private volatile LocalDateTime startTime;
+    private volatile LocalDateTime endTime;
     private Map<String, String> parameters;
-    private String error;
+    private volatile String error;
+    // Time spent waiting for upstream input (idle) or for downstream capacity (blocked)
+    private final AtomicLong idleNanos = new AtomicLong();
+    private final AtomicLong blockedNanos = new AtomicLong();
     
     public ExecutionStage(String name, String description) {
+        this(name, description, new ExecutionLog(), new ExecutionProgress(), 0);
+    }
+    
+    /**
+     * Create a stage that logs into the log of its execution and counts towards its progress
+     * @param log The execution log
+     * @param progress The stage counters of the execution
+     * @param index The position of the stage in the execution
+     */
+    public ExecutionStage(String name, String description, ExecutionLog log, ExecutionProgress progress, int index) {
         this.name = name;
         this.description = description;
-        this.status = Status.PENDING;
-        this.logs = new ArrayList<>();
+        this.log = log;
+        this.progress = progress;
+        this.index = index;
         this.parameters = new HashMap<>();
+        progress.stageAdded();
     }
     
     public void start() {
-        this.status = Status.IN_PROGRESS;
         this.startTime = LocalDateTime.now();
-        addLog("Stage started: " + name);
+        transitionTo(Status.IN_PROGRESS);
+        info("Stage started: {}", name);
     }
     
     public void complete() {
-        this.status = Status.SUCCESS;
         this.endTime = LocalDateTime.now();
-        addLog("Stage completed successfully in " + getDurationMillis() + "ms");
+        transitionTo(Status.SUCCESS);
+        info("Stage completed successfully: {} in {}ms{}", name, getDurationMillis(), getUtilisationSummary());
     }
     
     public void fail(String error) {
-        this.status = Status.FAILED;
         this.error = error;
         this.endTime = LocalDateTime.now();
-        addLog("Stage failed: " + error);
+        transitionTo(Status.FAILED);
+        error("Stage failed: {} - {}", name, error);
+    }
+    
+    public void cancel(String reason) {
+        this.error = reason;
+        this.endTime = LocalDateTime.now();
+        transitionTo(Status.CANCELLED);
+        warn("Stage cancelled: {} - {}", name, reason);
+    }
+    
+    private void transitionTo(Status next) {
+        Status previous = status.getAndSet(next);
+        if (previous != next) {
+            progress.stageTransitioned(previous, next, getDurationMillis());
+        }
     }
     
-    public void addLog(String message) {
-        String timestamp = java.time.format.DateTimeFormatter.ofPattern("HH:mm:ss").format(LocalDateTime.now());
-        this.logs.add("[" + timestamp + "] " + message);
+    /**
+     * Log a message template with SLF4J style {} placeholders, formatted only when the log is read
+     */
+    public void info(String template, Object... args) {
+        log(LogEvent.Level.INFO, template, args);
+    }
+    
+    public void warn(String template, Object... args) {
+        log(LogEvent.Level.WARN, template, args);
+    }
+    
+    public void error(String template, Object... args) {
+        log(LogEvent.Level.ERROR, template, args);
+    }
+    
+    public void log(LogEvent.Level level, String template, Object... args) {
+        log.append(level, index, template, args);
     }
     
     public long getDurationMillis() {
         if (startTime != null && endTime != null) {
-            return java.time.Duration.between(startTime, endTime).toMillis();
+            return Duration.between(startTime, endTime).toMillis();
         }
         return 0;
     }
     
+    public void addIdleNanos(long nanos) {
+        idleNanos.addAndGet(nanos);
+    }
+    
+    public void addBlockedNanos(long nanos) {
+        blockedNanos.addAndGet(nanos);
+    }
+    
+    public long getIdleMillis() {
+        return idleNanos.get() / 1_000_000;
+    }
+    
+    public long getBlockedMillis() {
+        return blockedNanos.get() / 1_000_000;
+    }
+    
+    /**
+     * Get the time the stage spent doing its own work, its duration minus idle and blocked time
+     * @return The busy time in milliseconds
+     */
+    public long getBusyMillis() {
+        return Math.max(0, getDurationMillis() - getIdleMillis() - getBlockedMillis());
+    }
+    
+    private String getUtilisationSummary() {
+        if (idleNanos.get() == 0 && blockedNanos.get() == 0) {
+            return "";
+        }
+        return " (busy " + getBusyMillis() + "ms, idle " + getIdleMillis() + "ms, blocked " + getBlockedMillis() + "ms)";
+    }
+    
     public String getLogsAsString() {
-        return String.join("\n", logs);
+        return log.renderAsString(index);
     }
     
     // Getters and setters
@@ -82,19 +162,25 @@ public class ExecutionStage {
     }
     
     public Status getStatus() {
-        return status;
+        return status.get();
     }
     
     public void setStatus(Status status) {
-        this.status = status;
+        transitionTo(status);
     }
     
-    public List<String> getLogs() {
-        return logs;
+    /**
+     * Get the position of the stage in its execution, which log events refer to
+     */
+    public int getIndex() {
+        return index;
     }
     
-    public void setLogs(List<String> logs) {
-        this.logs = logs;
+    /**
+     * Get the stage's events in the execution log, rendered for display
+     */
+    public List<String> getLogs() {
+        return log.render(index);
     }
     
     public LocalDateTime getStartTime() {
@@ -0,0 +1,285 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+
+/**
+ * Streams the progress of running executions to browsers as Server-Sent Events. Each watcher
+ * follows the in-memory log of the execution with its own cursor, so any number of watchers
+ * share the same log events without copying them and without reading the database.
+ * <p>
+ * Worker threads only flag a watcher as having pending changes, the changes are collected by a
+ * shared flusher thread at most once per flush interval. The flusher never writes to a browser,
+ * it queues the events of each watcher and a sender thread of the watcher writes them, so a slow
+ * browser only holds up itself. A watcher whose queue exceeds {@code max-pending-events} is
+ * dropped, its browser reconnects and resumes from the last event it received. A watcher receives
+ * <ul>
+ *     <li>{@code log} events with the lines logged since the previous flush,</li>
+ *     <li>{@code stage} events when a stage is added or changes status,</li>
+ *     <li>a {@code complete} event with the outcome once the execution has finished, after
+ *     which the stream is closed.</li>
+ * </ul>
+ * The event ID is the position in the execution log, so a reconnecting browser resumes after
+ * the last line it received.
+ */
+@Service
+public class ExecutionStreamService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExecutionStreamService.class);
+
+    private final Duration timeout;
+    private final long flushIntervalMillis;
+    private final int maxPendingEvents;
+    private final ScheduledThreadPoolExecutor flusher;
+    private final ExecutorService senders;
+    private final Set<Watcher> watchers = ConcurrentHashMap.newKeySet();
+
+    public ExecutionStreamService(@Value("${app.feeds.execution.stream.timeout:PT30M}") final Duration timeout,
+                                  @Value("${app.feeds.execution.stream.flush-interval:PT0.2S}") final Duration flushInterval,
+                                  @Value("${app.feeds.execution.stream.max-pending-events:100}") final int maxPendingEvents) {
+        this.timeout = timeout;
+        this.flushIntervalMillis = flushInterval.toMillis();
+        this.maxPendingEvents = maxPendingEvents;
+        this.flusher = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("execution-stream-"));
+        this.flusher.setRemoveOnCancelPolicy(true);
+        // Threads are only kept while watchers have events in flight
+        this.senders = Executors.newCachedThreadPool(new CustomizableThreadFactory("execution-stream-send-"));
+    }
+
+    /**
+     * Start streaming an execution
+     * @param result The live execution result
+     * @param from The number of log lines the watcher has already seen
+     * @return The emitter to return from the request handler
+     */
+    public SseEmitter open(final ExecutionResult result, final int from) {
+        final SseEmitter emitter = new SseEmitter(timeout.toMillis());
+        final Watcher watcher = new Watcher(result, emitter, from);
+        emitter.onCompletion(watcher::close);
+        emitter.onTimeout(watcher::close);
+        emitter.onError(error -> watcher.close());
+        watchers.add(watcher);
+        result.addChangeListener(watcher);
+        // Send what happened before the watcher was registered
+        flusher.execute(watcher::flush);
+        return emitter;
+    }
+
+    public int getWatcherCount() {
+        return watchers.size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdownNow();
+        senders.shutdownNow();
+        for (Watcher watcher : watchers) {
+            watcher.emitter.complete();
+            watcher.close();
+        }
+    }
+
+    /**
+     * A log line sent to watchers, {@code seq} is its position in the execution log
+     */
+    public record LogLine(int seq, int stage, String level, String text) {
+    }
+
+    public record StageUpdate(int index, String name, ExecutionStage.Status status, long durationMillis) {
+    }
+
+    public record Outcome(ExecutionResult.Status status, String error, long durationMillis) {
+    }
+
+    /**
+     * One browser following one execution. Only the flusher thread collects changes, so a
+     * watcher's cursor and stage states need no locking. The queued events are sent in order by
+     * at most one sender thread at a time.
+     */
+    private final class Watcher implements Runnable {
+
+        private final ExecutionResult result;
+        private final SseEmitter emitter;
+        private final AtomicBoolean flushPending = new AtomicBoolean();
+        private final List<ExecutionStage.Status> sentStages = new ArrayList<>();
+        private int cursor;
+        private volatile boolean closed;
+        // Events not sent yet, the flags below are guarded by the queue as well
+        private final Deque<SseEmitter.SseEventBuilder> pending = new ArrayDeque<>();
+        private boolean sending;
+        private boolean completing;
+        private boolean dropped;
+
+        Watcher(final ExecutionResult result, final SseEmitter emitter, final int from) {
+            this.result = result;
+            this.emitter = emitter;
+            this.cursor = Math.max(0, from);
+        }
+
+        /**
+         * Called by the execution on every change, coalesces changes into one flush
+         */
+        @Override
+        public void run() {
+            if (!closed && flushPending.compareAndSet(false, true)) {
+                try {
+                    flusher.schedule(this::flush, flushIntervalMillis, TimeUnit.MILLISECONDS);
+                } catch (RuntimeException e) {
+                    // Shutting down
+                    close();
+                }
+            }
+        }
+
+        void flush() {
+            flushPending.set(false);
+            if (closed) {
+                return;
+            }
+            // Read the outcome first, so everything logged before it finished is queued below
+            final boolean finished = result.isFinished();
+            final List<SseEmitter.SseEventBuilder> events = new ArrayList<>();
+            collectLog(events);
+            collectStages(events);
+            if (finished) {
+                events.add(SseEmitter.event().name("complete").id(String.valueOf(cursor))
+                        .data(new Outcome(result.getStatus(), result.getError(), result.getDurationMillis()),
+                                MediaType.APPLICATION_JSON));
+                // Nothing changes anymore, the sender completes the stream once the events are out
+                close();
+            }
+            if (!events.isEmpty()) {
+                enqueue(events, finished);
+            }
+        }
+
+        private void enqueue(final List<SseEmitter.SseEventBuilder> events, final boolean complete) {
+            synchronized (pending) {
+                if (dropped) {
+                    return;
+                }
+                if (pending.size() + events.size() > maxPendingEvents) {
+                    // Never touch the emitter here, a send in progress may hold it
+                    logger.debug("Dropped the stream of execution {}, {} events are waiting for a slow client",
+                            result.getExecutionId(), pending.size());
+                    dropped = true;
+                    pending.clear();
+                    close();
+                    if (sending) {
+                        return;
+                    }
+                } else {
+                    pending.addAll(events);
+                    completing |= complete;
+                    if (sending) {
+                        return;
+                    }
+                }
+                sending = true;
+            }
+            try {
+                senders.execute(this::send);
+            } catch (RejectedExecutionException e) {
+                // Shutting down
+                close();
+            }
+        }
+
+        /**
+         * Send the queued events, on a sender thread
+         */
+        private void send() {
+            try {
+                while (true) {
+                    final SseEmitter.SseEventBuilder event;
+                    synchronized (pending) {
+                        event = dropped ? null : pending.poll();
+                        if (event == null) {
+                            sending = false;
+                            if (!dropped && !completing) {
+                                return;
+                            }
+                        }
+                    }
+                    if (event == null) {
+                        // Dropped or finished, the browser reconnects after a dropped stream
+                        emitter.complete();
+                        close();
+                        return;
+                    }
+                    emitter.send(event);
+                }
+            } catch (IOException | IllegalStateException e) {
+                // The browser went away
+                logger.debug("Stopped streaming execution {}: {}", result.getExecutionId(), e.getMessage());
+                synchronized (pending) {
+                    dropped = true;
+                    sending = false;
+                    pending.clear();
+                }
+                close();
+            }
+        }
+
+        private void collectLog(final List<SseEmitter.SseEventBuilder> events) {
+            final ExecutionLog.Slice slice = result.getLog().slice(cursor);
+            if (slice.events().isEmpty()) {
+                return;
+            }
+            final List<LogLine> lines = new ArrayList<>(slice.events().size());
+            for (LogEvent event : slice.events()) {
+                lines.add(new LogLine(slice.from() + lines.size(), event.getStageIndex(), event.getLevel().name(), event.format()));
+            }
+            cursor = slice.from() + lines.size();
+            events.add(SseEmitter.event().name("log").id(String.valueOf(cursor))
+                    .data(lines, MediaType.APPLICATION_JSON));
+        }
+
+        private void collectStages(final List<SseEmitter.SseEventBuilder> events) {
+            final List<ExecutionStage> stages = result.getStages();
+            for (int i = 0; i < stages.size(); i++) {
+                final ExecutionStage stage = stages.get(i);
+                final ExecutionStage.Status status = stage.getStatus();
+                if (i < sentStages.size() && sentStages.get(i) == status) {
+                    continue;
+                }
+                if (i < sentStages.size()) {
+                    sentStages.set(i, status);
+                } else {
+                    sentStages.add(status);
+                }
+                events.add(SseEmitter.event().name("stage")
+                        .data(new StageUpdate(i, stage.getName(), status, stage.getDurationMillis()),
+                                MediaType.APPLICATION_JSON));
+            }
+        }
+
+        void close() {
+            closed = true;
+            result.removeChangeListener(this);
+            watchers.remove(this);
+        }
+    }
+
+}
@@ -0,0 +1,13 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import java.time.LocalDateTime;
+
+/**
+ * Columns of an execution that history lists show, selected by constructor projection so list
+ * queries read plain values instead of managed {@link FeedExecution} entities with their
+ * associations and dirty checking snapshots.
+ */
+public record ExecutionSummary(Long id, Long feedId, FeedExecution.Status status, Long resumedFromExecutionId,
+                               LocalDateTime startTime, LocalDateTime endTime, Long durationMillis,
+                               String parameters, String error, LocalDateTime createdAt) {
+}
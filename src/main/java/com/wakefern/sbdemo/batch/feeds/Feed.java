@@ -47,4 +47,12 @@ public class Feed {
     @Column(name = "next_run")
     private LocalDateTime nextRun;
 
+    // Spring cron expression the feed scheduler computes the next run from, null for manual feeds
+    @Column
+    private String cron;
+
+    // Days execution history is kept, null for app.feeds.history.retention.default-days
+    @Column(name = "retention_days")
+    private Integer retentionDays;
+
 }
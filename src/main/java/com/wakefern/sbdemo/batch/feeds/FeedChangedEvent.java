@@ -0,0 +1,13 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+/**
+ * Published after a feed has been created, updated or deleted
+ * @param feed The saved feed, null if the feed was deleted
+ */
+public record FeedChangedEvent(Long feedId, Feed feed) {
+
+    public boolean isDeleted() {
+        return feed == null;
+    }
+
+}
@@ -1,7 +1,10 @@
 package com.wakefern.sbdemo.batch.feeds;
 
+import com.wakefern.sbdemo.util.NotFoundException;
 import com.wakefern.sbdemo.util.WebUtils;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.validation.BindingResult;
@@ -9,22 +12,39 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 
 @Controller
 @RequestMapping("/feeds")
 public class FeedController {
 
+    private static final int HISTORY_PAGE_SIZE = 25;
+
     private final FeedService feedService;
     private final FeedExecutionHistoryService executionHistoryService;
+    private final FeedExecutionEngine executionEngine;
+    private final ExecutionStreamService executionStreamService;
+    private final FeedLatencyService latencyService;
 
-    public FeedController(final FeedService feedService, final FeedExecutionHistoryService executionHistoryService) {
+    public FeedController(final FeedService feedService, final FeedExecutionHistoryService executionHistoryService,
+            final FeedExecutionEngine executionEngine, final ExecutionStreamService executionStreamService,
+            final FeedLatencyService latencyService) {
         this.feedService = feedService;
         this.executionHistoryService = executionHistoryService;
+        this.executionEngine = executionEngine;
+        this.executionStreamService = executionStreamService;
+        this.latencyService = latencyService;
     }
 
     @GetMapping
@@ -94,9 +114,9 @@ public class FeedController {
             @ModelAttribute("execution") final FeedExecutionDTO executionDTO,
             final Model model, final RedirectAttributes redirectAttributes) {
         try {
-            ExecutionResult result = feedService.executeFeed(id, executionDTO.getParameters());
+            ExecutionResult result = executionEngine.submit(id, executionDTO.getParameters());
             
-            // Add execution result to model to display on the same page
+            // Add the live execution result to the model, the page polls it until it finishes
             model.addAttribute("executionResult", result);
             
             // Also add the feed and execution data back to model
@@ -113,6 +133,8 @@ public class FeedController {
                 model.addAttribute(WebUtils.MSG_SUCCESS, WebUtils.getMessage("feed.execute.success"));
             } else if (result.getStatus() == ExecutionResult.Status.FAILED) {
                 model.addAttribute(WebUtils.MSG_ERROR, "Execution failed: " + result.getError());
+            } else {
+                model.addAttribute(WebUtils.MSG_INFO, WebUtils.getMessage("feed.execute.queued", result.getExecutionId()));
             }
             
             return "feeds/execute";
@@ -123,22 +145,103 @@ public class FeedController {
         }
     }
 
+    @PostMapping("/{id}/history/{executionId}/resume")
+    public String resume(@PathVariable(name = "id") final Long id,
+            @PathVariable(name = "executionId") final Long executionId,
+            final Model model, final RedirectAttributes redirectAttributes) {
+        try {
+            ExecutionResult result = executionEngine.resume(id, executionId);
+            
+            FeedDTO feed = feedService.get(id);
+            FeedExecutionDTO executionDTO = new FeedExecutionDTO();
+            executionDTO.setFeedId(feed.getId());
+            executionDTO.setFeedName(feed.getName());
+            executionDTO.setFeedType(feed.getType());
+            
+            model.addAttribute("executionResult", result);
+            model.addAttribute("execution", executionDTO);
+            model.addAttribute("feed", feed);
+            model.addAttribute(WebUtils.MSG_INFO, WebUtils.getMessage("feed.history.detail.resumed", executionId, result.getExecutionId()));
+            return "feeds/execute";
+            
+        } catch (Exception e) {
+            redirectAttributes.addFlashAttribute(WebUtils.MSG_ERROR, "Failed to resume execution: " + e.getMessage());
+            return "redirect:/feeds/" + id + "/history/" + executionId;
+        }
+    }
+
+    @GetMapping("/execute/{id}/executions/{executionId}")
+    public String executionProgress(@PathVariable(name = "id") final Long id,
+            @PathVariable(name = "executionId") final Long executionId,
+            final Model model, final HttpServletResponse response) {
+        Optional<ExecutionResult> result = executionEngine.find(executionId)
+                .filter(executionResult -> id.equals(executionResult.getFeedId()));
+        if (result.isPresent()) {
+            model.addAttribute("executionResult", result.get());
+        } else {
+            // No longer tracked in memory, let htmx navigate to the stored execution
+            response.setHeader("HX-Redirect", "/feeds/" + id + "/history/" + executionId);
+        }
+        return "feeds/execute :: executionResult";
+    }
+
+    /**
+     * Stream log lines and stage transitions of a running execution, the execute page appends them
+     * as they arrive and only refreshes the execution fragment when a stage changes status
+     */
+    @GetMapping(path = "/execute/{id}/executions/{executionId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ResponseBody
+    public SseEmitter executionStream(@PathVariable(name = "id") final Long id,
+            @PathVariable(name = "executionId") final Long executionId,
+            @RequestParam(name = "from", defaultValue = "0") final int from,
+            @RequestHeader(name = "Last-Event-ID", required = false) final Integer lastEventId) {
+        ExecutionResult result = executionEngine.find(executionId)
+                .filter(executionResult -> id.equals(executionResult.getFeedId()))
+                .orElseThrow(NotFoundException::new);
+        // A reconnecting browser continues after the last line it received
+        return executionStreamService.open(result, lastEventId != null ? lastEventId : from);
+    }
+
+    @PostMapping("/execute/{id}/executions/{executionId}/cancel")
+    public String cancel(@PathVariable(name = "id") final Long id,
+            @PathVariable(name = "executionId") final Long executionId,
+            final Model model, final HttpServletResponse response) {
+        try {
+            executionEngine.cancel(id, executionId);
+        } catch (ExecutionNotCancellableException e) {
+            // Finished in the meantime, the refreshed fragment shows the outcome
+        }
+        return executionProgress(id, executionId, model, response);
+    }
+
     @GetMapping("/{id}/history")
-    public String history(@PathVariable(name = "id") final Long id, final Model model) {
+    public String history(@PathVariable(name = "id") final Long id,
+                          @RequestParam(required = false) final String cursor,
+                          final Model model) {
         try {
             FeedDTO feed = feedService.get(id);
             model.addAttribute("feed", feed);
             
-            // Get execution history
-            List<FeedExecution> executions = executionHistoryService.getExecutionHistory(id);
-            List<ExecutionHistoryViewModel> executionViews = executions.stream()
+            // Get a page of the execution history
+            FeedExecutionHistoryService.ExecutionPage page = executionHistoryService.getExecutionHistory(
+                    id, ExecutionHistoryFilter.NONE, cursor, HISTORY_PAGE_SIZE);
+            List<ExecutionHistoryViewModel> executionViews = page.executions().stream()
                     .map(this::mapToHistoryViewModel)
                     .collect(java.util.stream.Collectors.toList());
             model.addAttribute("executions", executionViews);
+            model.addAttribute("cursor", cursor);
+            model.addAttribute("nextCursor", page.nextCursor());
             
             // Get statistics
             FeedExecutionHistoryService.FeedExecutionStats stats = executionHistoryService.getExecutionStats(id);
             model.addAttribute("stats", stats);
+            // Durations of the last day, whole executions first
+            FeedLatencyDTO latency = latencyService.getLatency(id, Duration.ofDays(1));
+            List<LatencyPercentilesDTO> latencyRows = new ArrayList<>();
+            latencyRows.add(latency.getExecutions());
+            latencyRows.addAll(latency.getStages());
+            model.addAttribute("latency", latency);
+            model.addAttribute("latencyRows", latencyRows);
             
             return "feeds/history";
         } catch (Exception e) {
@@ -156,7 +259,7 @@ public class FeedController {
             model.addAttribute("feed", feed);
             
             // Get detailed execution
-            java.util.Optional<FeedExecution> executionOpt = executionHistoryService.getExecutionWithDetails(executionId);
+            Optional<FeedExecution> executionOpt = executionHistoryService.getExecutionWithDetails(executionId);
             if (executionOpt.isPresent()) {
                 FeedExecution execution = executionOpt.get();
                 
@@ -166,6 +269,7 @@ public class FeedController {
                 }
                 
                 ExecutionDetailViewModel executionView = mapToDetailViewModel(execution);
+                executionView.setResumable(executionEngine.isResumable(execution));
                 model.addAttribute("execution", executionView);
                 
                 return "feeds/history-detail";
@@ -179,19 +283,20 @@ public class FeedController {
         }
     }
 
-    private ExecutionHistoryViewModel mapToHistoryViewModel(FeedExecution execution) {
+    private ExecutionHistoryViewModel mapToHistoryViewModel(ExecutionSummary execution) {
         ExecutionHistoryViewModel viewModel = new ExecutionHistoryViewModel();
-        viewModel.setId(execution.getId());
-        viewModel.setFeedId(execution.getFeedId());
-        viewModel.setStatus(execution.getStatus().name());
-        viewModel.setStatusClass(getStatusClass(execution.getStatus().name()));
-        viewModel.setStartTime(execution.getStartTime());
-        viewModel.setEndTime(execution.getEndTime());
-        viewModel.setDurationMillis(execution.getDurationMillis());
-        viewModel.setDurationFormatted(formatDuration(execution.getDurationMillis()));
-        viewModel.setParameters(execution.getParameters());
-        viewModel.setError(execution.getError());
-        viewModel.setCreatedAt(execution.getCreatedAt());
+        viewModel.setId(execution.id());
+        viewModel.setFeedId(execution.feedId());
+        viewModel.setStatus(execution.status().name());
+        viewModel.setStatusClass(getStatusClass(execution.status().name()));
+        viewModel.setResumedFromExecutionId(execution.resumedFromExecutionId());
+        viewModel.setStartTime(execution.startTime());
+        viewModel.setEndTime(execution.endTime());
+        viewModel.setDurationMillis(execution.durationMillis());
+        viewModel.setDurationFormatted(formatDuration(execution.durationMillis()));
+        viewModel.setParameters(execution.parameters());
+        viewModel.setError(execution.error());
+        viewModel.setCreatedAt(execution.createdAt());
         return viewModel;
     }
 
@@ -201,6 +306,7 @@ public class FeedController {
         viewModel.setFeedId(execution.getFeedId());
         viewModel.setStatus(execution.getStatus().name());
         viewModel.setStatusClass(getStatusClass(execution.getStatus().name()));
+        viewModel.setResumedFromExecutionId(execution.getResumedFromExecutionId());
         viewModel.setStartTime(execution.getStartTime());
         viewModel.setEndTime(execution.getEndTime());
         viewModel.setDurationMillis(execution.getDurationMillis());
@@ -239,6 +345,8 @@ public class FeedController {
         viewModel.setEndTime(stage.getEndTime());
         viewModel.setDurationMillis(stage.getDurationMillis());
         viewModel.setDurationFormatted(formatDuration(stage.getDurationMillis()));
+        viewModel.setIdleMillis(stage.getIdleMillis());
+        viewModel.setBlockedMillis(stage.getBlockedMillis());
         viewModel.setParameters(stage.getParameters());
         viewModel.setError(stage.getError());
         viewModel.setStageOrder(stage.getStageOrder());
@@ -250,6 +358,8 @@ public class FeedController {
             case "SUCCESS" -> "bg-success";
             case "FAILED" -> "bg-danger";
             case "IN_PROGRESS" -> "bg-warning text-dark";
+            case "QUEUED" -> "bg-info text-dark";
+            case "CANCELLED" -> "bg-dark";
             case "PENDING" -> "bg-secondary";
             default -> "bg-light";
         };
@@ -277,6 +387,7 @@ public class FeedController {
         private Long feedId;
         private String status;
         private String statusClass;
+        private Long resumedFromExecutionId;
         private java.time.LocalDateTime startTime;
         private java.time.LocalDateTime endTime;
         private Long durationMillis;
@@ -294,6 +405,8 @@ public class FeedController {
         public void setStatus(String status) { this.status = status; }
         public String getStatusClass() { return statusClass; }
         public void setStatusClass(String statusClass) { this.statusClass = statusClass; }
+        public Long getResumedFromExecutionId() { return resumedFromExecutionId; }
+        public void setResumedFromExecutionId(Long resumedFromExecutionId) { this.resumedFromExecutionId = resumedFromExecutionId; }
         public java.time.LocalDateTime getStartTime() { return startTime; }
         public void setStartTime(java.time.LocalDateTime startTime) { this.startTime = startTime; }
         public java.time.LocalDateTime getEndTime() { return endTime; }
@@ -313,11 +426,14 @@ public class FeedController {
     public static class ExecutionDetailViewModel extends ExecutionHistoryViewModel {
         private List<StageViewModel> stages;
         private List<String> logs;
+        private boolean resumable;
 
         public List<StageViewModel> getStages() { return stages; }
         public void setStages(List<StageViewModel> stages) { this.stages = stages; }
         public List<String> getLogs() { return logs; }
         public void setLogs(List<String> logs) { this.logs = logs; }
+        public boolean isResumable() { return resumable; }
+        public void setResumable(boolean resumable) { this.resumable = resumable; }
     }
 
     public static class StageViewModel {
@@ -330,6 +446,8 @@ public class FeedController {
         private java.time.LocalDateTime endTime;
         private Long durationMillis;
         private String durationFormatted;
+        private Long idleMillis;
+        private Long blockedMillis;
         private String parameters;
         private String error;
         private Integer stageOrder;
@@ -353,6 +471,10 @@ public class FeedController {
         public void setDurationMillis(Long durationMillis) { this.durationMillis = durationMillis; }
         public String getDurationFormatted() { return durationFormatted; }
         public void setDurationFormatted(String durationFormatted) { this.durationFormatted = durationFormatted; }
+        public Long getIdleMillis() { return idleMillis; }
+        public void setIdleMillis(Long idleMillis) { this.idleMillis = idleMillis; }
+        public Long getBlockedMillis() { return blockedMillis; }
+        public void setBlockedMillis(Long blockedMillis) { this.blockedMillis = blockedMillis; }
         public String getParameters() { return parameters; }
         public void setParameters(String parameters) { this.parameters = parameters; }
         public String getError() { return error; }
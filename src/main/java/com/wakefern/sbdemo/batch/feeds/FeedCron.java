@@ -0,0 +1,44 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import static java.lang.annotation.ElementType.ANNOTATION_TYPE;
+import static java.lang.annotation.ElementType.FIELD;
+import static java.lang.annotation.ElementType.METHOD;
+
+import jakarta.validation.Constraint;
+import jakarta.validation.ConstraintValidator;
+import jakarta.validation.ConstraintValidatorContext;
+import jakarta.validation.Payload;
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import org.springframework.scheduling.support.CronExpression;
+
+
+/**
+ * Validate that the schedule of a feed is empty or a cron expression the feed scheduler can use.
+ */
+@Target({ FIELD, METHOD, ANNOTATION_TYPE })
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+@Constraint(
+        validatedBy = FeedCron.FeedCronValidator.class
+)
+public @interface FeedCron {
+
+    String message() default "{FeedCron}";
+
+    Class<?>[] groups() default {};
+
+    Class<? extends Payload>[] payload() default {};
+
+    class FeedCronValidator implements ConstraintValidator<FeedCron, String> {
+
+        @Override
+        public boolean isValid(final String value, final ConstraintValidatorContext cvContext) {
+            return value == null || value.isBlank() || CronExpression.isValidExpression(value.trim());
+        }
+
+    }
+
+}
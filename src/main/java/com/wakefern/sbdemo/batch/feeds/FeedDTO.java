@@ -1,6 +1,7 @@
 package com.wakefern.sbdemo.batch.feeds;
 
 import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.Size;
 import lombok.Getter;
 import lombok.Setter;
@@ -33,4 +34,13 @@ public class FeedDTO {
     @Schema(description = "Next scheduled execution timestamp")
     private LocalDateTime nextRun;
 
+    @Size(max = 255)
+    @FeedCron
+    @Schema(description = "Cron expression (second minute hour day month weekday) the feed runs on, empty to run it only on demand", example = "0 0 2 * * *")
+    private String cron;
+
+    @Min(1)
+    @Schema(description = "Days the execution history of the feed is kept, empty for the application default", example = "90")
+    private Integer retentionDays;
+
 }
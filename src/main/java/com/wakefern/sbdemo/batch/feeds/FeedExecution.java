@@ -4,6 +4,7 @@ import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.EnumType;
 import jakarta.persistence.Enumerated;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
@@ -11,6 +12,7 @@ import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.OneToMany;
+import jakarta.persistence.OrderBy;
 import jakarta.persistence.PrePersist;
 import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
@@ -23,6 +25,10 @@ import java.util.List;
 @Entity
 @Table(name = "feed_executions", indexes = {
     @Index(name = "idx_feed_execution_feed_id", columnList = "feed_id"),
+    // Keyset pagination of a feed's history, see ExecutionCursor
+    @Index(name = "idx_feed_execution_feed_start_time", columnList = "feed_id, start_time, id"),
+    // History filtered by status
+    @Index(name = "idx_feed_execution_feed_status_start_time", columnList = "feed_id, status, start_time"),
     @Index(name = "idx_feed_execution_status", columnList = "status"),
     @Index(name = "idx_feed_execution_start_time", columnList = "start_time"),
     @Index(name = "idx_feed_execution_created_at", columnList = "created_at")
@@ -32,27 +38,27 @@ import java.util.List;
 public class FeedExecution {
 
     public enum Status {
-        SUCCESS, FAILED, IN_PROGRESS
+        QUEUED, SUCCESS, FAILED, IN_PROGRESS, CANCELLED
     }
 
     @Id
     @Column(nullable = false, updatable = false)
     @SequenceGenerator(
-            name = "primary_sequence",
-            sequenceName = "primary_sequence",
-            allocationSize = 1,
+            name = "feed_execution_sequence",
+            sequenceName = "feed_execution_sequence",
+            allocationSize = 50,
             initialValue = 10000
     )
     @GeneratedValue(
             strategy = GenerationType.SEQUENCE,
-            generator = "primary_sequence"
+            generator = "feed_execution_sequence"
     )
     private Long id;
 
     @Column(name = "feed_id", nullable = false)
     private Long feedId;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "feed_id", insertable = false, updatable = false)
     private Feed feed;
 
@@ -75,10 +81,14 @@ public class FeedExecution {
     @Column(name = "duration_millis")
     private Long durationMillis;
 
+    @Column(name = "resumed_from_execution_id")
+    private Long resumedFromExecutionId;
+
     @Column(name = "created_at", nullable = false)
     private LocalDateTime createdAt;
 
     @OneToMany(mappedBy = "execution")
+    @OrderBy("stageOrder")
     private List<FeedExecutionStage> stages = new ArrayList<>();
 
     @OneToMany(mappedBy = "execution")
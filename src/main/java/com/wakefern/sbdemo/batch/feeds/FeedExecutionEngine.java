@@ -0,0 +1,529 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import com.wakefern.sbdemo.util.NotFoundException;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+
+/**
+ * Runs feed executions on a bounded worker pool so request threads only enqueue work.
+ * Each accepted execution gets its database record up front, which gives callers an
+ * execution ID to poll while the run is queued or in progress.
+ * <p>
+ * A feed has at most one execution queued or running on the pool at a time. What happens to
+ * further executions of a busy feed is decided by the {@link OverlapPolicy}, executions queued
+ * behind a busy feed wait outside the pool and are handed to it once the feed is free.
+ * Independently of the pool size, no more than {@code max-concurrent} executions run at once.
+ * An execution takes its slot before it is handed to the pool and waits for one outside of it,
+ * so workers never block on a slot. Executions waiting for a slot count towards the queue
+ * capacity, with the caller-runs policy a new execution that finds it full runs on the
+ * submitting thread without a slot.
+ */
+@Service
+public class FeedExecutionEngine {
+
+    public enum RejectionPolicy {
+        /** Reject new executions with 503 once the queue is full */
+        REJECT,
+        /** Run the execution on the submitting thread once the queue is full */
+        CALLER_RUNS
+    }
+
+    public enum OverlapPolicy {
+        /** Reject new executions of a feed with 409 while it has one queued or running */
+        REJECT,
+        /** Queue new executions of a feed and run them one after the other */
+        QUEUE,
+        /** Return the execution the feed already has queued or running instead of starting another */
+        COALESCE
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(FeedExecutionEngine.class);
+
+    private final FeedService feedService;
+    private final FeedExecutionHistoryService executionHistoryService;
+    private final ExecutionHistoryWriter historyWriter;
+    private final CheckpointStore checkpointStore;
+    private final RejectionPolicy rejectionPolicy;
+    private final OverlapPolicy overlapPolicy;
+    private final int maxQueuedPerFeed;
+    private final int queueCapacity;
+    private final Duration resultRetention;
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService reaper;
+    private final Map<Long, ExecutionResult> executions = new ConcurrentHashMap<>();
+    // Tasks accepted but not picked up by a worker yet, so cancelling them frees their queue slot
+    private final Map<Long, QueuedExecution> queuedTasks = new ConcurrentHashMap<>();
+    // Per-feed guard, keyed by feed ID, serializing the executions of each feed
+    private final Map<Long, FeedLane> lanes = new ConcurrentHashMap<>();
+    // Executions whose feed is free, waiting for one of the max-concurrent slots, guarded by itself
+    private final Deque<QueuedExecution> slotWaiting = new ArrayDeque<>();
+    private int freeSlots;
+
+    public FeedExecutionEngine(final FeedService feedService,
+                               final FeedExecutionHistoryService executionHistoryService,
+                               final ExecutionHistoryWriter historyWriter,
+                               final CheckpointStore checkpointStore,
+                               @Value("${app.feeds.execution.pool-size:4}") final int poolSize,
+                               @Value("${app.feeds.execution.queue-capacity:20}") final int queueCapacity,
+                               @Value("${app.feeds.execution.rejection-policy:REJECT}") final RejectionPolicy rejectionPolicy,
+                               @Value("${app.feeds.execution.overlap-policy:QUEUE}") final OverlapPolicy overlapPolicy,
+                               @Value("${app.feeds.execution.max-queued-per-feed:5}") final int maxQueuedPerFeed,
+                               @Value("${app.feeds.execution.max-concurrent:${app.feeds.execution.pool-size:4}}") final int maxConcurrent,
+                               @Value("${app.feeds.execution.result-retention:PT10M}") final Duration resultRetention) {
+        this.feedService = feedService;
+        this.executionHistoryService = executionHistoryService;
+        this.historyWriter = historyWriter;
+        this.checkpointStore = checkpointStore;
+        this.rejectionPolicy = rejectionPolicy;
+        this.overlapPolicy = overlapPolicy;
+        this.maxQueuedPerFeed = maxQueuedPerFeed;
+        this.queueCapacity = queueCapacity;
+        this.freeSlots = maxConcurrent;
+        this.resultRetention = resultRetention;
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                // Caller runs is applied by enqueue only, executions handed over later must never run on the caller
+                new CustomizableThreadFactory("feed-execution-"), new ThreadPoolExecutor.AbortPolicy());
+        this.reaper = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("feed-execution-reaper-"));
+    }
+
+    /**
+     * Accept an execution of the given feed and queue it for a worker thread.
+     * @return the live execution result, already carrying its execution ID, or the result of
+     *         the execution already in progress if the overlap policy is COALESCE
+     * @throws ExecutionRejectedException if the queue is full and the policy is REJECT
+     * @throws FeedBusyException if the feed has an execution in progress and the overlap policy is REJECT
+     */
+    public ExecutionResult submit(final Long feedId, final String parameters) {
+        // Fail fast on unknown feeds and on a full queue before writing anything
+        feedService.get(feedId);
+        return enqueue(feedId, parameters, null);
+    }
+
+    /**
+     * Accept a new execution that continues a failed or cancelled execution from its checkpoint.
+     * It runs with the parameters of the failed execution and skips the stages whose
+     * outputs were checkpointed, the failed execution can only be resumed once. Resumes are
+     * never coalesced into an execution in progress, they are queued behind it instead.
+     * The checkpoint is claimed before the resume is queued and given back if it does not run.
+     * @return the live execution result of the resuming execution
+     * @throws NotFoundException if the execution does not exist for this feed
+     * @throws ExecutionNotResumableException if the execution did not fail, has no checkpoint or is being resumed
+     */
+    public ExecutionResult resume(final Long feedId, final Long executionId) {
+        final FeedExecution failedExecution = executionHistoryService.getExecutionWithDetails(executionId)
+                .filter(execution -> execution.getFeedId().equals(feedId))
+                .orElseThrow(NotFoundException::new);
+        if (failedExecution.getStatus() != FeedExecution.Status.FAILED
+                && failedExecution.getStatus() != FeedExecution.Status.CANCELLED) {
+            throw new ExecutionNotResumableException("Only failed or cancelled executions can be resumed, execution "
+                    + executionId + " is " + failedExecution.getStatus());
+        }
+        checkpointStore.claim(failedExecution);
+        try {
+            return enqueue(feedId, failedExecution.getParameters(), executionId);
+        } catch (RuntimeException e) {
+            checkpointStore.release(executionId);
+            throw e;
+        }
+    }
+
+    /**
+     * Check whether a stored execution can be resumed
+     */
+    public boolean isResumable(final FeedExecution execution) {
+        return (execution.getStatus() == FeedExecution.Status.FAILED || execution.getStatus() == FeedExecution.Status.CANCELLED)
+                && checkpointStore.exists(execution);
+    }
+
+    /**
+     * Cancel a queued or running execution. A queued execution is removed from the queue and
+     * stored as cancelled right away, a running one stops its stages and is stored as
+     * cancelled by its worker once they have been interrupted.
+     * @return the live execution result
+     * @throws NotFoundException if the execution does not exist for this feed
+     * @throws ExecutionNotCancellableException if the execution already finished
+     */
+    public ExecutionResult cancel(final Long feedId, final Long executionId) {
+        final ExecutionResult result = find(executionId)
+                .filter(execution -> feedId.equals(execution.getFeedId()))
+                .orElseThrow(() -> executionHistoryService.getExecutionWithDetails(executionId)
+                        .filter(execution -> execution.getFeedId().equals(feedId))
+                        .<RuntimeException>map(execution -> new ExecutionNotCancellableException("Execution "
+                                + executionId + " already finished with status " + execution.getStatus()))
+                        .orElseGet(NotFoundException::new));
+        if (result.isFinished() || !result.getCancellationToken().cancel("Cancelled on request")) {
+            throw new ExecutionNotCancellableException("Execution " + executionId + " already finished or is being cancelled");
+        }
+        logger.info("Cancelling execution {} of feed {}", executionId, feedId);
+
+        final QueuedExecution task = queuedTasks.remove(executionId);
+        if (task != null && task.withdraw()) {
+            // Never picked up by a worker, finish it here
+            releaseCheckpoint(result);
+            result.setCancelled("Execution cancelled before it started");
+            historyWriter.write(feedId, task.parameters(), result);
+            scheduleRemoval(result);
+        }
+        return result;
+    }
+
+    private ExecutionResult enqueue(final Long feedId, final String parameters, final Long resumedFromExecutionId) {
+        if (rejectionPolicy == RejectionPolicy.REJECT && getQueueDepth() >= queueCapacity) {
+            throw rejected(feedId);
+        }
+
+        final FeedLane lane = lanes.computeIfAbsent(feedId, id -> new FeedLane());
+        synchronized (lane) {
+            final ExecutionResult inProgress = admit(lane, feedId, resumedFromExecutionId);
+            if (inProgress != null) {
+                return inProgress;
+            }
+        }
+
+        // The record is written outside the lane lock, so a slow insert never holds up other submits of the feed
+        final ExecutionResult result = new ExecutionResult();
+        result.setFeedId(feedId);
+        result.setResumedFromExecutionId(resumedFromExecutionId);
+        result.setStatus(ExecutionResult.Status.QUEUED);
+        result.setExecutionId(executionHistoryService.createExecution(feedId, parameters, result).getId());
+
+        final QueuedExecution task = new QueuedExecution(lane, feedId, parameters, result);
+        final ExecutionResult coalesced;
+        boolean feedBusy = false;
+        try {
+            synchronized (lane) {
+                // Checked again, another execution may have taken the feed while the record was written
+                coalesced = admit(lane, feedId, resumedFromExecutionId);
+                if (coalesced == null) {
+                    executions.put(result.getExecutionId(), result);
+                    queuedTasks.put(result.getExecutionId(), task);
+                    feedBusy = lane.active != null;
+                    if (feedBusy) {
+                        lane.waiting.add(task);
+                        logger.info("Feed {} is busy, execution {} waits for execution {}",
+                                feedId, result.getExecutionId(), lane.active.result.getExecutionId());
+                    } else {
+                        lane.active = task;
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            executionHistoryService.discardExecution(result.getExecutionId());
+            throw e;
+        }
+        if (coalesced != null) {
+            executionHistoryService.discardExecution(result.getExecutionId());
+            return coalesced;
+        }
+
+        // Hand over outside the lane lock, the caller-runs policy may run the whole execution here
+        if (!feedBusy && !dispatch(task, true)) {
+            if (rejectionPolicy == RejectionPolicy.CALLER_RUNS && !executor.isShutdown()) {
+                // Runs with the slot dispatch took for it if the pool rejected it, without one if no slot was free
+                task.run();
+                return task.result;
+            }
+            final Long executionId = task.result.getExecutionId();
+            queuedTasks.remove(executionId);
+            executions.remove(executionId);
+            executionHistoryService.discardExecution(executionId);
+            if (task.holdsSlot) {
+                releaseSlot();
+            }
+            advance(lane, task);
+            throw rejected(feedId);
+        }
+        return task.result;
+    }
+
+    /**
+     * Check whether the feed takes another execution, called with the lane lock held
+     * @return the execution in progress to coalesce into, or null if a new execution is admitted
+     */
+    private ExecutionResult admit(final FeedLane lane, final Long feedId, final Long resumedFromExecutionId) {
+        if (lane.active == null) {
+            return null;
+        }
+        final ExecutionResult inProgress = lane.active.result;
+        if (overlapPolicy == OverlapPolicy.REJECT) {
+            throw new FeedBusyException("Feed " + feedId + " already has execution "
+                    + inProgress.getExecutionId() + " in progress");
+        }
+        if (overlapPolicy == OverlapPolicy.COALESCE && resumedFromExecutionId == null) {
+            logger.info("Feed {} is busy, coalescing the new execution into execution {}",
+                    feedId, inProgress.getExecutionId());
+            return inProgress;
+        }
+        if (lane.waiting.size() >= maxQueuedPerFeed) {
+            logger.warn("Rejected execution of feed {}: {} executions already waiting for it",
+                    feedId, lane.waiting.size());
+            throw new ExecutionRejectedException("Feed " + feedId + " has too many executions waiting, try again later");
+        }
+        return null;
+    }
+
+    /**
+     * Release the feed from a finished or withdrawn execution and start the next one waiting for it
+     */
+    private void advance(final FeedLane lane, final QueuedExecution finished) {
+        QueuedExecution previous = finished;
+        while (true) {
+            final QueuedExecution next;
+            synchronized (lane) {
+                if (lane.active != previous) {
+                    return;
+                }
+                next = lane.waiting.poll();
+                lane.active = next;
+            }
+            if (next == null || dispatch(next, false)) {
+                return;
+            }
+            // Never run it on this thread, which may be a request thread or a cancellation
+            reject(next);
+            releaseSlot();
+            previous = next;
+        }
+    }
+
+    /**
+     * Take a slot for an execution whose feed is free and hand it to the pool, or leave it
+     * waiting for a slot if all of them are taken
+     * @param bounded whether the execution is new and may only wait for a slot while the queue has room,
+     *                executions handed over from their feed take the place of the one that finished
+     * @return false if the queue is full, or if the pool rejected the execution, which still holds its slot then
+     */
+    private boolean dispatch(final QueuedExecution task, final boolean bounded) {
+        synchronized (slotWaiting) {
+            if (freeSlots == 0) {
+                if (bounded && getQueueDepth() >= queueCapacity) {
+                    return false;
+                }
+                slotWaiting.add(task);
+                logger.info("Execution {} waits for a free execution slot", task.result.getExecutionId());
+                return true;
+            }
+            freeSlots--;
+            task.holdsSlot = true;
+        }
+        return submit(task);
+    }
+
+    /**
+     * Pass a slot on to the execution waiting longest for one, or free it
+     */
+    private void releaseSlot() {
+        final QueuedExecution next;
+        synchronized (slotWaiting) {
+            next = slotWaiting.poll();
+            if (next == null) {
+                freeSlots++;
+                return;
+            }
+            next.holdsSlot = true;
+        }
+        if (!submit(next)) {
+            reject(next);
+            releaseSlot();
+            advance(next.lane, next);
+        }
+    }
+
+    private boolean submit(final QueuedExecution task) {
+        try {
+            executor.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Fail an accepted execution the pool no longer takes and give back its checkpoint
+     */
+    private void reject(final QueuedExecution task) {
+        final ExecutionResult result = task.result;
+        logger.warn("Execution {} of feed {} was rejected: queue is full ({} queued, {} running)",
+                result.getExecutionId(), task.feedId, getQueueDepth(), executor.getActiveCount());
+        queuedTasks.remove(result.getExecutionId());
+        releaseCheckpoint(result);
+        result.setFailed("Execution rejected, the execution queue is full");
+        historyWriter.write(task.feedId, task.parameters, result);
+        scheduleRemoval(result);
+    }
+
+    /**
+     * Find a queued, running or recently finished execution
+     */
+    public Optional<ExecutionResult> find(final Long executionId) {
+        return Optional.ofNullable(executions.get(executionId));
+    }
+
+    /**
+     * Get the executions that are queued or running, in no particular order
+     */
+    public List<ExecutionResult> findUnfinished() {
+        return executions.values().stream()
+                .filter(result -> !result.isFinished())
+                .toList();
+    }
+
+    /**
+     * Get the number of executions queued for a worker or waiting for a slot
+     */
+    public int getQueueDepth() {
+        synchronized (slotWaiting) {
+            return executor.getQueue().size() + slotWaiting.size();
+        }
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    private void run(final Long feedId, final String parameters, final ExecutionResult result) {
+        try {
+            if (result.getCancellationToken().isCancelled()) {
+                // Cancelled while a worker was taking it off the queue
+                releaseCheckpoint(result);
+                result.setCancelled("Execution cancelled before it started");
+                historyWriter.write(feedId, parameters, result);
+                return;
+            }
+            historyWriter.track(feedId, parameters, result);
+            feedService.executeFeed(feedId, parameters, result);
+        } catch (Exception e) {
+            logger.error("Execution {} of feed {} failed", result.getExecutionId(), feedId, e);
+            if (!result.isFinished()) {
+                result.setFailed("Execution failed: " + e.getMessage());
+                historyWriter.write(feedId, parameters, result);
+            }
+        } finally {
+            scheduleRemoval(result);
+        }
+    }
+
+    /**
+     * The execution queued or running for a feed and the executions waiting for it,
+     * guarded by the lane's monitor
+     */
+    private static final class FeedLane {
+
+        private QueuedExecution active;
+        private final Deque<QueuedExecution> waiting = new ArrayDeque<>();
+
+    }
+
+    /**
+     * An accepted execution waiting for its feed or in the worker queue
+     */
+    private final class QueuedExecution implements Runnable {
+
+        private final FeedLane lane;
+        private final Long feedId;
+        private final String parameters;
+        private final ExecutionResult result;
+        // Whether it took one of the max-concurrent slots, set under the slotWaiting lock before it runs
+        private boolean holdsSlot;
+
+        QueuedExecution(final FeedLane lane, final Long feedId, final String parameters, final ExecutionResult result) {
+            this.lane = lane;
+            this.feedId = feedId;
+            this.parameters = parameters;
+            this.result = result;
+        }
+
+        String parameters() {
+            return parameters;
+        }
+
+        /**
+         * Take the execution back before it started
+         * @return true if it will not be run
+         */
+        boolean withdraw() {
+            synchronized (lane) {
+                if (lane.waiting.remove(this)) {
+                    return true;
+                }
+            }
+            final boolean waitingForSlot;
+            synchronized (slotWaiting) {
+                waitingForSlot = slotWaiting.remove(this);
+            }
+            if (waitingForSlot) {
+                advance(lane, this);
+                return true;
+            }
+            if (executor.remove(this)) {
+                releaseSlot();
+                advance(lane, this);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void run() {
+            queuedTasks.remove(result.getExecutionId());
+            try {
+                FeedExecutionEngine.this.run(feedId, parameters, result);
+            } finally {
+                if (holdsSlot) {
+                    releaseSlot();
+                }
+                advance(lane, this);
+            }
+        }
+    }
+
+    /**
+     * Give back the checkpoint a resume that never started claimed
+     */
+    private void releaseCheckpoint(final ExecutionResult result) {
+        if (result.getResumedFromExecutionId() != null) {
+            checkpointStore.release(result.getResumedFromExecutionId());
+        }
+    }
+
+    private void scheduleRemoval(final ExecutionResult result) {
+        // Keep finished results around for a while so pollers can pick up the outcome
+        reaper.schedule(() -> executions.remove(result.getExecutionId()),
+                resultRetention.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private ExecutionRejectedException rejected(final Long feedId) {
+        logger.warn("Rejected execution of feed {}: queue is full ({} queued, {} running)",
+                feedId, getQueueDepth(), executor.getActiveCount());
+        return new ExecutionRejectedException("Execution queue is full, try again later");
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            executor.shutdownNow();
+        }
+        reaper.shutdownNow();
+    }
+
+}
@@ -16,9 +16,12 @@ public class FeedExecutionHistoryDTO {
     @Schema(description = "Feed ID", example = "10000")
     private Long feedId;
 
-    @Schema(description = "Execution status", example = "SUCCESS", allowableValues = {"SUCCESS", "FAILED", "IN_PROGRESS"})
+    @Schema(description = "Execution status", example = "SUCCESS", allowableValues = {"QUEUED", "IN_PROGRESS", "SUCCESS", "FAILED", "CANCELLED"})
     private String status;
 
+    @Schema(description = "ID of the failed execution this execution resumed", example = "10000")
+    private Long resumedFromExecutionId;
+
     @Schema(description = "Execution start time")
     private LocalDateTime startTime;
 
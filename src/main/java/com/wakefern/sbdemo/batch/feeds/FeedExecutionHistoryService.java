@@ -1,144 +1,360 @@
 package com.wakefern.sbdemo.batch.feeds;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 @Transactional
 public class FeedExecutionHistoryService {
 
+    public enum LogStorage {
+        /** One {@link FeedExecutionLog} row per line, the lines can be queried individually */
+        ROWS,
+        /** Compressed {@link FeedExecutionLogChunk} blocks of lines, much smaller and cheaper to insert */
+        CHUNKED
+    }
+
     private final FeedExecutionRepository feedExecutionRepository;
     private final FeedExecutionStageRepository feedExecutionStageRepository;
     private final FeedExecutionLogRepository feedExecutionLogRepository;
+    private final FeedExecutionLogChunkRepository feedExecutionLogChunkRepository;
+    private final FeedExecutionStatsService statsService;
     private final ObjectMapper objectMapper;
+    private final EntityManager entityManager;
+    private final int flushSize;
+    private final LogStorage logStorage;
+    private final int chunkLines;
 
     @Autowired
     public FeedExecutionHistoryService(FeedExecutionRepository feedExecutionRepository,
                                        FeedExecutionStageRepository feedExecutionStageRepository,
                                        FeedExecutionLogRepository feedExecutionLogRepository,
-                                       ObjectMapper objectMapper) {
+                                       FeedExecutionLogChunkRepository feedExecutionLogChunkRepository,
+                                       FeedExecutionStatsService statsService,
+                                       ObjectMapper objectMapper,
+                                       EntityManager entityManager,
+                                       @Value("${app.feeds.history.flush-size:1000}") int flushSize,
+                                       @Value("${app.feeds.history.log-storage:ROWS}") LogStorage logStorage,
+                                       @Value("${app.feeds.history.log-chunk-lines:500}") int chunkLines) {
         this.feedExecutionRepository = feedExecutionRepository;
         this.feedExecutionStageRepository = feedExecutionStageRepository;
         this.feedExecutionLogRepository = feedExecutionLogRepository;
+        this.feedExecutionLogChunkRepository = feedExecutionLogChunkRepository;
+        this.statsService = statsService;
         this.objectMapper = objectMapper;
+        this.entityManager = entityManager;
+        this.flushSize = flushSize;
+        this.logStorage = logStorage;
+        this.chunkLines = chunkLines;
     }
 
     /**
-     * Persist an ExecutionResult to the database
+     * Create the execution record for a run that has been accepted but not started yet,
+     * so callers get an execution ID to poll before any stage has run
      */
-    public FeedExecution persistExecution(Long feedId, String parameters, ExecutionResult executionResult) {
-        // Create and save FeedExecution
+    public FeedExecution createExecution(Long feedId, String parameters, ExecutionResult executionResult) {
         FeedExecution feedExecution = new FeedExecution();
         feedExecution.setFeedId(feedId);
         feedExecution.setStatus(mapExecutionStatus(executionResult.getStatus()));
         feedExecution.setStartTime(executionResult.getStartTime());
-        feedExecution.setEndTime(executionResult.getEndTime());
         feedExecution.setParameters(parameters);
-        feedExecution.setError(executionResult.getError());
-        feedExecution.setDurationMillis(executionResult.getDurationMillis());
+        feedExecution.setResumedFromExecutionId(executionResult.getResumedFromExecutionId());
+        FeedExecution saved = feedExecutionRepository.save(feedExecution);
+        statsService.executionChanged(feedId, null, null, saved.getStatus(), saved.getDurationMillis());
+        return saved;
+    }
 
-        feedExecution = feedExecutionRepository.save(feedExecution);
+    /**
+     * Get the names of the stages that succeeded in an execution
+     */
+    @Transactional(readOnly = true)
+    public Set<String> getSucceededStageNames(Long executionId) {
+        return feedExecutionStageRepository.findByExecutionIdOrderByStageOrder(executionId).stream()
+                .filter(stage -> stage.getStatus() == FeedExecutionStage.Status.SUCCESS)
+                .map(FeedExecutionStage::getName)
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Remove an execution record that was created but never handed to a worker
+     */
+    public void discardExecution(Long executionId) {
+        feedExecutionRepository.findById(executionId).ifPresent(execution -> {
+            feedExecutionRepository.delete(execution);
+            statsService.executionChanged(execution.getFeedId(), execution.getStatus(), execution.getDurationMillis(), null, null);
+        });
+    }
+
+    /**
+     * Persist an ExecutionResult to the database. Stage and log rows are inserted in JDBC batches
+     * and flushed in chunks of {@code app.feeds.history.flush-size} rows, so the persistence
+     * context does not grow with the size of the log.
+     */
+    public FeedExecution persistExecution(Long feedId, String parameters, ExecutionResult executionResult) {
+        // Reuse the record created on submission, otherwise create a new one
+        FeedExecution feedExecution = saveExecution(feedId, parameters, executionResult);
 
         // Persist stages
+        List<Long> stageIds = List.of();
         if (executionResult.getStages() != null && !executionResult.getStages().isEmpty()) {
-            persistStages(feedExecution.getId(), executionResult.getStages());
+            stageIds = persistStages(feedExecution.getId(), executionResult.getStages());
         }
 
-        // Persist logs
-        if (executionResult.getLogs() != null && !executionResult.getLogs().isEmpty()) {
-            persistLogs(feedExecution.getId(), executionResult.getLogs());
+        // Persist logs, stage logs are part of the execution log
+        if (!executionResult.getLog().isEmpty()) {
+            persistLogs(feedExecution.getId(), executionResult.getLog().snapshot(), stageIds, false);
         }
 
+        entityManager.flush();
         return feedExecution;
     }
 
     /**
-     * Persist execution stages
+     * Update the execution record of a running execution with its current status. Together with
+     * {@link #insertStage}, {@link #updateStage} and {@link #appendLogs} this writes the history
+     * of an execution while it runs.
      */
-    private void persistStages(Long executionId, List<ExecutionStage> stages) {
-        for (int i = 0; i < stages.size(); i++) {
-            ExecutionStage stage = stages.get(i);
-            
-            FeedExecutionStage feedExecutionStage = new FeedExecutionStage();
-            feedExecutionStage.setExecutionId(executionId);
-            feedExecutionStage.setName(stage.getName());
-            feedExecutionStage.setDescription(stage.getDescription());
-            feedExecutionStage.setStatus(mapStageStatus(stage.getStatus()));
-            feedExecutionStage.setStartTime(stage.getStartTime());
-            feedExecutionStage.setEndTime(stage.getEndTime());
-            feedExecutionStage.setError(stage.getError());
-            feedExecutionStage.setDurationMillis(stage.getDurationMillis());
-            feedExecutionStage.setStageOrder(i + 1);
-
-            // Convert parameters map to JSON string
-            if (stage.getParameters() != null && !stage.getParameters().isEmpty()) {
-                try {
-                    feedExecutionStage.setParameters(objectMapper.writeValueAsString(stage.getParameters()));
-                } catch (Exception e) {
-                    // If JSON conversion fails, store as string representation
-                    feedExecutionStage.setParameters(stage.getParameters().toString());
-                }
+    public void updateExecution(Long feedId, String parameters, ExecutionResult executionResult) {
+        saveExecution(feedId, parameters, executionResult);
+    }
+
+    /**
+     * Insert the record of a stage of a running execution
+     * @return The ID of the stage record
+     */
+    public Long insertStage(Long executionId, ExecutionStage stage) {
+        FeedExecutionStage feedExecutionStage = new FeedExecutionStage();
+        feedExecutionStage.setExecutionId(executionId);
+        feedExecutionStage.setStageOrder(stage.getIndex() + 1);
+        mapStage(stage, feedExecutionStage);
+        // The ID is assigned from the pooled sequence on persist, the insert is batched on flush
+        entityManager.persist(feedExecutionStage);
+        return feedExecutionStage.getId();
+    }
+
+    /**
+     * Update the record of a stage of a running execution with its current status
+     */
+    public void updateStage(Long stageId, ExecutionStage stage) {
+        FeedExecutionStage feedExecutionStage = entityManager.find(FeedExecutionStage.class, stageId);
+        if (feedExecutionStage != null) {
+            mapStage(stage, feedExecutionStage);
+        }
+    }
+
+    /**
+     * Append log events of a running execution. With chunked storage the events first fill up
+     * the last chunk of their stage, so writing the log every few lines still stores full chunks.
+     * @param stageIds The IDs of the execution's stage records, in stage order
+     */
+    public void appendLogs(Long executionId, List<LogEvent> logs, List<Long> stageIds) {
+        persistLogs(executionId, logs, stageIds, true);
+    }
+
+    /**
+     * Mark executions that were queued or running when the application stopped as failed
+     * @param startedAt When this run of the application started, executions created since are its own
+     * @return The number of executions marked
+     */
+    public int failAbandonedExecutions(LocalDateTime startedAt) {
+        List<FeedExecution.Status> abandoned = List.of(FeedExecution.Status.QUEUED, FeedExecution.Status.IN_PROGRESS);
+        List<FeedExecutionRepository.StatusSummary> summaries =
+                feedExecutionRepository.summarizeByStatusInCreatedBefore(abandoned, startedAt);
+        int failed = feedExecutionRepository.updateStatusCreatedBefore(abandoned, startedAt,
+                FeedExecution.Status.FAILED, "Execution was interrupted by an application shutdown");
+        for (FeedExecutionRepository.StatusSummary summary : summaries) {
+            statsService.record(summary.getFeedId(), FeedExecutionStatsService.Delta.of(FeedExecution.Status.FAILED,
+                    summary.getExecutions(), 0, 0).plus(FeedExecutionStatsService.Delta.of(summary).negate()));
+        }
+        return failed;
+    }
+
+    /**
+     * Mark an execution whose history could not be written as failed, so its record does not
+     * stay queued or running
+     */
+    public void failExecution(Long executionId, String error) {
+        feedExecutionRepository.findById(executionId).ifPresent(feedExecution -> {
+            FeedExecution.Status oldStatus = feedExecution.getStatus();
+            feedExecution.setStatus(FeedExecution.Status.FAILED);
+            feedExecution.setError(error);
+            if (feedExecution.getEndTime() == null) {
+                feedExecution.setEndTime(LocalDateTime.now());
             }
+            statsService.executionChanged(feedExecution.getFeedId(), oldStatus, feedExecution.getDurationMillis(),
+                    FeedExecution.Status.FAILED, feedExecution.getDurationMillis());
+        });
+    }
+
+    private FeedExecution saveExecution(Long feedId, String parameters, ExecutionResult executionResult) {
+        FeedExecution feedExecution = Optional.ofNullable(executionResult.getExecutionId())
+                .flatMap(feedExecutionRepository::findById)
+                .orElseGet(FeedExecution::new);
+        // What the record counted for in the statistics before, nothing if it is new
+        FeedExecution.Status oldStatus = feedExecution.getStatus();
+        Long oldDurationMillis = feedExecution.getDurationMillis();
+        feedExecution.setFeedId(feedId);
+        feedExecution.setStatus(mapExecutionStatus(executionResult.getStatus()));
+        feedExecution.setStartTime(executionResult.getStartTime());
+        feedExecution.setEndTime(executionResult.getEndTime());
+        feedExecution.setParameters(parameters);
+        feedExecution.setError(executionResult.getError());
+        feedExecution.setDurationMillis(executionResult.getDurationMillis());
+        FeedExecution saved = feedExecutionRepository.save(feedExecution);
+        statsService.executionChanged(feedId, oldStatus, oldDurationMillis, saved.getStatus(), saved.getDurationMillis());
+        return saved;
+    }
+
+    /**
+     * Persist execution stages
+     * @return The IDs of the persisted stages, in stage order
+     */
+    private List<Long> persistStages(Long executionId, List<ExecutionStage> stages) {
+        List<Long> stageIds = new ArrayList<>(stages.size());
+        for (ExecutionStage stage : stages) {
+            stageIds.add(insertStage(executionId, stage));
+        }
+        return stageIds;
+    }
 
-            FeedExecutionStage savedStage = feedExecutionStageRepository.save(feedExecutionStage);
+    private void mapStage(ExecutionStage stage, FeedExecutionStage feedExecutionStage) {
+        feedExecutionStage.setName(stage.getName());
+        feedExecutionStage.setDescription(stage.getDescription());
+        feedExecutionStage.setStatus(mapStageStatus(stage.getStatus()));
+        feedExecutionStage.setStartTime(stage.getStartTime());
+        feedExecutionStage.setEndTime(stage.getEndTime());
+        feedExecutionStage.setError(stage.getError());
+        feedExecutionStage.setDurationMillis(stage.getDurationMillis());
+        feedExecutionStage.setIdleMillis(stage.getIdleMillis());
+        feedExecutionStage.setBlockedMillis(stage.getBlockedMillis());
 
-            // Persist stage-specific logs
-            if (stage.getLogs() != null && !stage.getLogs().isEmpty()) {
-                persistStageLogs(executionId, savedStage.getId(), stage.getLogs());
+        // Convert parameters map to JSON string
+        if (stage.getParameters() != null && !stage.getParameters().isEmpty()) {
+            try {
+                feedExecutionStage.setParameters(objectMapper.writeValueAsString(stage.getParameters()));
+            } catch (Exception e) {
+                // If JSON conversion fails, store as string representation
+                feedExecutionStage.setParameters(stage.getParameters().toString());
             }
         }
     }
 
     /**
-     * Persist execution logs (overall logs)
+     * Persist the execution log in the configured storage, linking stage events to their stage
+     * @param appending Whether earlier events of the execution may have been stored already
      */
-    private void persistLogs(Long executionId, List<String> logs) {
-        for (String logMessage : logs) {
-            FeedExecutionLog feedExecutionLog = new FeedExecutionLog();
-            feedExecutionLog.setExecutionId(executionId);
-            feedExecutionLog.setMessage(logMessage);
-            feedExecutionLog.setLogLevel(determineLogLevel(logMessage));
-            
-            feedExecutionLogRepository.save(feedExecutionLog);
+    private void persistLogs(Long executionId, List<LogEvent> logs, List<Long> stageIds, boolean appending) {
+        if (logStorage == LogStorage.CHUNKED) {
+            persistLogChunks(executionId, logs, stageIds, appending);
+        } else {
+            persistLogRows(executionId, logs, stageIds);
         }
     }
 
     /**
-     * Persist stage-specific logs
+     * Persist the execution log, one row per event
      */
-    private void persistStageLogs(Long executionId, Long stageId, List<String> logs) {
-        for (String logMessage : logs) {
+    private void persistLogRows(Long executionId, List<LogEvent> logs, List<Long> stageIds) {
+        int pending = 0;
+        for (LogEvent event : logs) {
             FeedExecutionLog feedExecutionLog = new FeedExecutionLog();
             feedExecutionLog.setExecutionId(executionId);
-            feedExecutionLog.setStageId(stageId);
-            feedExecutionLog.setMessage(logMessage);
-            feedExecutionLog.setLogLevel(determineLogLevel(logMessage));
+            if (event.getStageIndex() >= 0 && event.getStageIndex() < stageIds.size()) {
+                feedExecutionLog.setStageId(stageIds.get(event.getStageIndex()));
+            }
+            feedExecutionLog.setMessage(event.format());
+            feedExecutionLog.setTimestamp(event.getTimestamp());
+            feedExecutionLog.setLogLevel(event.getLevel().name());
             
-            feedExecutionLogRepository.save(feedExecutionLog);
+            entityManager.persist(feedExecutionLog);
+            if (++pending == flushSize) {
+                flushChunk();
+                pending = 0;
+            }
         }
     }
 
     /**
-     * Determine log level based on message content
+     * Persist the execution log in compressed chunks of up to {@code app.feeds.history.log-chunk-lines}
+     * lines. Lines are grouped by stage, so every chunk belongs to one stage or to the execution.
      */
-    private String determineLogLevel(String message) {
-        String lowerMessage = message.toLowerCase();
-        if (lowerMessage.contains("error") || lowerMessage.contains("failed") || lowerMessage.contains("exception")) {
-            return "ERROR";
-        } else if (lowerMessage.contains("warn") || lowerMessage.contains("warning")) {
-            return "WARN";
-        } else {
-            return "INFO";
+    private void persistLogChunks(Long executionId, List<LogEvent> logs, List<Long> stageIds, boolean appending) {
+        Map<Integer, List<LogEvent>> byStage = new LinkedHashMap<>();
+        for (LogEvent event : logs) {
+            int stageIndex = event.getStageIndex() >= 0 && event.getStageIndex() < stageIds.size()
+                    ? event.getStageIndex() : LogEvent.NO_STAGE;
+            byStage.computeIfAbsent(stageIndex, index -> new ArrayList<>()).add(event);
         }
+        int pending = 0;
+        for (Map.Entry<Integer, List<LogEvent>> entry : byStage.entrySet()) {
+            Long stageId = entry.getKey() == LogEvent.NO_STAGE ? null : stageIds.get(entry.getKey());
+            List<LogEvent> lines = entry.getValue();
+            int from = appending ? appendToOpenChunk(executionId, stageId, lines) : 0;
+            while (from < lines.size()) {
+                int to = Math.min(from + chunkLines, lines.size());
+                persistLogChunk(executionId, stageId, lines.subList(from, to));
+                pending += to - from;
+                from = to;
+                if (pending >= flushSize) {
+                    flushChunk();
+                    pending = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Add lines to the last chunk of a stage, or of the execution as a whole, if it is not full yet
+     * @return The number of lines added
+     */
+    private int appendToOpenChunk(Long executionId, Long stageId, List<LogEvent> lines) {
+        Optional<FeedExecutionLogChunk> last = stageId == null
+                ? feedExecutionLogChunkRepository.findFirstByExecutionIdAndStageIdIsNullOrderByIdDesc(executionId)
+                : feedExecutionLogChunkRepository.findFirstByExecutionIdAndStageIdOrderByIdDesc(executionId, stageId);
+        if (last.isEmpty() || last.get().getLineCount() >= chunkLines) {
+            return 0;
+        }
+        FeedExecutionLogChunk chunk = last.get();
+        int added = Math.min(chunkLines - chunk.getLineCount(), lines.size());
+        // Managed, the update is written with the next flush
+        chunk.setData(LogChunkCodec.append(chunk, lines.subList(0, added)));
+        chunk.setLineCount(chunk.getLineCount() + added);
+        return added;
+    }
+
+    private void persistLogChunk(Long executionId, Long stageId, List<LogEvent> lines) {
+        FeedExecutionLogChunk chunk = new FeedExecutionLogChunk();
+        chunk.setExecutionId(executionId);
+        chunk.setStageId(stageId);
+        chunk.setFirstTimestamp(lines.get(0).getTimestamp());
+        chunk.setLineCount(lines.size());
+        chunk.setData(LogChunkCodec.encode(lines, chunk.getFirstTimestamp()));
+        entityManager.persist(chunk);
+    }
+
+    /**
+     * Write the pending inserts and detach them, the rows are not read back
+     */
+    private void flushChunk() {
+        entityManager.flush();
+        entityManager.clear();
     }
 
     /**
@@ -146,9 +362,11 @@ public class FeedExecutionHistoryService {
      */
     private FeedExecution.Status mapExecutionStatus(ExecutionResult.Status status) {
         return switch (status) {
+            case QUEUED -> FeedExecution.Status.QUEUED;
             case SUCCESS -> FeedExecution.Status.SUCCESS;
             case FAILED -> FeedExecution.Status.FAILED;
             case IN_PROGRESS -> FeedExecution.Status.IN_PROGRESS;
+            case CANCELLED -> FeedExecution.Status.CANCELLED;
         };
     }
 
@@ -161,57 +379,63 @@ public class FeedExecutionHistoryService {
             case FAILED -> FeedExecutionStage.Status.FAILED;
             case IN_PROGRESS -> FeedExecutionStage.Status.IN_PROGRESS;
             case PENDING -> FeedExecutionStage.Status.PENDING;
+            case CANCELLED -> FeedExecutionStage.Status.CANCELLED;
         };
     }
 
     // Query methods for retrieving execution history
 
     /**
-     * Get execution history for a specific feed
+     * A page of execution history, newest first
+     * @param nextCursor The cursor of the following page, null on the last page
      */
-    @Transactional(readOnly = true)
-    public List<FeedExecution> getExecutionHistory(Long feedId) {
-        return feedExecutionRepository.findByFeedIdOrderByStartTimeDesc(feedId);
-    }
-
-    /**
-     * Get paginated execution history for a specific feed
-     */
-    @Transactional(readOnly = true)
-    public Page<FeedExecution> getExecutionHistory(Long feedId, Pageable pageable) {
-        return feedExecutionRepository.findByFeedIdOrderByStartTimeDesc(feedId, pageable);
+    public record ExecutionPage(List<ExecutionSummary> executions, String nextCursor) {
     }
 
     /**
-     * Get execution history by status
+     * Get a page of the execution history of a feed matching the filter, in one query
+     * @param cursor The cursor returned with the previous page, null for the first page
      */
     @Transactional(readOnly = true)
-    public List<FeedExecution> getExecutionHistoryByStatus(FeedExecution.Status status) {
-        return feedExecutionRepository.findByStatusOrderByStartTimeDesc(status);
+    public ExecutionPage getExecutionHistory(Long feedId, ExecutionHistoryFilter filter, String cursor, int limit) {
+        ExecutionCursor position = ExecutionCursor.decode(cursor);
+        if (filter.to() != null && position.startTime().isAfter(filter.to())) {
+            position = new ExecutionCursor(filter.to(), Long.MAX_VALUE);
+        }
+        Specification<FeedExecution> specification = FeedExecutionSpecifications.matching(feedId, filter)
+                .and(FeedExecutionSpecifications.after(position));
+        // One more than asked for tells whether there is a next page, without a count query
+        List<ExecutionSummary> executions = feedExecutionRepository.findSummaries(specification,
+                Sort.by(Sort.Order.desc("startTime"), Sort.Order.desc("id")), limit + 1);
+        if (executions.size() <= limit) {
+            return new ExecutionPage(executions, null);
+        }
+        List<ExecutionSummary> page = executions.subList(0, limit);
+        return new ExecutionPage(page, ExecutionCursor.after(page.get(limit - 1)).encode());
     }
 
-    /**
-     * Get execution history by date range
-     */
-    @Transactional(readOnly = true)
-    public List<FeedExecution> getExecutionHistoryByDateRange(Long feedId, LocalDateTime startTime, LocalDateTime endTime) {
-        return feedExecutionRepository.findByFeedIdAndStartTimeBetween(feedId, startTime, endTime);
-    }
 
     /**
      * Get a specific execution with stages and logs
      */
     @Transactional(readOnly = true)
     public Optional<FeedExecution> getExecutionWithDetails(Long executionId) {
-        Optional<FeedExecution> execution = feedExecutionRepository.findById(executionId);
+        // Stages are fetched with the execution
+        Optional<FeedExecution> execution = feedExecutionRepository.findWithStagesById(executionId);
         if (execution.isPresent()) {
             FeedExecution feedExecution = execution.get();
-            // Load stages
-            List<FeedExecutionStage> stages = feedExecutionStageRepository.findByExecutionIdOrderByStageOrder(executionId);
-            feedExecution.setStages(stages);
             
-            // Load logs
+            // Load logs, from either storage since the setting may have changed since the execution ran
             List<FeedExecutionLog> logs = feedExecutionLogRepository.findByExecutionIdOrderByTimestamp(executionId);
+            List<FeedExecutionLogChunk> chunks = feedExecutionLogChunkRepository.findByExecutionIdOrderById(executionId);
+            if (!chunks.isEmpty()) {
+                logs = new ArrayList<>(logs);
+                for (FeedExecutionLogChunk chunk : chunks) {
+                    logs.addAll(LogChunkCodec.decode(chunk));
+                }
+                // Chunks hold the lines of one stage each, interleave them again
+                logs.sort(Comparator.comparing(FeedExecutionLog::getTimestamp));
+            }
             feedExecution.setLogs(logs);
         }
         return execution;
@@ -221,36 +445,54 @@ public class FeedExecutionHistoryService {
      * Get recent executions for a feed (last N executions)
      */
     @Transactional(readOnly = true)
-    public List<FeedExecution> getRecentExecutions(Long feedId, int limit) {
+    public List<ExecutionSummary> getRecentExecutions(Long feedId, int limit) {
         Pageable pageable = PageRequest.of(0, limit);
         return feedExecutionRepository.findMostRecentByFeedId(feedId, pageable);
     }
 
     /**
-     * Get execution statistics for a feed
+     * Get execution statistics for a feed, from its statistics rollup
      */
     @Transactional(readOnly = true)
     public FeedExecutionStats getExecutionStats(Long feedId) {
-        FeedExecutionStats stats = new FeedExecutionStats();
-        stats.setFeedId(feedId);
-        stats.setTotalExecutions(feedExecutionRepository.countByFeedId(feedId));
-        stats.setSuccessfulExecutions(feedExecutionRepository.countByFeedIdAndStatus(feedId, FeedExecution.Status.SUCCESS));
-        stats.setFailedExecutions(feedExecutionRepository.countByFeedIdAndStatus(feedId, FeedExecution.Status.FAILED));
-        stats.setAverageDurationMillis(feedExecutionRepository.getAverageDurationByFeedId(feedId));
-        
-        return stats;
+        return statsService.getStats(feedId);
     }
 
     /**
-     * Delete old execution history (cleanup)
+     * Get the IDs of the oldest finished executions of a feed created before the cutoff. The
+     * purge methods below each run in their own short transaction, see {@link ExecutionHistoryRetention}.
      */
-    public void deleteOldExecutions(LocalDateTime cutoffDate) {
-        List<FeedExecution> oldExecutions = feedExecutionRepository.findByStartTimeBetween(LocalDateTime.of(2000, 1, 1, 0, 0), cutoffDate);
-        for (FeedExecution execution : oldExecutions) {
-            feedExecutionLogRepository.deleteOldLogsBefore(cutoffDate);
-            feedExecutionStageRepository.deleteAll(execution.getStages());
-            feedExecutionRepository.delete(execution);
+    @Transactional(readOnly = true)
+    public List<Long> findExpiredExecutionIds(Long feedId, LocalDateTime cutoff, int limit) {
+        return feedExecutionRepository.findIdsCreatedBefore(feedId, cutoff,
+                List.of(FeedExecution.Status.QUEUED, FeedExecution.Status.IN_PROGRESS), PageRequest.of(0, limit));
+    }
+
+    /**
+     * Delete the next range of up to {@code limit} log rows of the executions
+     * @return The number of rows deleted, 0 once the executions have no log rows left
+     */
+    public int purgeLogRows(List<Long> executionIds, int limit) {
+        List<Long> ids = feedExecutionLogRepository.findIdsByExecutionIdIn(executionIds, PageRequest.of(0, limit));
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        return feedExecutionLogRepository.deleteByExecutionIdInAndIdBetween(executionIds, ids.get(0), ids.get(ids.size() - 1));
+    }
+
+    /**
+     * Delete the log chunks, stages and records of executions whose log rows have been purged
+     * @return The number of execution, stage and log chunk rows deleted
+     */
+    public int purgeExecutions(List<Long> executionIds) {
+        List<FeedExecutionRepository.StatusSummary> summaries = feedExecutionRepository.summarizeByIdIn(executionIds);
+        int deleted = feedExecutionLogChunkRepository.deleteByExecutionIdIn(executionIds)
+                + feedExecutionStageRepository.deleteByExecutionIdIn(executionIds)
+                + feedExecutionRepository.deleteByIdIn(executionIds);
+        for (FeedExecutionRepository.StatusSummary summary : summaries) {
+            statsService.record(summary.getFeedId(), FeedExecutionStatsService.Delta.of(summary).negate());
         }
+        return deleted;
     }
 
     /**
@@ -2,6 +2,7 @@ package com.wakefern.sbdemo.batch.feeds;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
@@ -28,29 +29,30 @@ public class FeedExecutionLog {
 
     @Id
     @Column(nullable = false, updatable = false)
+    // Log rows are inserted in bulk, so IDs are taken from the sequence in blocks of 50
     @SequenceGenerator(
-            name = "primary_sequence",
-            sequenceName = "primary_sequence",
-            allocationSize = 1,
+            name = "feed_execution_log_sequence",
+            sequenceName = "feed_execution_log_sequence",
+            allocationSize = 50,
             initialValue = 10000
     )
     @GeneratedValue(
             strategy = GenerationType.SEQUENCE,
-            generator = "primary_sequence"
+            generator = "feed_execution_log_sequence"
     )
     private Long id;
 
     @Column(name = "execution_id", nullable = false)
     private Long executionId;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "execution_id", insertable = false, updatable = false)
     private FeedExecution execution;
 
     @Column(name = "stage_id")
     private Long stageId;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "stage_id", insertable = false, updatable = false)
     private FeedExecutionStage stage;
 
@@ -0,0 +1,58 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Lob;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.Setter;
+import java.time.LocalDateTime;
+
+/**
+ * A block of consecutive log lines of one stage, or of the execution as a whole, stored
+ * compressed in a single row. Used instead of {@link FeedExecutionLog} rows when
+ * {@code app.feeds.history.log-storage} is {@code CHUNKED}, see {@link LogChunkCodec} for the format.
+ */
+@Entity
+@Table(name = "feed_execution_log_chunks", indexes = {
+    @Index(name = "idx_feed_execution_log_chunk_execution_id", columnList = "execution_id")
+})
+@Getter
+@Setter
+public class FeedExecutionLogChunk {
+
+    @Id
+    @Column(nullable = false, updatable = false)
+    @SequenceGenerator(
+            name = "feed_execution_log_chunk_sequence",
+            sequenceName = "feed_execution_log_chunk_sequence",
+            allocationSize = 50,
+            initialValue = 10000
+    )
+    @GeneratedValue(
+            strategy = GenerationType.SEQUENCE,
+            generator = "feed_execution_log_chunk_sequence"
+    )
+    private Long id;
+
+    @Column(name = "execution_id", nullable = false)
+    private Long executionId;
+
+    @Column(name = "stage_id")
+    private Long stageId;
+
+    @Column(name = "first_timestamp", nullable = false)
+    private LocalDateTime firstTimestamp;
+
+    @Column(name = "line_count", nullable = false)
+    private Integer lineCount;
+
+    @Lob
+    @Column(name = "data", nullable = false, columnDefinition = "BLOB")
+    private byte[] data;
+}
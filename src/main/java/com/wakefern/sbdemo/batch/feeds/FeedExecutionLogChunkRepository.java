@@ -0,0 +1,24 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.util.List;
+import java.util.Optional;
+
+public interface FeedExecutionLogChunkRepository extends JpaRepository<FeedExecutionLogChunk, Long> {
+
+    List<FeedExecutionLogChunk> findByExecutionIdOrderById(Long executionId);
+
+    Optional<FeedExecutionLogChunk> findFirstByExecutionIdAndStageIdOrderByIdDesc(Long executionId, Long stageId);
+
+    Optional<FeedExecutionLogChunk> findFirstByExecutionIdAndStageIdIsNullOrderByIdDesc(Long executionId);
+
+    @Query("SELECT COALESCE(SUM(flc.lineCount), 0) FROM FeedExecutionLogChunk flc WHERE flc.executionId = :executionId")
+    long countLinesByExecutionId(@Param("executionId") Long executionId);
+
+    @Modifying
+    @Query("DELETE FROM FeedExecutionLogChunk flc WHERE flc.executionId IN :executionIds")
+    int deleteByExecutionIdIn(@Param("executionIds") List<Long> executionIds);
+}
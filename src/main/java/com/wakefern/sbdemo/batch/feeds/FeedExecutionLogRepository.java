@@ -3,6 +3,7 @@ package com.wakefern.sbdemo.batch.feeds;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import java.time.LocalDateTime;
@@ -46,6 +47,17 @@ public interface FeedExecutionLogRepository extends JpaRepository<FeedExecutionL
     List<FeedExecutionLog> findRecentErrorLogs(Pageable pageable);
 
     // Delete old logs (for cleanup purposes)
+    @Modifying
     @Query("DELETE FROM FeedExecutionLog fel WHERE fel.timestamp < :cutoffDate")
-    void deleteOldLogsBefore(@Param("cutoffDate") LocalDateTime cutoffDate);
+    int deleteOldLogsBefore(@Param("cutoffDate") LocalDateTime cutoffDate);
+
+    // Log IDs of executions in ID order, to delete a large log in bounded ranges
+    @Query("SELECT fel.id FROM FeedExecutionLog fel WHERE fel.executionId IN :executionIds ORDER BY fel.id")
+    List<Long> findIdsByExecutionIdIn(@Param("executionIds") List<Long> executionIds, Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM FeedExecutionLog fel WHERE fel.executionId IN :executionIds AND fel.id BETWEEN :fromId AND :toId")
+    int deleteByExecutionIdInAndIdBetween(@Param("executionIds") List<Long> executionIds,
+                                          @Param("fromId") Long fromId,
+                                          @Param("toId") Long toId);
 }
\ No newline at end of file
@@ -2,13 +2,35 @@ package com.wakefern.sbdemo.batch.feeds;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
-public interface FeedExecutionRepository extends JpaRepository<FeedExecution, Long> {
+public interface FeedExecutionRepository extends JpaRepository<FeedExecution, Long>, JpaSpecificationExecutor<FeedExecution>,
+        FeedExecutionSummaryQueries {
+
+    /**
+     * Executions of a feed in one status, counted for the statistics rollup
+     */
+    interface StatusSummary {
+
+        Long getFeedId();
+
+        FeedExecution.Status getStatus();
+
+        Long getExecutions();
+
+        Long getDurationMillis();
+
+        Long getTimedExecutions();
+
+    }
 
     List<FeedExecution> findByFeedIdOrderByStartTimeDesc(Long feedId);
 
@@ -49,7 +71,49 @@ public interface FeedExecutionRepository extends JpaRepository<FeedExecution, Lo
     @Query("SELECT fe FROM FeedExecution fe WHERE fe.feedId = :feedId ORDER BY fe.startTime DESC")
     List<FeedExecution> findTop10ByFeedIdOrderByStartTimeDesc(@Param("feedId") Long feedId, Pageable pageable);
 
-    // Find the most recent execution for a feed
-    @Query("SELECT fe FROM FeedExecution fe WHERE fe.feedId = :feedId ORDER BY fe.startTime DESC")
-    List<FeedExecution> findMostRecentByFeedId(@Param("feedId") Long feedId, Pageable pageable);
+    @Modifying
+    @Query("UPDATE FeedExecution fe SET fe.status = :status, fe.error = :error "
+            + "WHERE fe.status IN :statuses AND fe.createdAt < :createdBefore")
+    int updateStatusCreatedBefore(@Param("statuses") List<FeedExecution.Status> statuses,
+                                  @Param("createdBefore") LocalDateTime createdBefore,
+                                  @Param("status") FeedExecution.Status status,
+                                  @Param("error") String error);
+
+    // Finished executions created before the cutoff, oldest first, for the retention job
+    @Query("SELECT fe.id FROM FeedExecution fe WHERE fe.feedId = :feedId AND fe.createdAt < :cutoff AND fe.status NOT IN :statuses ORDER BY fe.id")
+    List<Long> findIdsCreatedBefore(@Param("feedId") Long feedId,
+                                    @Param("cutoff") LocalDateTime cutoff,
+                                    @Param("statuses") List<FeedExecution.Status> excludedStatuses,
+                                    Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM FeedExecution fe WHERE fe.id IN :ids")
+    int deleteByIdIn(@Param("ids") List<Long> ids);
+
+    @Query("SELECT fe.feedId AS feedId, fe.status AS status, COUNT(fe) AS executions, "
+            + "SUM(fe.durationMillis) AS durationMillis, COUNT(fe.durationMillis) AS timedExecutions "
+            + "FROM FeedExecution fe WHERE fe.feedId = :feedId GROUP BY fe.feedId, fe.status")
+    List<StatusSummary> summarizeByFeedId(@Param("feedId") Long feedId);
+
+    @Query("SELECT fe.feedId AS feedId, fe.status AS status, COUNT(fe) AS executions, "
+            + "SUM(fe.durationMillis) AS durationMillis, COUNT(fe.durationMillis) AS timedExecutions "
+            + "FROM FeedExecution fe WHERE fe.id IN :ids GROUP BY fe.feedId, fe.status")
+    List<StatusSummary> summarizeByIdIn(@Param("ids") List<Long> ids);
+
+    @Query("SELECT fe.feedId AS feedId, fe.status AS status, COUNT(fe) AS executions, "
+            + "SUM(fe.durationMillis) AS durationMillis, COUNT(fe.durationMillis) AS timedExecutions "
+            + "FROM FeedExecution fe WHERE fe.status IN :statuses AND fe.createdAt < :createdBefore "
+            + "GROUP BY fe.feedId, fe.status")
+    List<StatusSummary> summarizeByStatusInCreatedBefore(@Param("statuses") List<FeedExecution.Status> statuses,
+                                                         @Param("createdBefore") LocalDateTime createdBefore);
+
+    // Find the most recent executions for a feed
+    @Query("SELECT new com.wakefern.sbdemo.batch.feeds.ExecutionSummary(fe.id, fe.feedId, fe.status, "
+            + "fe.resumedFromExecutionId, fe.startTime, fe.endTime, fe.durationMillis, fe.parameters, fe.error, "
+            + "fe.createdAt) FROM FeedExecution fe WHERE fe.feedId = :feedId ORDER BY fe.startTime DESC, fe.id DESC")
+    List<ExecutionSummary> findMostRecentByFeedId(@Param("feedId") Long feedId, Pageable pageable);
+
+    // An execution with its stages in order, for detail views
+    @EntityGraph(attributePaths = "stages")
+    Optional<FeedExecution> findWithStagesById(Long id);
 }
\ No newline at end of file
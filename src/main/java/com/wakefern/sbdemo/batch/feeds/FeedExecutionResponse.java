@@ -11,12 +11,18 @@ import java.util.List;
 @Schema(description = "Response object containing feed execution results")
 public class FeedExecutionResponse {
 
+    @Schema(description = "ID of the execution, used to poll its status", example = "10001")
+    private Long executionId;
+
     @Schema(description = "ID of the executed feed", example = "1")
     private Long feedId;
 
-    @Schema(description = "Execution status", example = "SUCCESS", allowableValues = {"SUCCESS", "FAILED", "IN_PROGRESS"})
+    @Schema(description = "Execution status", example = "SUCCESS", allowableValues = {"QUEUED", "IN_PROGRESS", "SUCCESS", "FAILED", "CANCELLED"})
     private String status;
 
+    @Schema(description = "ID of the failed execution this execution resumed", example = "10000")
+    private Long resumedFromExecutionId;
+
     @Schema(description = "List of execution log messages")
     private List<String> logs;
 
@@ -35,4 +41,10 @@ public class FeedExecutionResponse {
     @Schema(description = "List of execution stages with their status and timing information")
     private List<StageDTO> stages;
 
+    @Schema(description = "Highest number of stages that ran at the same time", example = "2")
+    private Integer maxConcurrentStages;
+
+    @Schema(description = "Stage time saved by running stages concurrently, in milliseconds", example = "1200")
+    private Long stageOverlapMillis;
+
 }
\ No newline at end of file
@@ -0,0 +1,74 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import java.time.LocalDateTime;
+import org.springframework.data.jpa.domain.Specification;
+
+/**
+ * Conditions on feed executions that combine into a single history query. Every condition
+ * is evaluated by the database, a query always includes {@link #ofFeed} and is backed by one
+ * of the {@code feed_id} composite indexes of {@link FeedExecution}.
+ */
+public final class FeedExecutionSpecifications {
+
+    private FeedExecutionSpecifications() {
+    }
+
+    public static Specification<FeedExecution> ofFeed(final Long feedId) {
+        return (root, query, cb) -> cb.equal(root.get("feedId"), feedId);
+    }
+
+    public static Specification<FeedExecution> hasStatus(final FeedExecution.Status status) {
+        return (root, query, cb) -> cb.equal(root.get("status"), status);
+    }
+
+    public static Specification<FeedExecution> startedFrom(final LocalDateTime from) {
+        return (root, query, cb) -> cb.greaterThanOrEqualTo(root.get("startTime"), from);
+    }
+
+    public static Specification<FeedExecution> startedUntil(final LocalDateTime to) {
+        return (root, query, cb) -> cb.lessThanOrEqualTo(root.get("startTime"), to);
+    }
+
+    public static Specification<FeedExecution> tookAtLeast(final long durationMillis) {
+        return (root, query, cb) -> cb.greaterThanOrEqualTo(root.get("durationMillis"), durationMillis);
+    }
+
+    public static Specification<FeedExecution> hasError(final boolean withError) {
+        return (root, query, cb) -> withError ? cb.isNotNull(root.get("error")) : cb.isNull(root.get("error"));
+    }
+
+    /**
+     * Executions after the cursor in newest first order. The first condition bounds the index
+     * range scan, the second breaks ties on the start time by ID.
+     */
+    public static Specification<FeedExecution> after(final ExecutionCursor cursor) {
+        return (root, query, cb) -> cb.and(
+                cb.lessThanOrEqualTo(root.get("startTime"), cursor.startTime()),
+                cb.or(cb.lessThan(root.get("startTime"), cursor.startTime()),
+                        cb.lessThan(root.get("id"), cursor.id())));
+    }
+
+    /**
+     * All conditions of a history filter, conditions left empty in the filter match everything
+     */
+    public static Specification<FeedExecution> matching(final Long feedId, final ExecutionHistoryFilter filter) {
+        Specification<FeedExecution> specification = ofFeed(feedId);
+        if (filter.status() != null) {
+            specification = specification.and(hasStatus(filter.status()));
+        }
+        if (filter.from() != null) {
+            specification = specification.and(startedFrom(filter.from()));
+        }
+        if (filter.to() != null) {
+            specification = specification.and(startedUntil(filter.to()));
+        }
+        if (filter.minDurationMillis() != null) {
+            specification = specification.and(tookAtLeast(filter.minDurationMillis()));
+        }
+        if (filter.hasError() != null) {
+            specification = specification.and(hasError(filter.hasError()));
+        }
+        return specification;
+    }
+
+}
@@ -4,6 +4,7 @@ import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.EnumType;
 import jakarta.persistence.Enumerated;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
@@ -30,27 +31,27 @@ import java.util.List;
 public class FeedExecutionStage {
 
     public enum Status {
-        PENDING, IN_PROGRESS, SUCCESS, FAILED
+        PENDING, IN_PROGRESS, SUCCESS, FAILED, CANCELLED
     }
 
     @Id
     @Column(nullable = false, updatable = false)
     @SequenceGenerator(
-            name = "primary_sequence",
-            sequenceName = "primary_sequence",
-            allocationSize = 1,
+            name = "feed_execution_stage_sequence",
+            sequenceName = "feed_execution_stage_sequence",
+            allocationSize = 50,
             initialValue = 10000
     )
     @GeneratedValue(
             strategy = GenerationType.SEQUENCE,
-            generator = "primary_sequence"
+            generator = "feed_execution_stage_sequence"
     )
     private Long id;
 
     @Column(name = "execution_id", nullable = false)
     private Long executionId;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "execution_id", insertable = false, updatable = false)
     private FeedExecution execution;
 
@@ -79,6 +80,12 @@ public class FeedExecutionStage {
     @Column(name = "duration_millis")
     private Long durationMillis;
 
+    @Column(name = "idle_millis")
+    private Long idleMillis;
+
+    @Column(name = "blocked_millis")
+    private Long blockedMillis;
+
     @Column(name = "stage_order", nullable = false)
     private Integer stageOrder;
 
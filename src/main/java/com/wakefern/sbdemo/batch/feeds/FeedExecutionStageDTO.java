@@ -19,7 +19,7 @@ public class FeedExecutionStageDTO {
     @Schema(description = "Stage description", example = "Configure HTTP client and validate system settings")
     private String description;
 
-    @Schema(description = "Stage status", example = "SUCCESS", allowableValues = {"PENDING", "IN_PROGRESS", "SUCCESS", "FAILED"})
+    @Schema(description = "Stage status", example = "SUCCESS", allowableValues = {"PENDING", "IN_PROGRESS", "SUCCESS", "FAILED", "CANCELLED"})
     private String status;
 
     @Schema(description = "Stage start time")
@@ -31,6 +31,12 @@ public class FeedExecutionStageDTO {
     @Schema(description = "Stage duration in milliseconds", example = "1250")
     private Long durationMillis;
 
+    @Schema(description = "Time spent waiting for input from an upstream stage in milliseconds", example = "300")
+    private Long idleMillis;
+
+    @Schema(description = "Time spent waiting for a downstream stage to accept output in milliseconds", example = "50")
+    private Long blockedMillis;
+
     @Schema(description = "Stage parameters in JSON format")
     private String parameters;
 
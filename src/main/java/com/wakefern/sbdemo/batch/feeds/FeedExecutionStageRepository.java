@@ -1,6 +1,7 @@
 package com.wakefern.sbdemo.batch.feeds;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import java.util.List;
@@ -9,6 +10,10 @@ public interface FeedExecutionStageRepository extends JpaRepository<FeedExecutio
 
     List<FeedExecutionStage> findByExecutionIdOrderByStageOrder(Long executionId);
 
+    @Modifying
+    @Query("DELETE FROM FeedExecutionStage fes WHERE fes.executionId IN :executionIds")
+    int deleteByExecutionIdIn(@Param("executionIds") List<Long> executionIds);
+
     List<FeedExecutionStage> findByExecutionIdAndStatusOrderByStageOrder(Long executionId, FeedExecutionStage.Status status);
 
     List<FeedExecutionStage> findByStatusOrderByStartTimeDesc(FeedExecutionStage.Status status);
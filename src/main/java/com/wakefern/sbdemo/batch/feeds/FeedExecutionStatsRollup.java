@@ -0,0 +1,47 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.Setter;
+import java.time.LocalDateTime;
+
+/**
+ * Execution counts of a feed, kept up to date as executions are written so statistics are
+ * read from one row instead of aggregating the feed's history. See {@link FeedExecutionStatsService}.
+ */
+@Entity
+@Table(name = "feed_execution_stats")
+@Getter
+@Setter
+public class FeedExecutionStatsRollup {
+
+    @Id
+    @Column(name = "feed_id", nullable = false, updatable = false)
+    private Long feedId;
+
+    @Column(name = "total_executions", nullable = false)
+    private Long totalExecutions;
+
+    @Column(name = "successful_executions", nullable = false)
+    private Long successfulExecutions;
+
+    @Column(name = "failed_executions", nullable = false)
+    private Long failedExecutions;
+
+    // Summed duration and count of the successful executions that have a duration, for the average
+    @Column(name = "success_duration_millis", nullable = false)
+    private Long successDurationMillis;
+
+    @Column(name = "timed_successful_executions", nullable = false)
+    private Long timedSuccessfulExecutions;
+
+    // Incremented with every change, orders the changes applied to the in-memory copy
+    @Column(name = "version", nullable = false)
+    private Long version;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
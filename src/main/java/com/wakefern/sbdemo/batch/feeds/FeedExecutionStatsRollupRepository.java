@@ -0,0 +1,44 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+public interface FeedExecutionStatsRollupRepository extends JpaRepository<FeedExecutionStatsRollup, Long> {
+
+    @Modifying
+    @Query("UPDATE FeedExecutionStatsRollup fes SET fes.totalExecutions = fes.totalExecutions + :total, "
+            + "fes.successfulExecutions = fes.successfulExecutions + :successful, "
+            + "fes.failedExecutions = fes.failedExecutions + :failed, "
+            + "fes.successDurationMillis = fes.successDurationMillis + :durationMillis, "
+            + "fes.timedSuccessfulExecutions = fes.timedSuccessfulExecutions + :timed, "
+            + "fes.version = fes.version + 1, fes.updatedAt = :updatedAt WHERE fes.feedId = :feedId")
+    int increment(@Param("feedId") Long feedId,
+                  @Param("total") long total,
+                  @Param("successful") long successful,
+                  @Param("failed") long failed,
+                  @Param("durationMillis") long durationMillis,
+                  @Param("timed") long timed,
+                  @Param("updatedAt") LocalDateTime updatedAt);
+
+    @Query("SELECT fes.version FROM FeedExecutionStatsRollup fes WHERE fes.feedId = :feedId")
+    Long findVersion(@Param("feedId") Long feedId);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT fes FROM FeedExecutionStatsRollup fes WHERE fes.feedId = :feedId")
+    Optional<FeedExecutionStatsRollup> findByIdForUpdate(@Param("feedId") Long feedId);
+
+    /**
+     * Insert an empty row, fails with a duplicate key if the feed has one already
+     */
+    @Modifying
+    @Query("INSERT INTO FeedExecutionStatsRollup (feedId, totalExecutions, successfulExecutions, failedExecutions, "
+            + "successDurationMillis, timedSuccessfulExecutions, version, updatedAt) "
+            + "VALUES (:feedId, 0L, 0L, 0L, 0L, 0L, -1L, :updatedAt)")
+    int insertEmpty(@Param("feedId") Long feedId, @Param("updatedAt") LocalDateTime updatedAt);
+}
@@ -0,0 +1,261 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+
+/**
+ * Execution statistics of feeds, served from a rollup row per feed instead of aggregating the
+ * feed's history on every request. The history service reports every change to the
+ * executions of a feed, created, finished, failed on startup, discarded or purged, as a
+ * delta that is added to the feed's row in the same transaction.
+ * <p>
+ * Rows that are read are also kept in memory. Committed deltas are applied to the copy in
+ * memory in the order of the row's version, a copy that missed a delta is dropped and read
+ * again, so reads never go to the database while the statistics only change incrementally.
+ * <p>
+ * Rows missing for feeds with history are created on startup from the history, and
+ * {@link #rebuildAll()} recomputes all rows should they ever drift from it. A rebuild locks the
+ * row before it reads the history, so changes committed meanwhile wait for it instead of being
+ * overwritten. A missing row is inserted empty in a transaction of its own first, so writers
+ * racing to create it never fail each other's transaction.
+ */
+@Service
+@Transactional
+public class FeedExecutionStatsService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FeedExecutionStatsService.class);
+
+    private final FeedExecutionStatsRollupRepository rollupRepository;
+    private final FeedExecutionRepository feedExecutionRepository;
+    private final FeedRepository feedRepository;
+    private final TransactionTemplate newTransaction;
+    private final Map<Long, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+    public FeedExecutionStatsService(final FeedExecutionStatsRollupRepository rollupRepository,
+                                     final FeedExecutionRepository feedExecutionRepository,
+                                     final FeedRepository feedRepository,
+                                     final PlatformTransactionManager transactionManager) {
+        this.rollupRepository = rollupRepository;
+        this.feedExecutionRepository = feedExecutionRepository;
+        this.feedRepository = feedRepository;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Change in the statistics of a feed
+     */
+    record Delta(long total, long successful, long failed, long durationMillis, long timed) {
+
+        static final Delta NONE = new Delta(0, 0, 0, 0, 0);
+
+        /**
+         * What a number of executions in a status add to the statistics, like the original
+         * aggregate queries the average only counts successful executions with a duration
+         */
+        static Delta of(final FeedExecution.Status status, final long executions,
+                        final long durationMillis, final long timed) {
+            if (status == null) {
+                return NONE;
+            }
+            final boolean success = status == FeedExecution.Status.SUCCESS;
+            return new Delta(executions, success ? executions : 0,
+                    status == FeedExecution.Status.FAILED ? executions : 0,
+                    success ? durationMillis : 0, success ? timed : 0);
+        }
+
+        static Delta of(final FeedExecution.Status status, final Long durationMillis) {
+            return of(status, 1, durationMillis != null ? durationMillis : 0, durationMillis != null ? 1 : 0);
+        }
+
+        static Delta of(final FeedExecutionRepository.StatusSummary summary) {
+            return of(summary.getStatus(), summary.getExecutions(),
+                    summary.getDurationMillis() != null ? summary.getDurationMillis() : 0,
+                    summary.getTimedExecutions());
+        }
+
+        Delta plus(final Delta other) {
+            return new Delta(total + other.total, successful + other.successful, failed + other.failed,
+                    durationMillis + other.durationMillis, timed + other.timed);
+        }
+
+        Delta negate() {
+            return new Delta(-total, -successful, -failed, -durationMillis, -timed);
+        }
+
+        boolean isNone() {
+            return equals(NONE);
+        }
+    }
+
+    private record Snapshot(long total, long successful, long failed, long durationMillis, long timed, long version) {
+
+        static Snapshot of(final FeedExecutionStatsRollup rollup) {
+            return new Snapshot(rollup.getTotalExecutions(), rollup.getSuccessfulExecutions(),
+                    rollup.getFailedExecutions(), rollup.getSuccessDurationMillis(),
+                    rollup.getTimedSuccessfulExecutions(), rollup.getVersion());
+        }
+
+        Snapshot plus(final Delta delta, final long newVersion) {
+            return new Snapshot(total + delta.total(), successful + delta.successful(), failed + delta.failed(),
+                    durationMillis + delta.durationMillis(), timed + delta.timed(), newVersion);
+        }
+
+        FeedExecutionHistoryService.FeedExecutionStats toStats(final Long feedId) {
+            final FeedExecutionHistoryService.FeedExecutionStats stats = new FeedExecutionHistoryService.FeedExecutionStats();
+            stats.setFeedId(feedId);
+            stats.setTotalExecutions(total);
+            stats.setSuccessfulExecutions(successful);
+            stats.setFailedExecutions(failed);
+            stats.setAverageDurationMillis(timed > 0 ? (double) durationMillis / timed : null);
+            return stats;
+        }
+    }
+
+    /**
+     * Get the statistics of a feed, from memory once the feed's row has been read
+     */
+    @Transactional(readOnly = true)
+    public FeedExecutionHistoryService.FeedExecutionStats getStats(final Long feedId) {
+        final Snapshot snapshot = snapshots.computeIfAbsent(feedId,
+                id -> rollupRepository.findById(id).map(Snapshot::of).orElse(null));
+        // No row yet, only for a feed created moments ago or without history
+        return (snapshot != null ? snapshot : summarize(feedId)).toStats(feedId);
+    }
+
+    /**
+     * An execution was created, changed status or deleted
+     * @param oldStatus The status before, null for a new execution
+     * @param newStatus The status after, null for a deleted execution
+     */
+    public void executionChanged(final Long feedId, final FeedExecution.Status oldStatus, final Long oldDurationMillis,
+                                 final FeedExecution.Status newStatus, final Long newDurationMillis) {
+        record(feedId, Delta.of(newStatus, newDurationMillis).plus(Delta.of(oldStatus, oldDurationMillis).negate()));
+    }
+
+    /**
+     * Add a change to the statistics of a feed. Call it after the change has been made, a
+     * feed without a row gets one computed from its history, which then includes the change.
+     */
+    void record(final Long feedId, final Delta delta) {
+        if (delta.isNone()) {
+            return;
+        }
+        if (rollupRepository.increment(feedId, delta.total(), delta.successful(), delta.failed(),
+                delta.durationMillis(), delta.timed(), LocalDateTime.now()) == 0) {
+            rebuild(feedId);
+            return;
+        }
+        // The row stays locked by the update until commit, so this is the version of this change
+        final long version = rollupRepository.findVersion(feedId);
+        afterCommit(() -> snapshots.computeIfPresent(feedId, (id, snapshot) -> {
+            if (snapshot.version() == version - 1) {
+                return snapshot.plus(delta, version);
+            }
+            // Already read with the change, or a change committed after it was applied before it
+            return snapshot.version() >= version ? snapshot : null;
+        }));
+    }
+
+    /**
+     * Recompute the row of a feed from its history
+     */
+    public void rebuild(final Long feedId) {
+        final FeedExecutionStatsRollup rollup = rollupRepository.findByIdForUpdate(feedId).orElseGet(() -> {
+            insertEmpty(feedId);
+            return rollupRepository.findByIdForUpdate(feedId).orElseThrow();
+        });
+        // Summarized with the row locked, changes of other transactions wait and add to the result
+        final Snapshot summary = summarize(feedId);
+        rollup.setTotalExecutions(summary.total());
+        rollup.setSuccessfulExecutions(summary.successful());
+        rollup.setFailedExecutions(summary.failed());
+        rollup.setSuccessDurationMillis(summary.durationMillis());
+        rollup.setTimedSuccessfulExecutions(summary.timed());
+        rollup.setVersion(rollup.getVersion() + 1);
+        rollup.setUpdatedAt(LocalDateTime.now());
+        afterCommit(() -> snapshots.remove(feedId));
+    }
+
+    /**
+     * Insert an empty row for a feed in a transaction of its own, another transaction that
+     * created it first is fine
+     */
+    private void insertEmpty(final Long feedId) {
+        try {
+            newTransaction.executeWithoutResult(status -> rollupRepository.insertEmpty(feedId, LocalDateTime.now()));
+        } catch (DataIntegrityViolationException e) {
+            logger.debug("Execution statistics of feed {} were created concurrently", feedId);
+        }
+    }
+
+    /**
+     * Recompute the rows of all feeds from their history, to repair statistics that drifted
+     * @return The number of feeds rebuilt
+     */
+    public int rebuildAll() {
+        final List<Feed> feeds = feedRepository.findAll();
+        for (Feed feed : feeds) {
+            rebuild(feed.getId());
+        }
+        logger.info("Rebuilt the execution statistics of {} feeds", feeds.size());
+        return feeds.size();
+    }
+
+    /**
+     * Create the rows missing for feeds with history, such as after an upgrade
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void createMissing() {
+        for (Feed feed : feedRepository.findAll()) {
+            if (!rollupRepository.existsById(feed.getId())) {
+                rebuild(feed.getId());
+            }
+        }
+    }
+
+    @EventListener
+    public void onFeedChanged(final FeedChangedEvent event) {
+        if (event.isDeleted()) {
+            if (rollupRepository.existsById(event.feedId())) {
+                rollupRepository.deleteById(event.feedId());
+            }
+            afterCommit(() -> snapshots.remove(event.feedId()));
+        } else if (!rollupRepository.existsById(event.feedId())) {
+            rebuild(event.feedId());
+        }
+    }
+
+    private Snapshot summarize(final Long feedId) {
+        Delta total = Delta.NONE;
+        for (FeedExecutionRepository.StatusSummary summary : feedExecutionRepository.summarizeByFeedId(feedId)) {
+            total = total.plus(Delta.of(summary));
+        }
+        return new Snapshot(total.total(), total.successful(), total.failed(), total.durationMillis(), total.timed(), -1);
+    }
+
+    private static void afterCommit(final Runnable action) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+}
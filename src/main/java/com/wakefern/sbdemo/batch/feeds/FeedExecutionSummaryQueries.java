@@ -0,0 +1,15 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import java.util.List;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+/**
+ * Projection queries of {@link FeedExecutionRepository} that Specifications can't express, their
+ * fluent queries always load entities
+ */
+public interface FeedExecutionSummaryQueries {
+
+    List<ExecutionSummary> findSummaries(Specification<FeedExecution> specification, Sort sort, int limit);
+
+}
@@ -0,0 +1,35 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Root;
+import java.util.List;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+
+
+class FeedExecutionSummaryQueriesImpl implements FeedExecutionSummaryQueries {
+
+    private final EntityManager entityManager;
+
+    FeedExecutionSummaryQueriesImpl(final EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public List<ExecutionSummary> findSummaries(final Specification<FeedExecution> specification, final Sort sort,
+                                                final int limit) {
+        final CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        final CriteriaQuery<ExecutionSummary> query = cb.createQuery(ExecutionSummary.class);
+        final Root<FeedExecution> root = query.from(FeedExecution.class);
+        query.select(cb.construct(ExecutionSummary.class, root.get("id"), root.get("feedId"), root.get("status"),
+                        root.get("resumedFromExecutionId"), root.get("startTime"), root.get("endTime"),
+                        root.get("durationMillis"), root.get("parameters"), root.get("error"), root.get("createdAt")))
+                .where(specification.toPredicate(root, query, cb))
+                .orderBy(QueryUtils.toOrders(sort, root, cb));
+        return entityManager.createQuery(query).setMaxResults(limit).getResultList();
+    }
+
+}
@@ -0,0 +1,25 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Getter;
+import lombok.Setter;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Getter
+@Setter
+@Schema(description = "Duration percentiles of a feed's executions and stages that finished within a time window")
+public class FeedLatencyDTO {
+
+    @Schema(description = "ID of the feed", example = "1")
+    private Long feedId;
+
+    @Schema(description = "Start of the window, rounded down to the histogram slot")
+    private LocalDateTime from;
+
+    @Schema(description = "Percentiles of whole executions")
+    private LatencyPercentilesDTO executions;
+
+    @Schema(description = "Percentiles per stage name")
+    private List<LatencyPercentilesDTO> stages;
+}
@@ -0,0 +1,64 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Lob;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.Setter;
+import java.time.LocalDateTime;
+
+/**
+ * Durations of the executions of a feed, or of one of its stages, that finished in one time
+ * slot, stored as an encoded {@link DurationHistogram}
+ */
+@Entity
+@Table(name = "feed_latency_histograms", indexes = {
+    @Index(name = "idx_feed_latency_histogram_feed_slot", columnList = "feed_id, slot_start"),
+    @Index(name = "idx_feed_latency_histogram_slot", columnList = "slot_start"),
+    // One row per slot, a snapshot racing another one fails instead of adding a duplicate
+    @Index(name = "idx_feed_latency_histogram_feed_stage_slot", columnList = "feed_id, stage_name, slot_start", unique = true)
+})
+@Getter
+@Setter
+public class FeedLatencyHistogram {
+
+    @Id
+    @Column(nullable = false, updatable = false)
+    @SequenceGenerator(
+            name = "feed_latency_histogram_sequence",
+            sequenceName = "feed_latency_histogram_sequence",
+            allocationSize = 50,
+            initialValue = 10000
+    )
+    @GeneratedValue(
+            strategy = GenerationType.SEQUENCE,
+            generator = "feed_latency_histogram_sequence"
+    )
+    private Long id;
+
+    @Column(name = "feed_id", nullable = false)
+    private Long feedId;
+
+    // Empty for the histogram of the whole execution
+    @Column(name = "stage_name")
+    private String stageName;
+
+    @Column(name = "slot_start", nullable = false)
+    private LocalDateTime slotStart;
+
+    @Column(name = "sample_count", nullable = false)
+    private Long sampleCount;
+
+    @Column(name = "max_millis", nullable = false)
+    private Long maxMillis;
+
+    @Lob
+    @Column(name = "data", nullable = false, columnDefinition = "BLOB")
+    private byte[] data;
+}
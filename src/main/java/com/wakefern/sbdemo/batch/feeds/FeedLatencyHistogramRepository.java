@@ -0,0 +1,20 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+public interface FeedLatencyHistogramRepository extends JpaRepository<FeedLatencyHistogram, Long> {
+
+    List<FeedLatencyHistogram> findByFeedIdAndSlotStartGreaterThanEqualOrderById(Long feedId, LocalDateTime from);
+
+    Optional<FeedLatencyHistogram> findByFeedIdAndStageNameAndSlotStart(Long feedId, String stageName, LocalDateTime slotStart);
+
+    @Modifying
+    @Query("DELETE FROM FeedLatencyHistogram flh WHERE flh.slotStart < :cutoff")
+    int deleteBySlotStartBefore(@Param("cutoff") LocalDateTime cutoff);
+}
@@ -0,0 +1,201 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+
+/**
+ * Duration percentiles of the executions of each feed and of each of their stages over
+ * sliding time windows.
+ * <p>
+ * Durations of finished executions and stages are recorded into a {@link DurationHistogram}
+ * per feed, stage name and time slot of {@code app.feeds.latency.slot}. Recording only
+ * touches memory, every {@code snapshot-interval} the new counts are merged into the slot's
+ * row in {@code feed_latency_histograms}. A window is the merge of the histograms of the slots
+ * it covers, so percentiles of any window cost a handful of rows whatever the number of
+ * executions. Slots older than {@code retention} are deleted.
+ */
+@Service
+public class FeedLatencyService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FeedLatencyService.class);
+    // Stage name of the histograms of whole executions, not null so the unique index of the slots covers them
+    private static final String EXECUTION = "";
+
+    private final FeedLatencyHistogramRepository histogramRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final long slotMillis;
+    private final Duration retention;
+    private final ZoneId zone = ZoneId.systemDefault();
+    // Counts recorded since the last snapshot
+    private final Map<SlotKey, DurationHistogram> unsaved = new ConcurrentHashMap<>();
+    private final ScheduledThreadPoolExecutor snapshotter;
+
+    public FeedLatencyService(final FeedLatencyHistogramRepository histogramRepository,
+                              final PlatformTransactionManager transactionManager,
+                              @Value("${app.feeds.latency.slot:PT1H}") final Duration slot,
+                              @Value("${app.feeds.latency.snapshot-interval:PT1M}") final Duration snapshotInterval,
+                              @Value("${app.feeds.latency.retention:P30D}") final Duration retention) {
+        this.histogramRepository = histogramRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.slotMillis = slot.toMillis();
+        this.retention = retention;
+        this.snapshotter = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("latency-snapshot-"));
+        this.snapshotter.scheduleWithFixedDelay(this::snapshotQuietly, snapshotInterval.toMillis(),
+                snapshotInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private record SlotKey(Long feedId, String stageName, LocalDateTime slotStart) {
+    }
+
+    /**
+     * Record the durations of a finished execution and of its finished stages. Cancelled
+     * executions and stages are left out, their duration says nothing about how long a run takes.
+     */
+    public void record(final Long feedId, final ExecutionResult result) {
+        if (result.getStatus() != ExecutionResult.Status.SUCCESS && result.getStatus() != ExecutionResult.Status.FAILED) {
+            return;
+        }
+        final LocalDateTime slotStart = slotOf(LocalDateTime.now());
+        record(new SlotKey(feedId, EXECUTION, slotStart), result.getDurationMillis());
+        for (ExecutionStage stage : result.getStages()) {
+            if (stage.getStatus() == ExecutionStage.Status.SUCCESS || stage.getStatus() == ExecutionStage.Status.FAILED) {
+                record(new SlotKey(feedId, stage.getName(), slotStart), stage.getDurationMillis());
+            }
+        }
+    }
+
+    private void record(final SlotKey key, final long durationMillis) {
+        // Recorded under the map's lock of the key, so the snapshot never takes a histogram being recorded into
+        unsaved.compute(key, (slot, histogram) -> {
+            final DurationHistogram target = histogram != null ? histogram : new DurationHistogram();
+            synchronized (target) {
+                target.record(durationMillis);
+            }
+            return target;
+        });
+    }
+
+    /**
+     * Get the percentiles of the executions and stages of a feed that finished within the window
+     */
+    public FeedLatencyDTO getLatency(final Long feedId, final Duration window) {
+        final LocalDateTime from = slotOf(LocalDateTime.now().minus(window));
+        final DurationHistogram executions = new DurationHistogram();
+        final Map<String, DurationHistogram> stages = new LinkedHashMap<>();
+        for (FeedLatencyHistogram row : histogramRepository.findByFeedIdAndSlotStartGreaterThanEqualOrderById(feedId, from)) {
+            merge(row.getStageName(), DurationHistogram.decode(row.getData()), executions, stages);
+        }
+        unsaved.forEach((key, histogram) -> {
+            if (key.feedId().equals(feedId) && !key.slotStart().isBefore(from)) {
+                synchronized (histogram) {
+                    merge(key.stageName(), histogram, executions, stages);
+                }
+            }
+        });
+
+        final FeedLatencyDTO dto = new FeedLatencyDTO();
+        dto.setFeedId(feedId);
+        dto.setFrom(from);
+        dto.setExecutions(LatencyPercentilesDTO.fromHistogram(null, executions));
+        final List<LatencyPercentilesDTO> stageDTOs = new ArrayList<>(stages.size());
+        stages.forEach((name, histogram) -> stageDTOs.add(LatencyPercentilesDTO.fromHistogram(name, histogram)));
+        dto.setStages(stageDTOs);
+        return dto;
+    }
+
+    private static void merge(final String stageName, final DurationHistogram histogram,
+                              final DurationHistogram executions, final Map<String, DurationHistogram> stages) {
+        // Rows saved before whole executions were stored under an empty name have none
+        if (stageName == null || EXECUTION.equals(stageName)) {
+            executions.merge(histogram);
+        } else {
+            stages.computeIfAbsent(stageName, name -> new DurationHistogram()).merge(histogram);
+        }
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (RuntimeException e) {
+            logger.error("Failed to save latency histograms", e);
+        }
+    }
+
+    /**
+     * Merge the counts recorded since the last snapshot into the stored histograms
+     */
+    public void snapshot() {
+        for (SlotKey key : unsaved.keySet()) {
+            final DurationHistogram histogram = unsaved.remove(key);
+            if (histogram == null) {
+                continue;
+            }
+            try {
+                transactionTemplate.executeWithoutResult(status -> save(key, histogram));
+            } catch (RuntimeException e) {
+                // Keep the counts for the next snapshot
+                unsaved.merge(key, histogram, (current, failed) -> {
+                    synchronized (current) {
+                        current.merge(failed);
+                    }
+                    return current;
+                });
+                throw e;
+            }
+        }
+        transactionTemplate.executeWithoutResult(status ->
+                histogramRepository.deleteBySlotStartBefore(LocalDateTime.now().minus(retention)));
+    }
+
+    private void save(final SlotKey key, final DurationHistogram histogram) {
+        final FeedLatencyHistogram row = histogramRepository
+                .findByFeedIdAndStageNameAndSlotStart(key.feedId(), key.stageName(), key.slotStart())
+                .orElseGet(() -> {
+                    final FeedLatencyHistogram created = new FeedLatencyHistogram();
+                    created.setFeedId(key.feedId());
+                    created.setStageName(key.stageName());
+                    created.setSlotStart(key.slotStart());
+                    return created;
+                });
+        final DurationHistogram merged = row.getData() != null ? DurationHistogram.decode(row.getData()) : new DurationHistogram();
+        merged.merge(histogram);
+        row.setSampleCount(merged.getTotalCount());
+        row.setMaxMillis(merged.getMax());
+        row.setData(merged.encode());
+        histogramRepository.save(row);
+    }
+
+    private LocalDateTime slotOf(final LocalDateTime time) {
+        final long epochMillis = time.atZone(zone).toInstant().toEpochMilli();
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis - Math.floorMod(epochMillis, slotMillis)), zone);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // Let a snapshot in progress finish, the final one must not run next to it
+        snapshotter.shutdown();
+        if (!snapshotter.awaitTermination(30, TimeUnit.SECONDS)) {
+            snapshotter.shutdownNow();
+        }
+        snapshotQuietly();
+    }
+
+}
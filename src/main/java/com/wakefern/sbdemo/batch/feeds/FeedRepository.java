@@ -1,7 +1,36 @@
 package com.wakefern.sbdemo.batch.feeds;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
 
 public interface FeedRepository extends JpaRepository<Feed, Long> {
+
+    /**
+     * Find the feeds the scheduler has to track, either with a cron schedule or a pending run
+     */
+    @Query("SELECT f FROM Feed f WHERE f.status = :status AND (f.cron IS NOT NULL OR f.nextRun IS NOT NULL)")
+    List<Feed> findScheduled(@Param("status") String status);
+
+    /**
+     * Update only the next run, so rescheduling never overwrites concurrent changes to other columns
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Feed f SET f.nextRun = :nextRun WHERE f.id = :id")
+    int updateNextRun(@Param("id") Long id, @Param("nextRun") LocalDateTime nextRun);
+
+    /**
+     * Update only the last run, so a finishing execution never overwrites edits made while it ran
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Feed f SET f.lastRun = :lastRun WHERE f.id = :id")
+    int updateLastRun(@Param("id") Long id, @Param("lastRun") LocalDateTime lastRun);
+
 }
\ No newline at end of file
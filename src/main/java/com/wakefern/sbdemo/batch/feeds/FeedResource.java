@@ -4,9 +4,13 @@ import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
+import java.net.URI;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -19,6 +23,7 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 
 @RestController
@@ -26,12 +31,22 @@ import org.springframework.web.bind.annotation.RestController;
 @Tag(name = "Feed Management", description = "REST API for managing and executing data feeds")
 public class FeedResource {
 
+    private static final int MAX_PAGE_SIZE = 500;
+
     private final FeedService feedService;
     private final FeedExecutionHistoryService executionHistoryService;
+    private final FeedExecutionEngine executionEngine;
+    private final FeedExecutionStatsService statsService;
+    private final FeedLatencyService latencyService;
 
-    public FeedResource(final FeedService feedService, final FeedExecutionHistoryService executionHistoryService) {
+    public FeedResource(final FeedService feedService, final FeedExecutionHistoryService executionHistoryService,
+            final FeedExecutionEngine executionEngine, final FeedExecutionStatsService statsService,
+            final FeedLatencyService latencyService) {
         this.feedService = feedService;
         this.executionHistoryService = executionHistoryService;
+        this.executionEngine = executionEngine;
+        this.statsService = statsService;
+        this.latencyService = latencyService;
     }
 
     @GetMapping
@@ -71,44 +86,88 @@ public class FeedResource {
     }
 
     @PostMapping("/{id}/execute")
-    @Operation(summary = "Execute feed", description = "Execute a specific feed with optional parameters")
-    @ApiResponse(responseCode = "200", description = "Feed execution completed")
+    @Operation(summary = "Execute feed", description = "Queue an execution of a specific feed with optional parameters and return its execution ID right away")
+    @ApiResponse(responseCode = "202", description = "Feed execution accepted, poll the Location header for its status. Depending on the overlap policy the execution waits for one already in progress, or the execution in progress is returned")
+    @ApiResponse(responseCode = "409", description = "Feed already has an execution in progress and the overlap policy is REJECT")
+    @ApiResponse(responseCode = "503", description = "Execution queue is full")
     public ResponseEntity<FeedExecutionResponse> executeFeed(
             @PathVariable(name = "id") final Long id,
             @RequestBody(required = false) final FeedExecutionRequest request) {
         
         String parameters = request != null ? request.getParameters() : null;
-        ExecutionResult result = feedService.executeFeed(id, parameters);
+        ExecutionResult result = executionEngine.submit(id, parameters);
+        return accepted(id, result);
+    }
+
+    @PostMapping("/{id}/executions/{executionId}/resume")
+    @Operation(summary = "Resume execution", description = "Queue a new execution that continues a failed execution from its failed stage, reusing the checkpointed outputs of the stages that already succeeded")
+    @ApiResponse(responseCode = "202", description = "Resumed execution accepted, poll the Location header for its status")
+    @ApiResponse(responseCode = "404", description = "Execution not found for this feed")
+    @ApiResponse(responseCode = "409", description = "Execution did not fail or has no checkpoint to resume from")
+    @ApiResponse(responseCode = "503", description = "Execution queue is full")
+    public ResponseEntity<FeedExecutionResponse> resumeExecution(
+            @PathVariable(name = "id") final Long id,
+            @PathVariable(name = "executionId") final Long executionId) {
         
-        FeedExecutionResponse response = new FeedExecutionResponse();
-        response.setFeedId(id);
-        response.setStatus(result.getStatus().name());
-        response.setLogs(result.getLogs());
-        response.setStartTime(result.getStartTime());
-        response.setEndTime(result.getEndTime());
-        response.setDurationMillis(result.getDurationMillis());
-        response.setError(result.getError());
+        ExecutionResult result = executionEngine.resume(id, executionId);
+        return accepted(id, result);
+    }
+
+    @PostMapping("/{id}/executions/{executionId}/cancel")
+    @Operation(summary = "Cancel execution", description = "Cancel a queued or running execution. Queued executions are dropped right away, running stages are interrupted and the execution is stored as CANCELLED")
+    @ApiResponse(responseCode = "202", description = "Cancellation accepted, poll the Location header for the final status")
+    @ApiResponse(responseCode = "404", description = "Execution not found for this feed")
+    @ApiResponse(responseCode = "409", description = "Execution already finished")
+    public ResponseEntity<FeedExecutionResponse> cancelExecution(
+            @PathVariable(name = "id") final Long id,
+            @PathVariable(name = "executionId") final Long executionId) {
         
-        // Map execution stages to DTOs
-        List<StageDTO> stageDTOs = result.getStages().stream()
-                .map(StageDTO::fromExecutionStage)
-                .collect(Collectors.toList());
-        response.setStages(stageDTOs);
+        ExecutionResult result = executionEngine.cancel(id, executionId);
+        return accepted(id, result);
+    }
+
+    private ResponseEntity<FeedExecutionResponse> accepted(final Long id, final ExecutionResult result) {
+        URI statusUri = URI.create("/api/feeds/" + id + "/executions/" + result.getExecutionId() + "/status");
+        return ResponseEntity.accepted()
+                .location(statusUri)
+                .body(mapToExecutionResponse(result));
+    }
+
+    @GetMapping("/executions/progress")
+    @Operation(summary = "Get progress of running executions", description = "Progress of every queued or running execution across all feeds, cheap enough for dashboards to poll frequently")
+    public ResponseEntity<List<ExecutionProgressDTO>> getExecutionsProgress() {
+        return ResponseEntity.ok(executionEngine.findUnfinished().stream()
+                .map(ExecutionProgressDTO::fromExecutionResult)
+                .toList());
+    }
+
+    @GetMapping("/{id}/executions/{executionId}/status")
+    @Operation(summary = "Get execution status", description = "Poll the status of a queued, running or finished execution")
+    public ResponseEntity<FeedExecutionResponse> getExecutionStatus(
+            @PathVariable(name = "id") final Long id,
+            @PathVariable(name = "executionId") final Long executionId) {
+        
+        Optional<ExecutionResult> liveResult = executionEngine.find(executionId)
+                .filter(result -> id.equals(result.getFeedId()));
+        if (liveResult.isPresent()) {
+            return ResponseEntity.ok(mapToExecutionResponse(liveResult.get()));
+        }
         
-        return ResponseEntity.ok(response);
+        // Older executions are no longer tracked in memory, fall back to the stored history
+        return executionHistoryService.getExecutionWithDetails(executionId)
+                .filter(execution -> execution.getFeedId().equals(id))
+                .map(execution -> ResponseEntity.ok(mapToExecutionResponse(execution)))
+                .orElse(ResponseEntity.notFound().build());
     }
 
     @GetMapping("/{id}/executions")
-    @Operation(summary = "Get execution history", description = "Retrieve execution history for a specific feed")
+    @Operation(summary = "Get execution history", description = "Retrieve a page of the execution history of a feed, newest first. The Link header with rel=\"next\" points to the following page and is missing on the last page")
     public ResponseEntity<List<FeedExecutionHistoryDTO>> getExecutionHistory(
-            @PathVariable(name = "id") final Long id) {
-        
-        List<FeedExecution> executions = executionHistoryService.getExecutionHistory(id);
-        List<FeedExecutionHistoryDTO> executionDTOs = executions.stream()
-                .map(this::mapToExecutionHistoryDTO)
-                .collect(Collectors.toList());
+            @PathVariable(name = "id") final Long id,
+            @RequestParam(required = false) final String cursor,
+            @RequestParam(defaultValue = "50") final int limit) {
         
-        return ResponseEntity.ok(executionDTOs);
+        return toPageResponse(executionHistoryService.getExecutionHistory(id, ExecutionHistoryFilter.NONE, cursor, pageSize(limit)));
     }
 
     @GetMapping("/{id}/executions/{executionId}")
@@ -134,7 +193,7 @@ public class FeedResource {
             @PathVariable(name = "id") final Long id,
             @RequestParam(defaultValue = "10") final int limit) {
         
-        List<FeedExecution> executions = executionHistoryService.getRecentExecutions(id, limit);
+        List<ExecutionSummary> executions = executionHistoryService.getRecentExecutions(id, limit);
         List<FeedExecutionHistoryDTO> executionDTOs = executions.stream()
                 .map(this::mapToExecutionHistoryDTO)
                 .collect(Collectors.toList());
@@ -151,48 +210,112 @@ public class FeedResource {
         return ResponseEntity.ok(stats);
     }
 
+    @GetMapping("/{id}/executions/latency")
+    @Operation(summary = "Get execution latency percentiles", description = "Duration percentiles of the executions and stages of a feed that finished within a window, such as PT1H, P1D or P7D")
+    public ResponseEntity<FeedLatencyDTO> getExecutionLatency(
+            @PathVariable(name = "id") final Long id,
+            @RequestParam(defaultValue = "P1D") final String window) {
+        return ResponseEntity.ok(latencyService.getLatency(id, Duration.parse(window)));
+    }
+
+    @PostMapping("/executions/stats/rebuild")
+    @Operation(summary = "Rebuild execution statistics", description = "Recompute the execution statistics of all feeds from their history, to repair statistics that drifted")
+    public ResponseEntity<Integer> rebuildExecutionStats() {
+        return ResponseEntity.ok(statsService.rebuildAll());
+    }
+
     @GetMapping("/{id}/executions/filter")
-    @Operation(summary = "Filter execution history", description = "Retrieve execution history filtered by status and date range")
+    @Operation(summary = "Filter execution history", description = "Retrieve a page of the execution history matching all given conditions: status, start date range, minimum duration and whether the execution failed with an error, paged like the execution history")
     public ResponseEntity<List<FeedExecutionHistoryDTO>> getFilteredExecutionHistory(
             @PathVariable(name = "id") final Long id,
             @RequestParam(required = false) final String status,
             @RequestParam(required = false) final String startDate,
-            @RequestParam(required = false) final String endDate) {
-        
-        List<FeedExecution> executions;
+            @RequestParam(required = false) final String endDate,
+            @RequestParam(required = false) final Long minDurationMillis,
+            @RequestParam(required = false) final Boolean hasError,
+            @RequestParam(required = false) final String cursor,
+            @RequestParam(defaultValue = "50") final int limit) {
         
-        if (startDate != null && endDate != null) {
-            LocalDateTime start = LocalDateTime.parse(startDate);
-            LocalDateTime end = LocalDateTime.parse(endDate);
-            executions = executionHistoryService.getExecutionHistoryByDateRange(id, start, end);
-        } else if (status != null) {
-            FeedExecution.Status executionStatus = FeedExecution.Status.valueOf(status.toUpperCase());
-            executions = executionHistoryService.getExecutionHistoryByStatus(executionStatus);
-            executions = executions.stream()
-                    .filter(execution -> execution.getFeedId().equals(id))
-                    .collect(Collectors.toList());
-        } else {
-            executions = executionHistoryService.getExecutionHistory(id);
-        }
-        
-        List<FeedExecutionHistoryDTO> executionDTOs = executions.stream()
+        ExecutionHistoryFilter filter = new ExecutionHistoryFilter(
+                status != null ? FeedExecution.Status.valueOf(status.toUpperCase()) : null,
+                startDate != null ? LocalDateTime.parse(startDate) : null,
+                endDate != null ? LocalDateTime.parse(endDate) : null,
+                minDurationMillis, hasError);
+        return toPageResponse(executionHistoryService.getExecutionHistory(id, filter, cursor, pageSize(limit)));
+    }
+
+    private static int pageSize(final int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+
+    private ResponseEntity<List<FeedExecutionHistoryDTO>> toPageResponse(final FeedExecutionHistoryService.ExecutionPage page) {
+        List<FeedExecutionHistoryDTO> executionDTOs = page.executions().stream()
                 .map(this::mapToExecutionHistoryDTO)
                 .collect(Collectors.toList());
+        if (page.nextCursor() == null) {
+            return ResponseEntity.ok(executionDTOs);
+        }
+        URI next = ServletUriComponentsBuilder.fromCurrentRequest()
+                .replaceQueryParam("cursor", page.nextCursor())
+                .build().toUri();
+        return ResponseEntity.ok()
+                .header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"")
+                .body(executionDTOs);
+    }
+
+    private FeedExecutionResponse mapToExecutionResponse(ExecutionResult result) {
+        FeedExecutionResponse response = new FeedExecutionResponse();
+        response.setExecutionId(result.getExecutionId());
+        response.setFeedId(result.getFeedId());
+        response.setStatus(result.getStatus().name());
+        response.setResumedFromExecutionId(result.getResumedFromExecutionId());
+        response.setLogs(result.getLogs());
+        response.setStartTime(result.getStartTime());
+        response.setEndTime(result.getEndTime());
+        response.setDurationMillis(result.getDurationMillis());
+        response.setError(result.getError());
         
-        return ResponseEntity.ok(executionDTOs);
+        // Map execution stages to DTOs
+        List<StageDTO> stageDTOs = result.getStages().stream()
+                .map(StageDTO::fromExecutionStage)
+                .collect(Collectors.toList());
+        response.setStages(stageDTOs);
+        response.setMaxConcurrentStages(result.getMaxConcurrentStages());
+        response.setStageOverlapMillis(result.getStageOverlapMillis());
+        return response;
+    }
+
+    private FeedExecutionResponse mapToExecutionResponse(FeedExecution execution) {
+        FeedExecutionResponse response = new FeedExecutionResponse();
+        response.setExecutionId(execution.getId());
+        response.setFeedId(execution.getFeedId());
+        response.setStatus(execution.getStatus().name());
+        response.setResumedFromExecutionId(execution.getResumedFromExecutionId());
+        response.setLogs(execution.getLogs().stream()
+                .map(FeedExecutionLog::getMessage)
+                .collect(Collectors.toList()));
+        response.setStartTime(execution.getStartTime());
+        response.setEndTime(execution.getEndTime());
+        response.setDurationMillis(execution.getDurationMillis());
+        response.setError(execution.getError());
+        response.setStages(execution.getStages().stream()
+                .map(StageDTO::fromFeedExecutionStage)
+                .collect(Collectors.toList()));
+        return response;
     }
 
-    private FeedExecutionHistoryDTO mapToExecutionHistoryDTO(FeedExecution execution) {
+    private FeedExecutionHistoryDTO mapToExecutionHistoryDTO(ExecutionSummary execution) {
         FeedExecutionHistoryDTO dto = new FeedExecutionHistoryDTO();
-        dto.setId(execution.getId());
-        dto.setFeedId(execution.getFeedId());
-        dto.setStatus(execution.getStatus().name());
-        dto.setStartTime(execution.getStartTime());
-        dto.setEndTime(execution.getEndTime());
-        dto.setDurationMillis(execution.getDurationMillis());
-        dto.setParameters(execution.getParameters());
-        dto.setError(execution.getError());
-        dto.setCreatedAt(execution.getCreatedAt());
+        dto.setId(execution.id());
+        dto.setFeedId(execution.feedId());
+        dto.setStatus(execution.status().name());
+        dto.setResumedFromExecutionId(execution.resumedFromExecutionId());
+        dto.setStartTime(execution.startTime());
+        dto.setEndTime(execution.endTime());
+        dto.setDurationMillis(execution.durationMillis());
+        dto.setParameters(execution.parameters());
+        dto.setError(execution.error());
+        dto.setCreatedAt(execution.createdAt());
         return dto;
     }
 
@@ -201,6 +324,7 @@ public class FeedResource {
         dto.setId(execution.getId());
         dto.setFeedId(execution.getFeedId());
         dto.setStatus(execution.getStatus().name());
+        dto.setResumedFromExecutionId(execution.getResumedFromExecutionId());
         dto.setStartTime(execution.getStartTime());
         dto.setEndTime(execution.getEndTime());
         dto.setDurationMillis(execution.getDurationMillis());
@@ -236,6 +360,8 @@ public class FeedResource {
         dto.setStartTime(stage.getStartTime());
         dto.setEndTime(stage.getEndTime());
         dto.setDurationMillis(stage.getDurationMillis());
+        dto.setIdleMillis(stage.getIdleMillis());
+        dto.setBlockedMillis(stage.getBlockedMillis());
         dto.setParameters(stage.getParameters());
         dto.setError(stage.getError());
         dto.setStageOrder(stage.getStageOrder());
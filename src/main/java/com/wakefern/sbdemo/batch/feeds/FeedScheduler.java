@@ -0,0 +1,247 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.scheduling.support.CronExpression;
+import org.springframework.stereotype.Component;
+
+
+/**
+ * Fires active feeds when their next run is due and hands them to the execution engine.
+ * Active feeds are loaded once at startup into a delay queue ordered by next run, after that
+ * the queue is kept in sync through {@link FeedChangedEvent}s, so the feed table is never
+ * rescanned. Feeds with a cron expression are rescheduled for their next occurrence when
+ * they fire, feeds with only a next run fire once. A run missed while the application was
+ * down fires once right after startup.
+ * <p>
+ * Scheduling lag, the time between a feed becoming due and its dispatch, is recorded in the
+ * {@code feeds.scheduler.lag} timer.
+ */
+@Component
+public class FeedScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(FeedScheduler.class);
+
+    private static final String ACTIVE = "ACTIVE";
+
+    private final FeedRepository feedRepository;
+    private final FeedExecutionEngine executionEngine;
+    private final boolean enabled;
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final DelayQueue<ScheduledRun> queue = new DelayQueue<>();
+    // The current run of every scheduled feed, queued runs not in here have been superseded
+    private final Map<Long, ScheduledRun> scheduled = new ConcurrentHashMap<>();
+    private final Timer lag;
+    private final Counter dispatched;
+    private final Counter rejected;
+    private volatile Thread dispatcher;
+
+    public FeedScheduler(final FeedRepository feedRepository,
+                         final FeedExecutionEngine executionEngine,
+                         final MeterRegistry meterRegistry,
+                         @Value("${app.feeds.scheduler.enabled:true}") final boolean enabled) {
+        this.feedRepository = feedRepository;
+        this.executionEngine = executionEngine;
+        this.enabled = enabled;
+        this.lag = Timer.builder("feeds.scheduler.lag")
+                .description("Delay between a feed run becoming due and its dispatch to the execution engine")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.dispatched = Counter.builder("feeds.scheduler.dispatched")
+                .description("Scheduled feed runs handed to the execution engine")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("feeds.scheduler.rejected")
+                .description("Scheduled feed runs the execution engine did not accept")
+                .register(meterRegistry);
+        meterRegistry.gauge("feeds.scheduler.scheduled", scheduled, Map::size);
+    }
+
+    /**
+     * Load the scheduled feeds and start dispatching, after the data initializer has run
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            logger.info("Feed scheduler is disabled");
+            return;
+        }
+        for (Feed feed : feedRepository.findScheduled(ACTIVE)) {
+            schedule(feed);
+        }
+        final Thread thread = new CustomizableThreadFactory("feed-scheduler-").newThread(this::dispatchLoop);
+        thread.setDaemon(true);
+        dispatcher = thread;
+        thread.start();
+        logger.info("Feed scheduler started with {} scheduled feeds", scheduled.size());
+    }
+
+    @EventListener
+    public void onFeedChanged(final FeedChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        if (event.isDeleted()) {
+            unschedule(event.feedId());
+        } else {
+            schedule(event.feed());
+        }
+    }
+
+    /**
+     * Get the time the feed is next dispatched, empty if it is not scheduled
+     */
+    public Optional<LocalDateTime> getNextRun(final Long feedId) {
+        return Optional.ofNullable(scheduled.get(feedId)).map(ScheduledRun::dueAt);
+    }
+
+    private void schedule(final Feed feed) {
+        if (!ACTIVE.equals(feed.getStatus())) {
+            // Drop the pending run, so reactivating the feed does not fire a stale one
+            unschedule(feed.getId());
+            if (feed.getNextRun() != null) {
+                feedRepository.updateNextRun(feed.getId(), null);
+            }
+            return;
+        }
+        final CronExpression cron = parseCron(feed);
+        LocalDateTime dueAt = cron != null ? cron.next(LocalDateTime.now(zone)) : null;
+        // An explicit next run before the next cron occurrence is kept as a one-off run
+        if (feed.getNextRun() != null && (dueAt == null || feed.getNextRun().isBefore(dueAt))) {
+            dueAt = feed.getNextRun();
+        }
+        if (dueAt == null) {
+            unschedule(feed.getId());
+            return;
+        }
+        enqueue(new ScheduledRun(feed.getId(), cron, dueAt, dueAt.atZone(zone).toInstant().toEpochMilli()));
+    }
+
+    private CronExpression parseCron(final Feed feed) {
+        if (feed.getCron() == null) {
+            return null;
+        }
+        try {
+            return CronExpression.parse(feed.getCron());
+        } catch (IllegalArgumentException e) {
+            logger.warn("Feed {} has an invalid cron expression '{}', only its next run is scheduled",
+                    feed.getId(), feed.getCron());
+            return null;
+        }
+    }
+
+    private void enqueue(final ScheduledRun run) {
+        final ScheduledRun previous = scheduled.put(run.feedId(), run);
+        // A superseded run stays queued and is dropped when it comes due
+        queue.add(run);
+        if (previous == null || !run.dueAt().equals(previous.dueAt())) {
+            feedRepository.updateNextRun(run.feedId(), run.dueAt());
+        }
+        logger.debug("Feed {} scheduled to run at {}", run.feedId(), run.dueAt());
+    }
+
+    private void unschedule(final Long feedId) {
+        if (scheduled.remove(feedId) != null) {
+            logger.debug("Feed {} is no longer scheduled", feedId);
+        }
+    }
+
+    private void dispatchLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                final ScheduledRun run = queue.take();
+                if (scheduled.get(run.feedId()) == run) {
+                    dispatch(run);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                logger.error("Feed scheduler failed to dispatch a feed run", e);
+            }
+        }
+    }
+
+    private void dispatch(final ScheduledRun run) {
+        lag.record(Math.max(0, System.currentTimeMillis() - run.dueMillis()), TimeUnit.MILLISECONDS);
+
+        // Reschedule before submitting, so the execution reads the feed with its new next run
+        final LocalDateTime next = run.cron() != null ? run.cron().next(LocalDateTime.now(zone)) : null;
+        if (next != null) {
+            final ScheduledRun nextRun = new ScheduledRun(run.feedId(), run.cron(), next,
+                    next.atZone(zone).toInstant().toEpochMilli());
+            // Keep a reschedule that came in through a feed update in the meantime
+            if (scheduled.replace(run.feedId(), run, nextRun)) {
+                queue.add(nextRun);
+                feedRepository.updateNextRun(run.feedId(), next);
+            }
+        } else if (scheduled.remove(run.feedId(), run)) {
+            feedRepository.updateNextRun(run.feedId(), null);
+        }
+
+        try {
+            final ExecutionResult result = executionEngine.submit(run.feedId(), null);
+            dispatched.increment();
+            logger.info("Dispatched scheduled run of feed {} due at {} as execution {}",
+                    run.feedId(), run.dueAt(), result.getExecutionId());
+        } catch (ExecutionRejectedException | FeedBusyException e) {
+            rejected.increment();
+            logger.warn("Scheduled run of feed {} due at {} was rejected: {}", run.feedId(), run.dueAt(), e.getMessage());
+        } catch (RuntimeException e) {
+            rejected.increment();
+            logger.error("Scheduled run of feed {} due at {} could not be submitted", run.feedId(), run.dueAt(), e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        final Thread thread = dispatcher;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * A pending run of a feed, ordered by the time it is due
+     */
+    private record ScheduledRun(Long feedId, CronExpression cron, LocalDateTime dueAt, long dueMillis) implements Delayed {
+
+        @Override
+        public long getDelay(final TimeUnit unit) {
+            return unit.convert(Duration.ofMillis(dueMillis - System.currentTimeMillis()));
+        }
+
+        @Override
+        public int compareTo(final Delayed other) {
+            return Long.compare(dueMillis, ((ScheduledRun) other).dueMillis);
+        }
+
+        // Runs are compared by identity, a rescheduled feed gets a new run
+        @Override
+        public boolean equals(final Object other) {
+            return this == other;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this);
+        }
+
+    }
+
+}
@@ -3,6 +3,7 @@ package com.wakefern.sbdemo.batch.feeds;
 import com.wakefern.sbdemo.util.NotFoundException;
 import com.wakefern.sbdemo.batch.stocks.StocksBatch;
 import java.util.List;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 
@@ -13,13 +14,22 @@ public class FeedService {
     private final FeedRepository feedRepository;
     private final StocksBatch stocksBatch;
     private final FeedExecutionHistoryService executionHistoryService;
+    private final ExecutionHistoryWriter historyWriter;
+    private final CheckpointStore checkpointStore;
+    private final ApplicationEventPublisher eventPublisher;
 
     public FeedService(final FeedRepository feedRepository, 
                       final StocksBatch stocksBatch,
-                      final FeedExecutionHistoryService executionHistoryService) {
+                      final FeedExecutionHistoryService executionHistoryService,
+                      final ExecutionHistoryWriter historyWriter,
+                      final CheckpointStore checkpointStore,
+                      final ApplicationEventPublisher eventPublisher) {
         this.feedRepository = feedRepository;
         this.stocksBatch = stocksBatch;
         this.executionHistoryService = executionHistoryService;
+        this.historyWriter = historyWriter;
+        this.checkpointStore = checkpointStore;
+        this.eventPublisher = eventPublisher;
     }
 
     public List<FeedDTO> findAll() {
@@ -38,79 +48,115 @@ public class FeedService {
     public Long create(final FeedDTO feedDTO) {
         final Feed feed = new Feed();
         mapToEntity(feedDTO, feed);
-        return feedRepository.save(feed).getId();
+        final Feed saved = feedRepository.save(feed);
+        eventPublisher.publishEvent(new FeedChangedEvent(saved.getId(), saved));
+        return saved.getId();
     }
 
     public void update(final Long id, final FeedDTO feedDTO) {
         final Feed feed = feedRepository.findById(id)
                 .orElseThrow(NotFoundException::new);
         mapToEntity(feedDTO, feed);
-        feedRepository.save(feed);
+        eventPublisher.publishEvent(new FeedChangedEvent(id, feedRepository.save(feed)));
     }
 
     public void delete(final Long id) {
         feedRepository.deleteById(id);
+        eventPublisher.publishEvent(new FeedChangedEvent(id, null));
     }
 
-    public ExecutionResult executeFeed(final Long id, final String parameters) {
+    /**
+     * Run an execution accepted by the {@link FeedExecutionEngine}, which owns its record,
+     * worker and cancellation. Feeds are only ever run through the engine.
+     */
+    ExecutionResult executeFeed(final Long id, final String parameters, final ExecutionResult result) {
         final Feed feed = feedRepository.findById(id)
                 .orElseThrow(NotFoundException::new);
         
-        ExecutionResult result = new ExecutionResult();
-        result.addLog("Starting execution of feed: " + feed.getName() + " (ID: " + feed.getId() + ")");
+        result.markStarted();
+        result.info("Starting execution of feed: {} (ID: {})", feed.getName(), feed.getId());
         
         if (parameters != null && !parameters.trim().isEmpty()) {
-            result.addLog("Parameters: " + parameters);
+            result.info("Parameters: {}", parameters);
         } else {
-            result.addLog("No parameters provided");
+            result.info("No parameters provided");
         }
         
         try {
             // Check if this is the Stocks Batch Feed
             if ("Stocks Batch Feed".equals(feed.getName())) {
-                result.addLog("Detected Stocks Batch Feed - calling StocksBatch.execute()");
-                ExecutionResult stocksResult = stocksBatch.executeWithResult(parameters);
-                result.getLogs().addAll(stocksResult.getLogs());
-                result.setStatus(stocksResult.getStatus());
-                if (stocksResult.getError() != null) {
-                    result.setError(stocksResult.getError());
+                result.info("Detected Stocks Batch Feed - calling StocksBatch.execute()");
+                ExecutionCheckpoint checkpoint = openCheckpoint(id, result);
+                result.setCheckpoint(checkpoint);
+                // The batch records its stages, logs and outcome in this execution's result
+                stocksBatch.executeWithResult(parameters, result);
+                if (checkpoint != null) {
+                    if (result.getStatus() == ExecutionResult.Status.SUCCESS) {
+                        checkpointStore.discard(checkpoint.getExecutionId());
+                    } else {
+                        result.info("Stage checkpoints kept, resume execution {} to continue from the stage that did not complete",
+                                checkpoint.getExecutionId());
+                    }
                 }
-                // Copy stages from the stocks batch execution result
-                result.setStages(stocksResult.getStages());
             } else {
                 // For other feeds, just simulate execution
-                result.addLog("Simulating execution for feed type: " + feed.getType());
-                Thread.sleep(1000); // Simulate some processing time
-                result.addLog("Feed execution completed successfully");
-                result.setSuccess();
+                result.info("Simulating execution for feed type: {}", feed.getType());
+                Thread worker = Thread.currentThread();
+                CancellationToken.Registration interrupt = result.getCancellationToken().onCancel(worker::interrupt);
+                try {
+                    Thread.sleep(1000); // Simulate some processing time
+                    result.info("Feed execution completed successfully");
+                    result.setSuccess();
+                } catch (InterruptedException e) {
+                    if (!result.getCancellationToken().isCancelled()) {
+                        throw e;
+                    }
+                    result.setCancelled("Execution cancelled: " + result.getCancellationToken().getReason());
+                } finally {
+                    interrupt.close();
+                    if (result.getCancellationToken().isCancelled()) {
+                        // Do not let the cancellation interrupt the history update below
+                        Thread.interrupted();
+                    }
+                }
             }
             
             // Update lastRun timestamp
-            feed.setLastRun(java.time.LocalDateTime.now());
-            feedRepository.save(feed);
-            result.addLog("Updated feed lastRun timestamp");
+            feedRepository.updateLastRun(feed.getId(), java.time.LocalDateTime.now());
+            result.info("Updated feed lastRun timestamp");
             
         } catch (Exception e) {
             result.setFailed("Execution failed: " + e.getMessage());
-            result.addLog("ERROR: " + e.getMessage());
+            result.error("Execution failed: {}", e.getMessage());
         }
         
         if (result.getStatus() == ExecutionResult.Status.SUCCESS) {
-            result.addLog("Feed execution completed successfully in " + result.getDurationMillis() + "ms");
+            result.info("Feed execution completed successfully in {}ms", result.getDurationMillis());
         }
         
-        // Persist execution history to database
-        try {
-            executionHistoryService.persistExecution(id, parameters, result);
-            result.addLog("Execution history saved to database");
-        } catch (Exception e) {
-            result.addLog("WARNING: Failed to save execution history - " + e.getMessage());
-            // Don't fail the entire execution if history persistence fails
-        }
+        // Persist execution history in the background, failures there don't fail the execution
+        historyWriter.write(id, parameters, result);
         
         return result;
     }
 
+    /**
+     * Open the checkpoint of a tracked execution, taking over the checkpoint of the
+     * execution it resumes. Untracked executions run without a checkpoint.
+     */
+    private ExecutionCheckpoint openCheckpoint(final Long feedId, final ExecutionResult result) {
+        if (result.getExecutionId() == null) {
+            return null;
+        }
+        if (result.getResumedFromExecutionId() == null) {
+            return checkpointStore.open(result.getExecutionId(), feedId);
+        }
+        ExecutionCheckpoint checkpoint = checkpointStore.resume(result.getExecutionId(), feedId, result.getResumedFromExecutionId(),
+                executionHistoryService.getSucceededStageNames(result.getResumedFromExecutionId()));
+        result.info("Resuming failed execution {}", result.getResumedFromExecutionId());
+        return checkpoint;
+    }
+
     private FeedDTO mapToDTO(final Feed feed, final FeedDTO feedDTO) {
         feedDTO.setId(feed.getId());
         feedDTO.setName(feed.getName());
@@ -118,6 +164,8 @@ public class FeedService {
         feedDTO.setStatus(feed.getStatus());
         feedDTO.setLastRun(feed.getLastRun());
         feedDTO.setNextRun(feed.getNextRun());
+        feedDTO.setCron(feed.getCron());
+        feedDTO.setRetentionDays(feed.getRetentionDays());
         return feedDTO;
     }
 
@@ -127,6 +175,8 @@ public class FeedService {
         feed.setStatus(feedDTO.getStatus());
         feed.setLastRun(feedDTO.getLastRun());
         feed.setNextRun(feedDTO.getNextRun());
+        feed.setCron(feedDTO.getCron() == null || feedDTO.getCron().isBlank() ? null : feedDTO.getCron().trim());
+        feed.setRetentionDays(feedDTO.getRetentionDays());
         return feed;
     }
 
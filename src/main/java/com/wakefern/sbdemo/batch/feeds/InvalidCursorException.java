@@ -0,0 +1,14 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class InvalidCursorException extends RuntimeException {
+
+    public InvalidCursorException(final String message) {
+        super(message);
+    }
+
+}
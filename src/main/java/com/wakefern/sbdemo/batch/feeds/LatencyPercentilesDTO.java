@@ -0,0 +1,44 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+@Schema(description = "Duration percentiles of the executions of a feed or of one of its stages")
+public class LatencyPercentilesDTO {
+
+    @Schema(description = "Stage name, null for whole executions", example = "Data Processing")
+    private String name;
+
+    @Schema(description = "Number of finished executions or stages measured", example = "120")
+    private Long count;
+
+    @Schema(description = "Median duration in milliseconds", example = "1500")
+    private Long p50Millis;
+
+    @Schema(description = "90th percentile duration in milliseconds", example = "2300")
+    private Long p90Millis;
+
+    @Schema(description = "99th percentile duration in milliseconds", example = "8100")
+    private Long p99Millis;
+
+    @Schema(description = "Longest duration in milliseconds", example = "9400")
+    private Long maxMillis;
+
+    @Schema(description = "Mean duration in milliseconds", example = "1720.5")
+    private Double meanMillis;
+
+    public static LatencyPercentilesDTO fromHistogram(String name, DurationHistogram histogram) {
+        LatencyPercentilesDTO dto = new LatencyPercentilesDTO();
+        dto.setName(name);
+        dto.setCount(histogram.getTotalCount());
+        dto.setP50Millis(histogram.getValueAtPercentile(50));
+        dto.setP90Millis(histogram.getValueAtPercentile(90));
+        dto.setP99Millis(histogram.getValueAtPercentile(99));
+        dto.setMaxMillis(histogram.getMax());
+        dto.setMeanMillis(histogram.getMean());
+        return dto;
+    }
+}
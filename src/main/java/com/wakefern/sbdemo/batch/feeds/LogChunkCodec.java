@@ -0,0 +1,170 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Packs log lines into the compressed blocks stored in {@link FeedExecutionLogChunk}.
+ * <p>
+ * A block is a version byte followed by a Deflate stream holding the number of lines, then a
+ * header with the level, the time since the previous line and the message length of every
+ * line, then the messages back to back. Keeping the similar fields of all lines together lets
+ * Deflate find the repetition in them, the repetitive text of the messages compresses well
+ * on its own.
+ */
+final class LogChunkCodec {
+
+    private static final int VERSION = 1;
+    private static final LogEvent.Level[] LEVELS = LogEvent.Level.values();
+
+    private LogChunkCodec() {
+    }
+
+    /**
+     * Encode log events as they are displayed
+     * @param first The timestamp of the first event, stored in the chunk record
+     */
+    static byte[] encode(final List<LogEvent> events, final LocalDateTime first) {
+        final List<Line> lines = new ArrayList<>(events.size());
+        for (LogEvent event : events) {
+            lines.add(new Line(event.getLevel(), event.getTimestamp(), event.format()));
+        }
+        return write(lines, first);
+    }
+
+    /**
+     * Encode the lines of a chunk followed by more log events, to fill up a chunk that is not full yet.
+     * The chunk keeps its first timestamp.
+     */
+    static byte[] append(final FeedExecutionLogChunk chunk, final List<LogEvent> events) {
+        final List<FeedExecutionLog> logs = decode(chunk);
+        final List<Line> lines = new ArrayList<>(logs.size() + events.size());
+        for (FeedExecutionLog log : logs) {
+            lines.add(new Line(LogEvent.Level.valueOf(log.getLogLevel()), log.getTimestamp(), log.getMessage()));
+        }
+        for (LogEvent event : events) {
+            lines.add(new Line(event.getLevel(), event.getTimestamp(), event.format()));
+        }
+        return write(lines, chunk.getFirstTimestamp());
+    }
+
+    private static byte[] write(final List<Line> lines, final LocalDateTime first) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + lines.size() * 16);
+        bytes.write(VERSION);
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater, 8192))) {
+            final byte[][] messages = new byte[lines.size()][];
+            writeVarLong(out, lines.size());
+            for (Line line : lines) {
+                out.writeByte(line.level().ordinal());
+            }
+            LocalDateTime previous = first;
+            for (Line line : lines) {
+                writeVarLong(out, zigZag(Duration.between(previous, line.timestamp()).toNanos()));
+                previous = line.timestamp();
+            }
+            for (int i = 0; i < messages.length; i++) {
+                messages[i] = lines.get(i).message().getBytes(StandardCharsets.UTF_8);
+                writeVarLong(out, messages[i].length);
+            }
+            for (byte[] message : messages) {
+                out.write(message);
+            }
+        } catch (IOException e) {
+            // Writing to memory
+            throw new UncheckedIOException(e);
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decode a chunk into detached log records
+     */
+    static List<FeedExecutionLog> decode(final FeedExecutionLogChunk chunk) {
+        final byte[] data = chunk.getData();
+        if (data.length == 0 || data[0] != VERSION) {
+            throw new IllegalStateException("Unsupported log chunk format in chunk " + chunk.getId());
+        }
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(
+                new ByteArrayInputStream(data, 1, data.length - 1)))) {
+            final int count = (int) readVarLong(in);
+            final List<FeedExecutionLog> logs = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                final FeedExecutionLog log = new FeedExecutionLog();
+                log.setExecutionId(chunk.getExecutionId());
+                log.setStageId(chunk.getStageId());
+                log.setLogLevel(LEVELS[in.readUnsignedByte()].name());
+                logs.add(log);
+            }
+            LocalDateTime previous = chunk.getFirstTimestamp();
+            for (FeedExecutionLog log : logs) {
+                previous = previous.plusNanos(unZigZag(readVarLong(in)));
+                log.setTimestamp(previous);
+            }
+            final int[] lengths = new int[count];
+            for (int i = 0; i < count; i++) {
+                lengths[i] = (int) readVarLong(in);
+            }
+            for (int i = 0; i < count; i++) {
+                logs.get(i).setMessage(new String(in.readNBytes(lengths[i]), StandardCharsets.UTF_8));
+            }
+            return logs;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Corrupt log chunk " + chunk.getId(), e);
+        }
+    }
+
+    /**
+     * A line as it is stored
+     */
+    private record Line(LogEvent.Level level, LocalDateTime timestamp, String message) {
+    }
+
+    private static long zigZag(final long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(final long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(final OutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(final InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = in.read();
+            if (b < 0) {
+                throw new IOException("Truncated log chunk");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed log chunk");
+    }
+
+}
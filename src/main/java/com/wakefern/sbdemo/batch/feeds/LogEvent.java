@@ -0,0 +1,126 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import org.slf4j.helpers.MessageFormatter;
+
+/**
+ * A single execution log entry. The message is kept as an SLF4J style template with its
+ * arguments and only formatted when the entry is rendered or persisted, so logging on a
+ * hot path costs one small object instead of a concatenated, timestamped string. Arguments
+ * that may change after they were logged are rendered to a string when the event is created,
+ * so a later rendering shows them as they were.
+ */
+public final class LogEvent {
+
+    public enum Level {
+        INFO, WARN, ERROR
+    }
+
+    /** Stage index of events logged for the execution as a whole */
+    public static final int NO_STAGE = -1;
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+    private static final Object[] NO_ARGS = new Object[0];
+    // Wall clock anchor for the monotonic clock, so timestamps cost no allocation and never go backwards
+    private static final long ANCHOR_EPOCH_NANOS;
+    private static final long ANCHOR_NANO_TIME;
+
+    static {
+        Instant now = Instant.now();
+        ANCHOR_NANO_TIME = System.nanoTime();
+        ANCHOR_EPOCH_NANOS = now.getEpochSecond() * 1_000_000_000L + now.getNano();
+    }
+
+    private final long epochNanos;
+    private final Level level;
+    private final int stageIndex;
+    private final String template;
+    private final Object[] args;
+    private volatile String message;
+
+    public LogEvent(Level level, int stageIndex, String template, Object[] args) {
+        this.epochNanos = ANCHOR_EPOCH_NANOS + (System.nanoTime() - ANCHOR_NANO_TIME);
+        this.level = level;
+        this.stageIndex = stageIndex;
+        this.template = template;
+        this.args = args != null ? snapshot(args) : NO_ARGS;
+    }
+
+    /**
+     * Keep immutable arguments as they are and render the others right away
+     */
+    private static Object[] snapshot(Object[] args) {
+        Object[] snapshot = args;
+        for (int i = 0; i < args.length; i++) {
+            if (!isImmutable(args[i])) {
+                if (snapshot == args) {
+                    snapshot = args.clone();
+                }
+                snapshot[i] = String.valueOf(args[i]);
+            }
+        }
+        return snapshot;
+    }
+
+    private static boolean isImmutable(Object arg) {
+        return arg == null || arg instanceof String || arg instanceof Integer || arg instanceof Long
+                || arg instanceof Double || arg instanceof Float || arg instanceof Short || arg instanceof Byte
+                || arg instanceof Boolean || arg instanceof Character || arg instanceof BigDecimal
+                || arg instanceof BigInteger || arg instanceof Enum || arg instanceof Path
+                || (arg instanceof TemporalAccessor && arg.getClass().getPackageName().equals("java.time"));
+    }
+
+    public long getEpochNanos() {
+        return epochNanos;
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    public int getStageIndex() {
+        return stageIndex;
+    }
+
+    public String getTemplate() {
+        return template;
+    }
+
+    public LocalDateTime getTimestamp() {
+        return LocalDateTime.ofInstant(Instant.ofEpochSecond(0, epochNanos), ZoneId.systemDefault());
+    }
+
+    /**
+     * Get the message with its arguments filled in, formatted on first use
+     */
+    public String getMessage() {
+        String formatted = message;
+        if (formatted == null) {
+            formatted = args.length == 0 ? template : MessageFormatter.arrayFormat(template, args).getMessage();
+            message = formatted;
+        }
+        return formatted;
+    }
+
+    /**
+     * Render the event the way execution logs are displayed, prefixed with its time of day
+     * and with its level unless it is informational
+     */
+    public String format() {
+        String prefix = "[" + TIME_FORMAT.format(getTimestamp()) + "] ";
+        return level == Level.INFO ? prefix + getMessage() : prefix + level + " " + getMessage();
+    }
+
+    @Override
+    public String toString() {
+        return format();
+    }
+
+}
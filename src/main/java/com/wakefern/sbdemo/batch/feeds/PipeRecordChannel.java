@@ -0,0 +1,136 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Record channel that hands batches from the producer to a concurrently running consumer
+ * through a bounded in-memory queue. A full queue blocks the producer until the consumer
+ * catches up, so at most {@code capacity} batches are buffered between the stages.
+ * @param <T> The record type
+ */
+public class PipeRecordChannel<T> implements RecordChannel<T> {
+
+    // How often blocked callers re-check whether the channel was aborted
+    private static final long ABORT_CHECK_MILLIS = 100;
+
+    private final List<T> endOfStream = new ArrayList<>(0);
+    private final BlockingQueue<List<T>> queue;
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong sendWaitNanos = new AtomicLong();
+    private final AtomicLong receiveWaitNanos = new AtomicLong();
+    private volatile boolean completed;
+    private volatile boolean aborted;
+    private volatile boolean drained;
+
+    public PipeRecordChannel(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive but was " + capacity);
+        }
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    @Override
+    public void send(List<T> batch) throws InterruptedException {
+        if (completed) {
+            throw new IllegalStateException("Cannot send to a completed channel");
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        put(List.copyOf(batch));
+        sentCount.addAndGet(batch.size());
+    }
+
+    @Override
+    public void complete() {
+        if (completed) {
+            return;
+        }
+        completed = true;
+        try {
+            put(endOfStream);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort();
+        }
+    }
+
+    @Override
+    public List<T> receive() throws InterruptedException {
+        if (drained) {
+            return List.of();
+        }
+        long waitStart = System.nanoTime();
+        try {
+            List<T> batch;
+            while ((batch = queue.poll(ABORT_CHECK_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                checkNotAborted();
+            }
+            checkNotAborted();
+            if (batch == endOfStream) {
+                drained = true;
+                return List.of();
+            }
+            return batch;
+        } finally {
+            receiveWaitNanos.addAndGet(System.nanoTime() - waitStart);
+        }
+    }
+
+    private void put(List<T> batch) throws InterruptedException {
+        checkNotAborted();
+        long waitStart = System.nanoTime();
+        try {
+            while (!queue.offer(batch, ABORT_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+                checkNotAborted();
+            }
+        } finally {
+            sendWaitNanos.addAndGet(System.nanoTime() - waitStart);
+        }
+    }
+
+    private void checkNotAborted() {
+        if (aborted) {
+            throw new IllegalStateException("Record channel was aborted");
+        }
+    }
+
+    @Override
+    public void abort() {
+        aborted = true;
+        queue.clear();
+    }
+
+    @Override
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    @Override
+    public long getSendWaitNanos() {
+        return sendWaitNanos.get();
+    }
+
+    @Override
+    public long getReceiveWaitNanos() {
+        return receiveWaitNanos.get();
+    }
+
+    /**
+     * Get the number of batches currently buffered in the channel
+     * @return The buffered batch count
+     */
+    public int getBufferedBatches() {
+        return queue.size();
+    }
+
+    @Override
+    public void close() {
+        queue.clear();
+    }
+}
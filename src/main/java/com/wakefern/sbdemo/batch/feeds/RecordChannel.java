@@ -0,0 +1,64 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Carries records from a producing stage to a consuming stage in bounded-size batches,
+ * so neither side has to hold the full record set in memory.
+ * @param <T> The record type
+ */
+public interface RecordChannel<T> extends AutoCloseable {
+
+    /**
+     * Send a batch of records downstream
+     * @param batch The records to send
+     * @throws IOException if the records cannot be written
+     * @throws InterruptedException if interrupted while handing over the batch
+     */
+    void send(List<T> batch) throws IOException, InterruptedException;
+
+    /**
+     * Signal that the producer has sent all of its records
+     * @throws IOException if pending records cannot be flushed
+     */
+    void complete() throws IOException;
+
+    /**
+     * Receive the next batch of records
+     * @return The next batch, or an empty list once all records have been received
+     * @throws IOException if the records cannot be read
+     * @throws InterruptedException if interrupted while waiting for a batch
+     */
+    List<T> receive() throws IOException, InterruptedException;
+
+    /**
+     * Get the number of records sent so far
+     * @return The record count
+     */
+    long getSentCount();
+
+    /**
+     * Abort the channel after a failure on either side. Blocked and subsequent calls to
+     * {@link #send} and {@link #receive} fail instead of waiting for the other side.
+     */
+    void abort();
+
+    /**
+     * Get the time the producer spent waiting for room in the channel
+     * @return The accumulated wait time in nanoseconds
+     */
+    long getSendWaitNanos();
+
+    /**
+     * Get the time the consumer spent waiting for records to arrive
+     * @return The accumulated wait time in nanoseconds
+     */
+    long getReceiveWaitNanos();
+
+    /**
+     * Release all resources held by the channel
+     */
+    @Override
+    void close();
+}
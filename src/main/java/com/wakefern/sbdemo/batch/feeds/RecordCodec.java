@@ -0,0 +1,18 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+/**
+ * Converts records to and from a single line of text for channels that spool to disk
+ * @param <T> The record type
+ */
+public interface RecordCodec<T> {
+
+    /**
+     * Encode a record as a single line without line separators
+     */
+    String encode(T record);
+
+    /**
+     * Decode a record from a line produced by {@link #encode}
+     */
+    T decode(String line);
+}
@@ -0,0 +1,160 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Record channel that spools batches to a local file and streams them back in batches
+ * once the producer has completed. Heap usage is bounded by the batch size, independent
+ * of the number of records passing through. A consumer that starts early waits until
+ * the producer completed, so the stages effectively run one after the other.
+ * @param <T> The record type
+ */
+public class SpoolRecordChannel<T> implements RecordChannel<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpoolRecordChannel.class);
+
+    private final Path file;
+    private final RecordCodec<T> codec;
+    private final int batchSize;
+    private final boolean deleteOnClose;
+    private BufferedWriter writer;
+    private BufferedReader reader;
+    private volatile boolean completed;
+    private volatile boolean aborted;
+    private volatile long sentCount;
+    private volatile long receiveWaitNanos;
+
+    public SpoolRecordChannel(Path file, RecordCodec<T> codec, int batchSize) {
+        this(file, codec, batchSize, true);
+    }
+
+    /**
+     * @param deleteOnClose Whether to delete the spool file on close, keep it when it is part of a checkpoint
+     */
+    public SpoolRecordChannel(Path file, RecordCodec<T> codec, int batchSize, boolean deleteOnClose) {
+        this.file = file;
+        this.codec = codec;
+        this.batchSize = batchSize;
+        this.deleteOnClose = deleteOnClose;
+    }
+
+    /**
+     * Open a channel over a file a producer completed in an earlier execution,
+     * the records can be received right away and the file is kept on close
+     */
+    public static <T> SpoolRecordChannel<T> restore(Path file, RecordCodec<T> codec, int batchSize) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            throw new IOException("Checkpoint file " + file + " does not exist");
+        }
+        SpoolRecordChannel<T> channel = new SpoolRecordChannel<>(file, codec, batchSize, false);
+        channel.completed = true;
+        return channel;
+    }
+
+    @Override
+    public synchronized void send(List<T> batch) throws IOException {
+        checkNotAborted();
+        if (completed) {
+            throw new IllegalStateException("Cannot send to a completed channel");
+        }
+        if (writer == null) {
+            writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        }
+        for (T record : batch) {
+            writer.write(codec.encode(record));
+            writer.newLine();
+        }
+        sentCount += batch.size();
+    }
+
+    @Override
+    public synchronized void complete() throws IOException {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        } else if (!Files.exists(file)) {
+            Files.createFile(file);
+        }
+        completed = true;
+        notifyAll();
+    }
+
+    @Override
+    public synchronized List<T> receive() throws IOException, InterruptedException {
+        if (!completed && !aborted) {
+            long waitStart = System.nanoTime();
+            while (!completed && !aborted) {
+                wait();
+            }
+            receiveWaitNanos += System.nanoTime() - waitStart;
+        }
+        checkNotAborted();
+        if (reader == null) {
+            reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+        }
+        List<T> batch = new ArrayList<>(batchSize);
+        String line;
+        while (batch.size() < batchSize && (line = reader.readLine()) != null) {
+            batch.add(codec.decode(line));
+        }
+        return batch;
+    }
+
+    @Override
+    public synchronized void abort() {
+        aborted = true;
+        notifyAll();
+    }
+
+    @Override
+    public long getSentCount() {
+        return sentCount;
+    }
+
+    @Override
+    public long getSendWaitNanos() {
+        // Writing to the spool file never waits for the consumer
+        return 0;
+    }
+
+    @Override
+    public long getReceiveWaitNanos() {
+        return receiveWaitNanos;
+    }
+
+    private void checkNotAborted() {
+        if (aborted) {
+            throw new IllegalStateException("Record channel was aborted");
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            if (writer != null) {
+                writer.close();
+            }
+            if (reader != null) {
+                reader.close();
+            }
+            if (deleteOnClose) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to clean up spool file {}", file, e);
+        }
+    }
+}
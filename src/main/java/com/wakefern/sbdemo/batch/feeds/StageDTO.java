@@ -16,12 +16,21 @@ public class StageDTO {
     @Schema(description = "Stage description", example = "Configure HTTP client and validate system settings")
     private String description;
 
-    @Schema(description = "Stage execution status", example = "SUCCESS", allowableValues = {"PENDING", "IN_PROGRESS", "SUCCESS", "FAILED"})
+    @Schema(description = "Stage execution status", example = "SUCCESS", allowableValues = {"PENDING", "IN_PROGRESS", "SUCCESS", "FAILED", "CANCELLED"})
     private String status;
 
     @Schema(description = "Stage execution duration in milliseconds", example = "1250")
     private Long durationMillis;
 
+    @Schema(description = "Time spent on the stage's own work in milliseconds", example = "900")
+    private Long busyMillis;
+
+    @Schema(description = "Time spent waiting for input from an upstream stage in milliseconds", example = "300")
+    private Long idleMillis;
+
+    @Schema(description = "Time spent waiting for a downstream stage to accept output in milliseconds", example = "50")
+    private Long blockedMillis;
+
     @Schema(description = "Stage start time")
     private LocalDateTime startTime;
 
@@ -37,6 +46,28 @@ public class StageDTO {
         dto.setDescription(stage.getDescription());
         dto.setStatus(stage.getStatus().name());
         dto.setDurationMillis(stage.getDurationMillis());
+        dto.setBusyMillis(stage.getBusyMillis());
+        dto.setIdleMillis(stage.getIdleMillis());
+        dto.setBlockedMillis(stage.getBlockedMillis());
+        dto.setStartTime(stage.getStartTime());
+        dto.setEndTime(stage.getEndTime());
+        dto.setError(stage.getError());
+        return dto;
+    }
+
+    public static StageDTO fromFeedExecutionStage(FeedExecutionStage stage) {
+        StageDTO dto = new StageDTO();
+        dto.setName(stage.getName());
+        dto.setDescription(stage.getDescription());
+        dto.setStatus(stage.getStatus().name());
+        dto.setDurationMillis(stage.getDurationMillis());
+        dto.setIdleMillis(stage.getIdleMillis());
+        dto.setBlockedMillis(stage.getBlockedMillis());
+        if (stage.getDurationMillis() != null) {
+            dto.setBusyMillis(Math.max(0, stage.getDurationMillis()
+                    - (stage.getIdleMillis() != null ? stage.getIdleMillis() : 0)
+                    - (stage.getBlockedMillis() != null ? stage.getBlockedMillis() : 0)));
+        }
         dto.setStartTime(stage.getStartTime());
         dto.setEndTime(stage.getEndTime());
         dto.setError(stage.getError());
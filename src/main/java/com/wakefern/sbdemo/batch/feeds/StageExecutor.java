@@ -1,16 +1,42 @@
 package com.wakefern.sbdemo.batch.feeds;
 
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public interface StageExecutor {
     
     /**
-     * Execute the stage with the provided parameters
+     * Execute the stage with the provided parameters. Long-running stages should check the
+     * cancellation token between units of work, blocking calls are interrupted on cancellation.
      * @param parameters Stage-specific parameters
      * @param result The execution result to log to and update
+     * @param cancellation Cancelled when the execution is cancelled or the stage exceeds its timeout
      * @throws Exception if the stage execution fails
      */
-    void execute(Map<String, String> parameters, ExecutionResult result) throws Exception;
+    void execute(Map<String, String> parameters, ExecutionResult result, CancellationToken cancellation) throws Exception;
+    
+    /**
+     * Start the stage and return once it no longer needs the calling thread. Stages that spend
+     * most of their time waiting, such as polling an external system, override this to wait on
+     * a timer instead of holding a stage thread. Continuations must not block and should be
+     * wrapped with {@link ExecutionResult#withCurrentStage(Runnable)} so they log to the stage.
+     * The default runs {@link #execute} on the calling thread.
+     * @param parameters Stage-specific parameters
+     * @param result The execution result to log to and update
+     * @param cancellation Cancelled when the execution is cancelled or the stage exceeds its timeout,
+     *                     pending continuations should stop once it is
+     * @return A future completed when the stage has finished, exceptionally if it failed
+     */
+    default CompletableFuture<Void> executeAsync(Map<String, String> parameters, ExecutionResult result,
+                                                 CancellationToken cancellation) {
+        try {
+            execute(parameters, result, cancellation);
+            return CompletableFuture.completedFuture(null);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
     
     /**
      * Get the name of this stage
@@ -23,4 +49,32 @@ public interface StageExecutor {
      * @return The stage description
      */
     String getDescription();
+    
+    /**
+     * Get the names of the stages that must complete successfully before this stage can start.
+     * Stages without a dependency path between them may run concurrently.
+     * @return The upstream stage names, empty if the stage can start right away
+     */
+    default List<String> getDependencies() {
+        return List.of();
+    }
+    
+    /**
+     * Get the names of the stages whose output this stage consumes while they are still running.
+     * The stage is started as soon as these stages have started, so both run as a pipeline.
+     * @return The streaming upstream stage names, empty if the stage does not stream its input
+     */
+    default List<String> getStreamingDependencies() {
+        return List.of();
+    }
+    
+    /**
+     * Whether a successful run of this stage can be skipped when a failed execution is resumed.
+     * Only stages whose outputs are written to the execution checkpoint, or that have no outputs
+     * at all, may return true. Stages that set up process-local state must run again.
+     * @return true if the stage is restored from the checkpoint instead of being run again
+     */
+    default boolean isCheckpointable() {
+        return false;
+    }
 }
\ No newline at end of file
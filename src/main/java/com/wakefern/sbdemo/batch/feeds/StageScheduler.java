@@ -0,0 +1,385 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+
+/**
+ * Runs a set of stages as a dependency graph on a shared thread pool. A stage starts as soon
+ * as all of its dependencies succeeded and all of its streaming dependencies started, so
+ * stages without a dependency path between them run concurrently and streaming stages run
+ * as a pipeline. Once a stage fails no further stages are started and the record channels
+ * of the execution are aborted, so stages waiting on the failed stage do not hang.
+ * Stages that consume the output of a streaming stage run on threads of their own rather than
+ * the pool: their producer already holds a pool thread and blocks once the pipe between them
+ * is full, so consumers waiting for a pool thread taken by blocked producers would never run.
+ * Checkpointable stages are marked complete in the execution checkpoint when they succeed,
+ * and skipped when the execution resumes one in which they already succeeded.
+ * <p>
+ * Every stage gets its own cancellation token, cancelled when the execution is cancelled or
+ * when a watchdog finds the stage over its timeout budget, which also interrupts the thread
+ * running the stage. A timed out stage fails the execution, a cancelled execution marks its
+ * running stages as cancelled. Either way the run only returns once every started stage has
+ * finished, so no stage updates the result or holds a pool thread after its execution ended.
+ * <p>
+ * Stages run through {@link StageExecutor#executeAsync}, so a stage that waits on a timer
+ * hands its thread back to the pool and finishes on whichever thread completes it.
+ */
+@Component
+public class StageScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(StageScheduler.class);
+
+    // How often a cancelled run reports the stages it is still waiting for
+    private static final Duration CANCELLATION_GRACE = Duration.ofSeconds(5);
+
+    private final ExecutorService executor;
+    // Unbounded, there are only as many consumers as running executions have pipes
+    private final ExecutorService pipeExecutor;
+    private final ScheduledExecutorService watchdog;
+    private final Duration defaultTimeout;
+
+    public StageScheduler(@Value("${app.feeds.stages.pool-size:8}") final int poolSize,
+                          @Value("${app.feeds.stages.timeout:PT10M}") final Duration defaultTimeout) {
+        this.executor = Executors.newFixedThreadPool(poolSize, new CustomizableThreadFactory("feed-stage-"));
+        this.pipeExecutor = Executors.newCachedThreadPool(new CustomizableThreadFactory("feed-stage-pipe-"));
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("feed-stage-watchdog-"));
+        this.defaultTimeout = defaultTimeout;
+    }
+
+    /**
+     * Execute the stages and wait until every started stage has finished
+     * @param stages The stages to run, in the order they are listed in the result
+     * @param stageParams Stage-specific parameters keyed by stage name, a {@code timeout} parameter
+     *                    (ISO-8601 duration such as PT30S) overrides the default stage timeout
+     * @param result The execution result to register and update the stages in
+     * @throws IllegalArgumentException if the dependencies are unknown or form a cycle
+     * @throws InterruptedException if interrupted while waiting for the stages
+     */
+    public void run(final List<StageExecutor> stages, final Map<String, Map<String, String>> stageParams,
+                    final ExecutionResult result) throws InterruptedException {
+        final Map<String, StageExecutor> stagesByName = new LinkedHashMap<>();
+        for (StageExecutor stage : stages) {
+            if (stagesByName.put(stage.getName(), stage) != null) {
+                throw new IllegalArgumentException("Duplicate stage name: " + stage.getName());
+            }
+        }
+
+        final Map<String, List<StageExecutor>> dependents = new HashMap<>();
+        final Map<String, List<StageExecutor>> streamingDependents = new HashMap<>();
+        final Map<String, AtomicInteger> pendingDependencies = new HashMap<>();
+        for (StageExecutor stage : stages) {
+            pendingDependencies.put(stage.getName(), new AtomicInteger(countDependencies(stage)));
+            registerDependents(stage, stage.getDependencies(), stagesByName, dependents);
+            registerDependents(stage, stage.getStreamingDependencies(), stagesByName, streamingDependents);
+        }
+        verifyAcyclic(stages, dependents, streamingDependents);
+
+        // Register all stages up front so they are listed in declaration order and show as pending
+        final Map<String, ExecutionStage> stageRecords = new HashMap<>();
+        for (StageExecutor stage : stages) {
+            stageRecords.put(stage.getName(), result.addStage(stage.getName(), stage.getDescription()));
+        }
+
+        final GraphRun graphRun = new GraphRun(stageParams, result, stageRecords, dependents, streamingDependents,
+                pendingDependencies);
+        final CancellationToken.Registration cancellation = result.getCancellationToken().onCancel(graphRun::cancel);
+        try {
+            graphRun.start(stages.stream()
+                    .filter(stage -> countDependencies(stage) == 0)
+                    .toList());
+            graphRun.await();
+        } finally {
+            cancellation.close();
+        }
+    }
+
+    private Duration getTimeout(final Map<String, String> parameters) {
+        final String timeout = parameters != null ? parameters.get("timeout") : null;
+        if (timeout == null || timeout.isBlank()) {
+            return defaultTimeout;
+        }
+        try {
+            return Duration.parse(timeout.trim());
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid stage timeout '" + timeout + "', expected an ISO-8601 duration such as PT30S", e);
+        }
+    }
+
+    private static int countDependencies(final StageExecutor stage) {
+        return stage.getDependencies().size() + stage.getStreamingDependencies().size();
+    }
+
+    private void registerDependents(final StageExecutor stage, final List<String> dependencies,
+                                    final Map<String, StageExecutor> stagesByName,
+                                    final Map<String, List<StageExecutor>> dependents) {
+        for (String dependency : dependencies) {
+            if (!stagesByName.containsKey(dependency)) {
+                throw new IllegalArgumentException("Stage '" + stage.getName() + "' depends on unknown stage '" + dependency + "'");
+            }
+            dependents.computeIfAbsent(dependency, name -> new ArrayList<>()).add(stage);
+        }
+    }
+
+    private void verifyAcyclic(final List<StageExecutor> stages, final Map<String, List<StageExecutor>> dependents,
+                               final Map<String, List<StageExecutor>> streamingDependents) {
+        final Map<String, Integer> inDegree = new HashMap<>();
+        final Deque<String> ready = new ArrayDeque<>();
+        for (StageExecutor stage : stages) {
+            inDegree.put(stage.getName(), countDependencies(stage));
+            if (countDependencies(stage) == 0) {
+                ready.add(stage.getName());
+            }
+        }
+        int visited = 0;
+        while (!ready.isEmpty()) {
+            final String name = ready.poll();
+            visited++;
+            for (Map<String, List<StageExecutor>> edges : List.of(dependents, streamingDependents)) {
+                for (StageExecutor dependent : edges.getOrDefault(name, List.of())) {
+                    if (inDegree.merge(dependent.getName(), -1, Integer::sum) == 0) {
+                        ready.add(dependent.getName());
+                    }
+                }
+            }
+        }
+        if (visited != stages.size()) {
+            throw new IllegalArgumentException("Stage dependencies contain a cycle");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        pipeExecutor.shutdownNow();
+        watchdog.shutdownNow();
+    }
+
+    /**
+     * State of a single execution of a stage graph
+     */
+    private final class GraphRun {
+
+        private final Map<String, Map<String, String>> stageParams;
+        private final ExecutionResult result;
+        private final Map<String, ExecutionStage> stageRecords;
+        private final Map<String, List<StageExecutor>> dependents;
+        private final Map<String, List<StageExecutor>> streamingDependents;
+        private final Map<String, AtomicInteger> pendingDependencies;
+        // Starts at one for the launching thread, so early finishers cannot complete the run
+        private final AtomicInteger outstanding = new AtomicInteger(1);
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private volatile boolean failed;
+
+        GraphRun(final Map<String, Map<String, String>> stageParams, final ExecutionResult result,
+                 final Map<String, ExecutionStage> stageRecords, final Map<String, List<StageExecutor>> dependents,
+                 final Map<String, List<StageExecutor>> streamingDependents,
+                 final Map<String, AtomicInteger> pendingDependencies) {
+            this.stageParams = stageParams;
+            this.result = result;
+            this.stageRecords = stageRecords;
+            this.dependents = dependents;
+            this.streamingDependents = streamingDependents;
+            this.pendingDependencies = pendingDependencies;
+        }
+
+        void start(final List<StageExecutor> roots) {
+            roots.forEach(this::launch);
+            release();
+        }
+
+        private void launch(final StageExecutor stage) {
+            outstanding.incrementAndGet();
+            try {
+                final ExecutorService stageExecutor = stage.getStreamingDependencies().isEmpty() ? executor : pipeExecutor;
+                stageExecutor.execute(() -> execute(stage));
+            } catch (RejectedExecutionException e) {
+                logger.warn("Stage '{}' could not be scheduled", stage.getName(), e);
+                failed = true;
+                release();
+            }
+        }
+
+        private void execute(final StageExecutor stage) {
+            try {
+                // Another branch may have failed while this stage was waiting for a thread
+                if (!failed) {
+                    final Map<String, String> parameters = stageParams.get(stage.getName());
+                    result.startStage(stageRecords.get(stage.getName()), parameters);
+                    // Consumers of this stage's output run alongside it from now on
+                    launchReadyDependents(streamingDependents, stage);
+                    runStage(stage, parameters).thenAccept(succeeded -> finish(stage, succeeded));
+                    return;
+                }
+            } catch (RuntimeException e) {
+                logger.error("Stage '{}' could not be run", stage.getName(), e);
+            }
+            finish(stage, false);
+        }
+
+        private void finish(final StageExecutor stage, final boolean succeeded) {
+            if (succeeded) {
+                launchReadyDependents(dependents, stage);
+            } else {
+                failed = true;
+                result.abortChannels();
+            }
+            release();
+        }
+
+        /**
+         * Run the stage up to the point where it hands back its thread
+         * @return A future completed with whether the stage succeeded, it never completes exceptionally
+         */
+        private CompletableFuture<Boolean> runStage(final StageExecutor stage, final Map<String, String> parameters) {
+            final ExecutionStage record = stageRecords.get(stage.getName());
+            final CancellationToken executionToken = result.getCancellationToken();
+            final CancellationToken stageToken = new CancellationToken();
+            final CancellationToken.Registration link = executionToken.onCancel(() -> stageToken.cancel(executionToken.getReason()));
+            final ExecutionCheckpoint checkpoint = result.getCheckpoint();
+            final boolean checkpointed = checkpoint != null && stage.isCheckpointable();
+            final Thread stageThread = Thread.currentThread();
+            CompletableFuture<Void> outcome;
+            ScheduledFuture<?> timeoutCheck = null;
+            final CancellationToken.Registration interrupt = stageToken.onCancel(stageThread::interrupt);
+            try {
+                final Duration timeout = getTimeout(parameters);
+                timeoutCheck = watchdog.schedule(() -> {
+                    if (stageToken.cancel("Stage timed out after " + timeout.toMillis() + "ms")) {
+                        logger.warn("Stage '{}' exceeded its timeout of {}, interrupting it", stage.getName(), timeout);
+                    }
+                }, timeout.toMillis(), TimeUnit.MILLISECONDS);
+
+                if (checkpointed && checkpoint.isRestorable(stage.getName())) {
+                    result.info("Skipping stage, its output was restored from the checkpoint of execution {}",
+                            checkpoint.getResumedFromExecutionId());
+                    outcome = CompletableFuture.completedFuture(null);
+                } else {
+                    outcome = stage.executeAsync(parameters, result, stageToken);
+                }
+            } catch (Exception e) {
+                outcome = CompletableFuture.failedFuture(e);
+            } finally {
+                // No interrupt arrives once closed, clear one that raced with the end of the stage
+                interrupt.close();
+                Thread.interrupted();
+                result.clearCurrentStage();
+            }
+
+            // A stage waiting on a timer holds no thread to interrupt, so settle it on cancellation
+            final CompletableFuture<Void> settled = new CompletableFuture<>();
+            final CancellationToken.Registration release = outcome.isDone() ? () -> { }
+                    : stageToken.onCancel(() -> settled.completeExceptionally(new CancellationException(stageToken.getReason())));
+            outcome.whenComplete((ignored, error) -> {
+                if (error != null) {
+                    settled.completeExceptionally(error);
+                } else {
+                    settled.complete(null);
+                }
+            });
+
+            final ScheduledFuture<?> pendingTimeoutCheck = timeoutCheck;
+            return settled.handle((ignored, error) -> {
+                if (pendingTimeoutCheck != null) {
+                    pendingTimeoutCheck.cancel(false);
+                }
+                release.close();
+                link.close();
+                if (error == null && stageToken.isCancelled()) {
+                    error = new CancellationException(stageToken.getReason());
+                }
+                if (error == null) {
+                    try {
+                        if (checkpointed && !checkpoint.isRestorable(stage.getName())) {
+                            checkpoint.markStageComplete(stage.getName());
+                        }
+                        result.completeStage(record);
+                        return true;
+                    } catch (Exception e) {
+                        error = e;
+                    }
+                }
+                final Throwable cause = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error;
+                if (executionToken.isCancelled()) {
+                    result.cancelStage(record, executionToken.getReason());
+                } else if (stageToken.isCancelled()) {
+                    result.failStage(record, stageToken.getReason());
+                    logger.error("Stage '{}' failed: {}", stage.getName(), stageToken.getReason());
+                } else {
+                    result.failStage(record, cause.getMessage());
+                    logger.error("Stage '{}' failed", stage.getName(), cause);
+                }
+                return false;
+            });
+        }
+
+        /**
+         * Stop starting stages and release stages waiting on each other, the running stages
+         * are interrupted through their own tokens
+         */
+        void cancel() {
+            failed = true;
+            result.abortChannels();
+        }
+
+        private void launchReadyDependents(final Map<String, List<StageExecutor>> edges, final StageExecutor stage) {
+            if (failed) {
+                return;
+            }
+            for (StageExecutor dependent : edges.getOrDefault(stage.getName(), List.of())) {
+                if (pendingDependencies.get(dependent.getName()).decrementAndGet() == 0) {
+                    launch(dependent);
+                }
+            }
+        }
+
+        private void release() {
+            if (outstanding.decrementAndGet() == 0) {
+                finished.countDown();
+            }
+        }
+
+        void await() throws InterruptedException {
+            try {
+                while (!finished.await(CANCELLATION_GRACE.toMillis(), TimeUnit.MILLISECONDS)) {
+                    if (result.getCancellationToken().isCancelled()) {
+                        // Stages ignoring the interrupt, such as blocking I/O, still have to end on their own
+                        logger.warn("Execution {} is cancelled, waiting for {} stages to stop",
+                                result.getExecutionId(), outstanding.get());
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Do not start any further stages for an abandoned run
+                failed = true;
+                result.abortChannels();
+                throw e;
+            }
+        }
+    }
+
+}
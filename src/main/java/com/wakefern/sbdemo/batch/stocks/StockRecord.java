@@ -0,0 +1,75 @@
+package com.wakefern.sbdemo.batch.stocks;
+
+/**
+ * A single store-level stock position after parsing and normalization.
+ * Monetary values are kept in cents to avoid allocating decimals per record.
+ */
+public class StockRecord {
+
+    private final int storeId;
+    private final String sku;
+    private final int quantity;
+    private final long unitCostCents;
+    private final long extendedValueCents;
+    private final long checksum;
+    private final String error;
+
+    public StockRecord(int storeId, String sku, int quantity, long unitCostCents, long checksum) {
+        this.storeId = storeId;
+        this.sku = sku;
+        this.quantity = quantity;
+        this.unitCostCents = unitCostCents;
+        this.extendedValueCents = quantity * unitCostCents;
+        this.checksum = checksum;
+        this.error = null;
+    }
+
+    private StockRecord(String error) {
+        this.storeId = 0;
+        this.sku = null;
+        this.quantity = 0;
+        this.unitCostCents = 0;
+        this.extendedValueCents = 0;
+        this.checksum = 0;
+        this.error = error;
+    }
+
+    /**
+     * Create a placeholder for a line that could not be parsed, so validation can count it
+     */
+    public static StockRecord unparseable(String error) {
+        return new StockRecord(error);
+    }
+
+    public int getStoreId() {
+        return storeId;
+    }
+
+    public String getSku() {
+        return sku;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public long getUnitCostCents() {
+        return unitCostCents;
+    }
+
+    public long getExtendedValueCents() {
+        return extendedValueCents;
+    }
+
+    public long getChecksum() {
+        return checksum;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public boolean isParsed() {
+        return error == null;
+    }
+}
@@ -0,0 +1,33 @@
+package com.wakefern.sbdemo.batch.stocks;
+
+import com.wakefern.sbdemo.batch.feeds.RecordCodec;
+
+/**
+ * Spool format for processed stock records: {@code storeId,sku,quantity,unitCostCents,checksum},
+ * or {@code !error} for lines that could not be parsed
+ */
+public class StockRecordCodec implements RecordCodec<StockRecord> {
+
+    @Override
+    public String encode(StockRecord record) {
+        if (!record.isParsed()) {
+            return "!" + record.getError().replace('\n', ' ');
+        }
+        return record.getStoreId() + "," + record.getSku() + "," + record.getQuantity() + ","
+                + record.getUnitCostCents() + "," + record.getChecksum();
+    }
+
+    @Override
+    public StockRecord decode(String line) {
+        if (line.startsWith("!")) {
+            return StockRecord.unparseable(line.substring(1));
+        }
+        String[] fields = line.split(",", -1);
+        return new StockRecord(
+                Integer.parseInt(fields[0]),
+                fields[1],
+                Integer.parseInt(fields[2]),
+                Long.parseLong(fields[3]),
+                Long.parseLong(fields[4]));
+    }
+}
@@ -0,0 +1,199 @@
+package com.wakefern.sbdemo.batch.stocks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.zip.CRC32;
+
+/**
+ * Parses and normalizes raw stock lines. Record sets are processed in fixed-size chunks,
+ * either one after another or split across a fork-join pool. Chunk results are always
+ * merged in chunk order, so the output does not depend on the processing mode.
+ */
+public class StockRecordProcessor {
+
+    private static final int SKU_DIGITS = 8;
+
+    /**
+     * Process the lines sequentially in chunks of {@code chunkSize}
+     */
+    public List<ChunkResult> processSequential(List<String> lines, int chunkSize) {
+        int chunkCount = chunkCount(lines.size(), chunkSize);
+        List<ChunkResult> results = new ArrayList<>(chunkCount);
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            results.add(processChunk(lines, chunk, chunkSize));
+        }
+        return results;
+    }
+
+    /**
+     * Process the lines in chunks of {@code chunkSize} on the given fork-join pool
+     */
+    public List<ChunkResult> processParallel(List<String> lines, int chunkSize, ForkJoinPool pool) {
+        int chunkCount = chunkCount(lines.size(), chunkSize);
+        if (chunkCount == 0) {
+            return new ArrayList<>();
+        }
+        return pool.invoke(new ChunkRangeTask(lines, chunkSize, 0, chunkCount));
+    }
+
+    ChunkResult processChunk(List<String> lines, int chunkIndex, int chunkSize) {
+        long startNanos = System.nanoTime();
+        int from = chunkIndex * chunkSize;
+        int to = Math.min(lines.size(), from + chunkSize);
+        List<StockRecord> records = new ArrayList<>(to - from);
+        CRC32 crc = new CRC32();
+        for (int i = from; i < to; i++) {
+            records.add(transform(lines.get(i), crc));
+        }
+        return new ChunkResult(chunkIndex, from, records, System.nanoTime() - startNanos, Thread.currentThread().getName());
+    }
+
+    StockRecord transform(String line, CRC32 crc) {
+        String[] fields = line.split(",", -1);
+        if (fields.length != 4) {
+            return StockRecord.unparseable("Expected 4 fields but found " + fields.length);
+        }
+        try {
+            int storeId = Integer.parseInt(fields[0].trim());
+            String sku = normalizeSku(fields[1]);
+            int quantity = Integer.parseInt(fields[2].trim());
+            long unitCostCents = parseCents(fields[3].trim());
+
+            crc.reset();
+            updateInt(crc, storeId);
+            crc.update(sku.getBytes(StandardCharsets.US_ASCII));
+            updateInt(crc, quantity);
+            return new StockRecord(storeId, sku, quantity, unitCostCents, crc.getValue());
+        } catch (NumberFormatException e) {
+            return StockRecord.unparseable("Invalid number: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Add all four bytes of the value to the checksum, big-endian. {@link CRC32#update(int)}
+     * only takes the low byte.
+     */
+    private static void updateInt(CRC32 crc, int value) {
+        crc.update(value >>> 24);
+        crc.update(value >>> 16);
+        crc.update(value >>> 8);
+        crc.update(value);
+    }
+
+    /**
+     * Upper-case the SKU and left-pad its numeric part, e.g. {@code sku-42} becomes {@code SKU00000042}
+     */
+    private String normalizeSku(String raw) {
+        String sku = raw.trim().toUpperCase();
+        int digitsStart = sku.length();
+        while (digitsStart > 0 && Character.isDigit(sku.charAt(digitsStart - 1))) {
+            digitsStart--;
+        }
+        String prefix = sku.substring(0, digitsStart).replace("-", "");
+        String digits = sku.substring(digitsStart);
+        if (digits.isEmpty() || digits.length() >= SKU_DIGITS) {
+            return prefix + digits;
+        }
+        return prefix + "0".repeat(SKU_DIGITS - digits.length()) + digits;
+    }
+
+    /**
+     * Parse a decimal amount into cents, digits after the second decimal are dropped
+     */
+    private long parseCents(String value) {
+        int dot = value.indexOf('.');
+        if (dot < 0) {
+            return Long.parseLong(value) * 100;
+        }
+        String fraction = (value.substring(dot + 1) + "00").substring(0, 2);
+        if (!Character.isDigit(fraction.charAt(0)) || !Character.isDigit(fraction.charAt(1))) {
+            throw new NumberFormatException("For input string: \"" + value + "\"");
+        }
+        long cents = Math.abs(Long.parseLong(value.substring(0, dot))) * 100 + Long.parseLong(fraction);
+        // The sign belongs to the whole amount, and "-0.50" has no sign left once its whole part is parsed
+        return value.startsWith("-") ? -cents : cents;
+    }
+
+    private static int chunkCount(int size, int chunkSize) {
+        return (size + chunkSize - 1) / chunkSize;
+    }
+
+    /**
+     * Splits a range of chunks in halves until a single chunk is left. The left half is
+     * forked and joined after the right half, then the halves are concatenated in order.
+     */
+    private class ChunkRangeTask extends RecursiveTask<List<ChunkResult>> {
+
+        private final List<String> lines;
+        private final int chunkSize;
+        private final int fromChunk;
+        private final int toChunk;
+
+        ChunkRangeTask(List<String> lines, int chunkSize, int fromChunk, int toChunk) {
+            this.lines = lines;
+            this.chunkSize = chunkSize;
+            this.fromChunk = fromChunk;
+            this.toChunk = toChunk;
+        }
+
+        @Override
+        protected List<ChunkResult> compute() {
+            if (toChunk - fromChunk == 1) {
+                List<ChunkResult> results = new ArrayList<>(1);
+                results.add(processChunk(lines, fromChunk, chunkSize));
+                return results;
+            }
+            int middle = (fromChunk + toChunk) >>> 1;
+            ChunkRangeTask left = new ChunkRangeTask(lines, chunkSize, fromChunk, middle);
+            ChunkRangeTask right = new ChunkRangeTask(lines, chunkSize, middle, toChunk);
+            left.fork();
+            List<ChunkResult> rightResults = right.compute();
+            List<ChunkResult> results = left.join();
+            results.addAll(rightResults);
+            return results;
+        }
+    }
+
+    /**
+     * Output and timing of a single processed chunk
+     */
+    public static class ChunkResult {
+
+        private final int index;
+        private final int firstRecord;
+        private final List<StockRecord> records;
+        private final long elapsedNanos;
+        private final String threadName;
+
+        ChunkResult(int index, int firstRecord, List<StockRecord> records, long elapsedNanos, String threadName) {
+            this.index = index;
+            this.firstRecord = firstRecord;
+            this.records = records;
+            this.elapsedNanos = elapsedNanos;
+            this.threadName = threadName;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public int getFirstRecord() {
+            return firstRecord;
+        }
+
+        public List<StockRecord> getRecords() {
+            return records;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public String getThreadName() {
+            return threadName;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.wakefern.sbdemo.batch.stocks;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streams raw stock feed lines in the delivery format {@code storeId,sku,quantity,unitCost},
+ * a bounded number of lines at a time. Lines come either from a delivered file or, until the
+ * delivery system API is enabled, from a deterministic synthetic feed that includes a small
+ * share of invalid lines so validation has something to find.
+ */
+public class StockRecordSource implements AutoCloseable {
+
+    private final BufferedReader reader;
+    private final int syntheticRecordCount;
+    private int position;
+
+    private StockRecordSource(BufferedReader reader, int syntheticRecordCount) {
+        this.reader = reader;
+        this.syntheticRecordCount = syntheticRecordCount;
+    }
+
+    public static StockRecordSource synthetic(int recordCount) {
+        return new StockRecordSource(null, recordCount);
+    }
+
+    public static StockRecordSource fromFile(Path file) throws IOException {
+        return new StockRecordSource(Files.newBufferedReader(file, StandardCharsets.UTF_8), 0);
+    }
+
+    /**
+     * Read up to {@code maxLines} lines
+     * @return The lines read, empty once the source is exhausted
+     */
+    public List<String> read(int maxLines) throws IOException {
+        List<String> lines = new ArrayList<>(maxLines);
+        if (reader == null) {
+            while (lines.size() < maxLines && position < syntheticRecordCount) {
+                lines.add(syntheticLine(position++));
+            }
+            return lines;
+        }
+        String line;
+        while (lines.size() < maxLines && (line = reader.readLine()) != null) {
+            // Skip blank lines and the optional header row
+            if (line.isBlank() || (position++ == 0 && line.startsWith("storeId"))) {
+                continue;
+            }
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    String syntheticLine(int index) {
+        int storeId = 1000 + index % 250;
+        String sku = index % 83 == 5 ? " " : "sku-" + (index * 7919L) % 100000;
+        int quantity = index % 41 == 17 ? -5 : (index * 31) % 500;
+        long unitCostCents = 99 + (index * 13L) % 10000;
+        long cents = unitCostCents % 100;
+        return storeId + "," + sku + "," + quantity + "," + (unitCostCents / 100) + "." + (cents < 10 ? "0" : "") + cents;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (reader != null) {
+            reader.close();
+        }
+    }
+}
@@ -1,21 +1,39 @@
 package com.wakefern.sbdemo.batch.stocks;
 
+import com.wakefern.sbdemo.batch.feeds.CancellationToken;
+import com.wakefern.sbdemo.batch.feeds.CheckpointingRecordChannel;
+import com.wakefern.sbdemo.batch.feeds.ExecutionCheckpoint;
 import com.wakefern.sbdemo.batch.feeds.ExecutionResult;
+import com.wakefern.sbdemo.batch.feeds.ExecutionStage;
+import com.wakefern.sbdemo.batch.feeds.PipeRecordChannel;
 import com.wakefern.sbdemo.batch.feeds.StageExecutor;
+import com.wakefern.sbdemo.batch.feeds.StageScheduler;
 import com.wakefern.sbdemo.batch.stocks.stages.*;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.wakefern.sbdemo.batch.feeds.SpoolRecordChannel;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import kong.unirest.core.HttpResponse;
 import kong.unirest.core.Unirest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Component;
 
 @Component
 public class StocksBatch {
     private static final Logger logger = LoggerFactory.getLogger(StocksBatch.class);
 
+    /** Channel carrying processed records from Data Processing to Data Validation */
+    public static final String STOCK_RECORDS_CHANNEL = "stock-records";
+
     @Value("${by.api.url}")
     private String byApiUrl;
 
@@ -34,6 +52,62 @@ public class StocksBatch {
     @Value("${by.api.category}")
     private String category;
 
+    private final StageScheduler stageScheduler;
+    private final ForkJoinPool processingPool;
+    private final ScheduledThreadPoolExecutor retryTimer;
+    private final Path workDir;
+    private final Path inputDir;
+
+    public StocksBatch(final StageScheduler stageScheduler,
+                       @Value("${app.stocks.processing.parallelism:0}") final int processingParallelism,
+                       @Value("${app.feeds.work-dir:${java.io.tmpdir}/sb-demo}") final Path workDir,
+                       @Value("${app.stocks.input-dir:${java.io.tmpdir}/sb-demo-input}") final Path inputDir) {
+        this.stageScheduler = stageScheduler;
+        this.workDir = workDir;
+        this.inputDir = inputDir.toAbsolutePath().normalize();
+        // Work-stealing pool for record processing, sized to the available cores unless configured
+        this.processingPool = new ForkJoinPool(
+                processingParallelism > 0 ? processingParallelism : Runtime.getRuntime().availableProcessors(),
+                pool -> {
+                    ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                    thread.setName("stocks-processing-" + thread.getPoolIndex());
+                    return thread;
+                },
+                null, false);
+        // Delivery checks wait between attempts on this timer instead of sleeping on a stage thread,
+        // so a single thread serves the retries of every execution
+        this.retryTimer = new ScheduledThreadPoolExecutor(1, new CustomizableThreadFactory("stocks-retry-"));
+        this.retryTimer.setRemoveOnCancelPolicy(true);
+    }
+
+    public ForkJoinPool getProcessingPool() {
+        return processingPool;
+    }
+
+    public ScheduledThreadPoolExecutor getRetryTimer() {
+        return retryTimer;
+    }
+
+    /**
+     * Resolve a source file named in the execution parameters against the input directory
+     * @throws IllegalArgumentException if the file lies outside the input directory
+     */
+    public Path resolveInputFile(String sourceFile) throws IOException {
+        Path file = inputDir.resolve(sourceFile).normalize();
+        // Real paths as well, so a symbolic link inside the directory cannot point out of it
+        if (!file.startsWith(inputDir)
+                || (Files.exists(file) && !file.toRealPath().startsWith(inputDir.toRealPath()))) {
+            throw new IllegalArgumentException("Source file '" + sourceFile + "' is outside the input directory");
+        }
+        return file;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        processingPool.shutdownNow();
+        retryTimer.shutdownNow();
+    }
+
     public void execute() {
         // Keep the original method for backward compatibility
         logger.info("Executing stock feed processing...");
@@ -41,15 +115,29 @@ public class StocksBatch {
     }
 
     public ExecutionResult executeWithResult(String parameters) {
-        ExecutionResult result = new ExecutionResult();
+        return executeWithResult(parameters, new ExecutionResult());
+    }
+
+    /**
+     * Execute the stocks batch into the result of the feed execution, so its stages and logs
+     * are recorded there directly. Stage outputs are checkpointed if the result has a checkpoint,
+     * stages it has restorable outputs for are skipped.
+     * @param parameters The execution parameters
+     * @param result The execution result, carrying the checkpoint and cancellation token
+     * @return The execution result
+     */
+    public ExecutionResult executeWithResult(String parameters, ExecutionResult result) {
+        ExecutionCheckpoint checkpoint = result.getCheckpoint();
+        CancellationToken cancellation = result.getCancellationToken();
+        Path executionDir = null;
         
         try {
-            result.addLog("Starting Stocks Batch execution with stage-based processing");
+            result.info("Starting Stocks Batch execution with stage-based processing");
             
             // Parse parameters into stage-specific maps
             java.util.Map<String, java.util.Map<String, String>> stageParams = parseParameters(parameters);
             
-            // Define stages in execution order
+            // Define stages, each stage declares the stages it depends on
             java.util.List<StageExecutor> stages = java.util.Arrays.asList(
                 new ConfigurationStage(this),
                 new DeliveryCheckStage(this),
@@ -58,43 +146,103 @@ public class StocksBatch {
                 new CompletionStage(this)
             );
             
-            result.addLog("Initialized " + stages.size() + " execution stages");
+            result.info("Initialized {} execution stages", stages.size());
             
-            // Execute stages sequentially
-            for (StageExecutor stage : stages) {
-                result.startStage(
-                    stage.getName(), 
-                    stage.getDescription(),
-                    stageParams.get(stage.getName())
-                );
-                
-                try {
-                    stage.execute(stageParams.get(stage.getName()), result);
-                    result.completeCurrentStage();
-                } catch (Exception e) {
-                    result.failCurrentStage(e.getMessage());
-                    logger.error("Stage '{}' failed", stage.getName(), e);
-                    break; // Stop execution on stage failure
-                }
+            // Processed records either flow straight into validation through a bounded queue,
+            // or are spooled to local disk and validated once processing has finished
+            java.util.Map<String, String> processingParams = stageParams.get("Data Processing");
+            int batchSize = Integer.parseInt(getParameter(processingParams, "batchSize", "100"));
+            if (checkpoint != null && checkpoint.isRestorable("Data Processing")) {
+                // Validation reads the records processed by the resumed execution
+                result.openChannel(STOCK_RECORDS_CHANNEL, SpoolRecordChannel.restore(
+                    checkpoint.resolve(STOCK_RECORDS_CHANNEL + ".csv"), new StockRecordCodec(), batchSize));
+                result.info("Resuming execution {} with processed records restored from its checkpoint",
+                    checkpoint.getResumedFromExecutionId());
+            } else if (Boolean.parseBoolean(getParameter(processingParams, "pipelined", "true"))) {
+                int capacity = Integer.parseInt(getParameter(processingParams, "pipelineCapacity", "4"));
+                PipeRecordChannel<StockRecord> pipe = new PipeRecordChannel<>(capacity);
+                result.openChannel(STOCK_RECORDS_CHANNEL, checkpoint != null
+                    ? new CheckpointingRecordChannel<>(pipe, checkpoint.resolve(STOCK_RECORDS_CHANNEL + ".csv"), new StockRecordCodec())
+                    : pipe);
+                result.info("Pipelining data processing into validation, buffering up to {} batches", capacity);
+            } else if (checkpoint != null) {
+                // The spool file doubles as the checkpoint of the processed records
+                result.openChannel(STOCK_RECORDS_CHANNEL, new SpoolRecordChannel<>(
+                    checkpoint.resolve(STOCK_RECORDS_CHANNEL + ".csv"), new StockRecordCodec(), batchSize, false));
+                result.info("Spooling processed records to checkpoint {} for validation", checkpoint.getDirectory());
+            } else {
+                executionDir = Files.createDirectories(workDir.resolve("stocks-" + java.util.UUID.randomUUID()));
+                result.openChannel(STOCK_RECORDS_CHANNEL, new SpoolRecordChannel<>(
+                    executionDir.resolve(STOCK_RECORDS_CHANNEL + ".csv"),
+                    new StockRecordCodec(),
+                    batchSize));
+                result.info("Spooling processed records to {} for validation", executionDir);
             }
             
+            // Execute the stage graph, independent stages run concurrently
+            stageScheduler.run(stages, stageParams, result);
+            result.info("Stage concurrency - Peak parallel stages: {}, Overlap: {}ms",
+                    result.getMaxConcurrentStages(), result.getStageOverlapMillis());
+            logPipelineUtilisation(result);
+            
             // Set overall execution status based on stage results
-            if (result.hasFailedStages()) {
+            if (cancellation.isCancelled()) {
+                result.setCancelled("Execution cancelled: " + cancellation.getReason());
+                result.warn("Execution cancelled: {}", cancellation.getReason());
+            } else if (result.hasFailedStages()) {
                 result.setFailed("One or more stages failed during execution");
             } else {
                 result.setSuccess();
-                result.addLog("All stages completed successfully");
+                result.info("All stages completed successfully");
             }
             
         } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
             result.setFailed("Stocks batch execution failed: " + e.getMessage());
-            result.addLog("ERROR: " + e.getMessage());
+            result.error("Stocks batch execution failed: {}", e.getMessage());
             logger.error("StocksBatch execution failed", e);
+        } finally {
+            result.closeChannels();
+            deleteQuietly(executionDir);
         }
         
         return result;
     }
     
+    private String getParameter(java.util.Map<String, String> params, String name, String defaultValue) {
+        return params != null && params.containsKey(name) ? params.get(name) : defaultValue;
+    }
+    
+    private void logPipelineUtilisation(ExecutionResult result) {
+        // Stages that waited on a channel form the pipeline, the busiest one bounds its throughput
+        java.util.List<ExecutionStage> pipeline = result.getStages().stream()
+            .filter(stage -> stage.getIdleMillis() > 0 || stage.getBlockedMillis() > 0)
+            .toList();
+        if (pipeline.isEmpty()) {
+            return;
+        }
+        for (ExecutionStage stage : pipeline) {
+            result.info("Pipeline stage {} - Busy: {}ms, Idle: {}ms, Blocked: {}ms",
+                    stage.getName(), stage.getBusyMillis(), stage.getIdleMillis(), stage.getBlockedMillis());
+        }
+        pipeline.stream()
+            .max(java.util.Comparator.comparingLong(ExecutionStage::getBusyMillis))
+            .ifPresent(stage -> result.info("Pipeline bottleneck: {}", stage.getName()));
+    }
+    
+    private void deleteQuietly(Path dir) {
+        if (dir == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(dir);
+        } catch (IOException e) {
+            logger.warn("Failed to delete execution work directory {}", dir, e);
+        }
+    }
+    
     private java.util.Map<String, java.util.Map<String, String>> parseParameters(String parameters) {
         java.util.Map<String, java.util.Map<String, String>> stageParams = new java.util.HashMap<>();
         
@@ -141,6 +289,7 @@ public class StocksBatch {
         java.util.Map<String, String> params = new java.util.HashMap<>();
         params.put("retryCount", "3");
         params.put("retryDelay", "1000");
+        params.put("maxRetryDelay", "30000");
         return params;
     }
     
@@ -148,6 +297,9 @@ public class StocksBatch {
         java.util.Map<String, String> params = new java.util.HashMap<>();
         params.put("batchSize", "100");
         params.put("parallel", "false");
+        params.put("recordCount", "500");
+        params.put("pipelined", "true");
+        params.put("pipelineCapacity", "4");
         return params;
     }
     
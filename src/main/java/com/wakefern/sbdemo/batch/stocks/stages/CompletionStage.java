@@ -1,9 +1,11 @@
 package com.wakefern.sbdemo.batch.stocks.stages;
 
+import com.wakefern.sbdemo.batch.feeds.CancellationToken;
 import com.wakefern.sbdemo.batch.feeds.ExecutionResult;
 import com.wakefern.sbdemo.batch.feeds.StageExecutor;
 import com.wakefern.sbdemo.batch.stocks.StocksBatch;
 
+import java.util.List;
 import java.util.Map;
 
 public class CompletionStage implements StageExecutor {
@@ -15,8 +17,8 @@ public class CompletionStage implements StageExecutor {
     }
     
     @Override
-    public void execute(Map<String, String> parameters, ExecutionResult result) throws Exception {
-        result.addLogToCurrentStage("Starting finalization process");
+    public void execute(Map<String, String> parameters, ExecutionResult result, CancellationToken cancellation) throws Exception {
+        result.info("Starting finalization process");
         
         // Get cleanup parameters
         boolean cleanup = parameters != null && parameters.containsKey("cleanup") 
@@ -26,33 +28,34 @@ public class CompletionStage implements StageExecutor {
             ? Boolean.parseBoolean(parameters.get("generateReport")) 
             : true;
             
-        result.addLogToCurrentStage("Finalization configuration - Cleanup: " + cleanup + ", Generate report: " + generateReport);
+        result.info("Finalization configuration - Cleanup: {}, Generate report: {}", cleanup, generateReport);
         
         // Simulate completion tasks
-        result.addLogToCurrentStage("Updating database timestamps...");
+        result.info("Updating database timestamps...");
         Thread.sleep(200);
         
-        result.addLogToCurrentStage("Writing execution metadata...");
+        result.info("Writing execution metadata...");
         Thread.sleep(150);
         
         if (generateReport) {
-            result.addLogToCurrentStage("Generating execution summary report...");
+            result.info("Generating execution summary report...");
             Thread.sleep(300);
-            result.addLogToCurrentStage("Report generated: stocks_batch_" + System.currentTimeMillis() + ".json");
+            result.info("Report generated: stocks_batch_{}.json", System.currentTimeMillis());
         }
         
         if (cleanup) {
-            result.addLogToCurrentStage("Cleaning up temporary files...");
+            result.info("Cleaning up temporary files...");
             Thread.sleep(100);
-            result.addLogToCurrentStage("Releasing system resources...");
+            result.info("Releasing system resources...");
             Thread.sleep(100);
         }
         
-        result.addLogToCurrentStage("Sending notification to monitoring systems...");
+        cancellation.throwIfCancelled();
+        result.info("Sending notification to monitoring systems...");
         Thread.sleep(150);
         
-        result.addLogToCurrentStage("All completion tasks finished successfully");
-        result.addLogToCurrentStage("Stocks batch processing completed successfully");
+        result.info("All completion tasks finished successfully");
+        result.info("Stocks batch processing completed successfully");
     }
     
     @Override
@@ -64,4 +67,9 @@ public class CompletionStage implements StageExecutor {
     public String getDescription() {
         return "Finalize processing, cleanup resources, and generate reports";
     }
+    
+    @Override
+    public List<String> getDependencies() {
+        return List.of("Data Validation");
+    }
 }
\ No newline at end of file
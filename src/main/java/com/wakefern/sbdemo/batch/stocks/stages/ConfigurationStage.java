@@ -1,5 +1,6 @@
 package com.wakefern.sbdemo.batch.stocks.stages;
 
+import com.wakefern.sbdemo.batch.feeds.CancellationToken;
 import com.wakefern.sbdemo.batch.feeds.ExecutionResult;
 import com.wakefern.sbdemo.batch.feeds.StageExecutor;
 import com.wakefern.sbdemo.batch.stocks.StocksBatch;
@@ -16,8 +17,8 @@ public class ConfigurationStage implements StageExecutor {
     }
     
     @Override
-    public void execute(Map<String, String> parameters, ExecutionResult result) throws Exception {
-        result.addLogToCurrentStage("Configuring Stocks Batch execution environment");
+    public void execute(Map<String, String> parameters, ExecutionResult result, CancellationToken cancellation) throws Exception {
+        result.info("Configuring Stocks Batch execution environment");
         
         // Get timeout values from parameters or use defaults
         int connectTimeout = parameters != null && parameters.containsKey("connectTimeout") 
@@ -27,20 +28,20 @@ public class ConfigurationStage implements StageExecutor {
             ? Integer.parseInt(parameters.get("requestTimeout")) 
             : 10000;
             
-        result.addLogToCurrentStage("Setting HTTP client timeouts - Connect: " + connectTimeout + "ms, Request: " + requestTimeout + "ms");
+        result.info("Setting HTTP client timeouts - Connect: {}ms, Request: {}ms", connectTimeout, requestTimeout);
         
         // Configure Unirest
         Unirest.config()
             .connectTimeout(connectTimeout)
             .requestTimeout(requestTimeout);
             
-        result.addLogToCurrentStage("HTTP client configured successfully");
+        result.info("HTTP client configured successfully");
         
         // Simulate configuration validation
         Thread.sleep(200);
-        result.addLogToCurrentStage("Configuration validation completed");
+        result.info("Configuration validation completed");
         
-        result.addLogToCurrentStage("Configuration stage completed successfully");
+        result.info("Configuration stage completed successfully");
     }
     
     @Override
@@ -1,22 +1,35 @@
 package com.wakefern.sbdemo.batch.stocks.stages;
 
+import com.wakefern.sbdemo.batch.feeds.CancellationToken;
 import com.wakefern.sbdemo.batch.feeds.ExecutionResult;
+import com.wakefern.sbdemo.batch.feeds.RecordChannel;
 import com.wakefern.sbdemo.batch.feeds.StageExecutor;
+import com.wakefern.sbdemo.batch.stocks.StockRecord;
+import com.wakefern.sbdemo.batch.stocks.StockRecordProcessor;
+import com.wakefern.sbdemo.batch.stocks.StockRecordSource;
 import com.wakefern.sbdemo.batch.stocks.StocksBatch;
 
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Map;
 
 public class DataProcessingStage implements StageExecutor {
     
+    // Per-batch timings beyond this are only reported as min/avg/max to keep logs bounded
+    private static final int LOGGED_BATCHES = 10;
+    
     private final StocksBatch stocksBatch;
+    private final StockRecordProcessor processor = new StockRecordProcessor();
     
     public DataProcessingStage(StocksBatch stocksBatch) {
         this.stocksBatch = stocksBatch;
     }
     
     @Override
-    public void execute(Map<String, String> parameters, ExecutionResult result) throws Exception {
-        result.addLogToCurrentStage("Starting stocks data processing");
+    public void execute(Map<String, String> parameters, ExecutionResult result, CancellationToken cancellation) throws Exception {
+        result.info("Starting stocks data processing");
         
         // Get processing parameters
         int batchSize = parameters != null && parameters.containsKey("batchSize") 
@@ -25,32 +38,116 @@ public class DataProcessingStage implements StageExecutor {
         boolean parallel = parameters != null && parameters.containsKey("parallel") 
             ? Boolean.parseBoolean(parameters.get("parallel")) 
             : false;
+        int recordCount = parameters != null && parameters.containsKey("recordCount") 
+            ? Integer.parseInt(parameters.get("recordCount")) 
+            : batchSize * 5;
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive but was " + batchSize);
+        }
             
-        result.addLogToCurrentStage("Processing configuration - Batch size: " + batchSize + ", Parallel: " + parallel);
-        
-        // Simulate data processing steps
-        result.addLogToCurrentStage("Reading stocks data feed...");
-        Thread.sleep(300);
+        if (parallel) {
+            result.info("Processing configuration - Batch size: {}, Parallel: true ({} workers)",
+                    batchSize, stocksBatch.getProcessingPool().getParallelism());
+        } else {
+            result.info("Processing configuration - Batch size: {}, Parallel: false", batchSize);
+        }
         
-        result.addLogToCurrentStage("Parsing data format (CSV/JSON)...");
-        Thread.sleep(200);
+        // Read a window of batches at a time, enough to keep every worker busy in parallel mode
+        int batchesPerWindow = parallel ? stocksBatch.getProcessingPool().getParallelism() * 2 : 1;
+        RecordChannel<StockRecord> output = result.getChannel(StocksBatch.STOCK_RECORDS_CHANNEL);
         
-        result.addLogToCurrentStage("Processing " + (batchSize * 5) + " stock records in batches of " + batchSize);
+        long startNanos = System.nanoTime();
+        long processingNanos = 0;
+        long minBatchNanos = Long.MAX_VALUE;
+        long maxBatchNanos = 0;
+        int batchCount = 0;
+        long processedRecords = 0;
+        long unparseableRecords = 0;
+        long totalValueCents = 0;
         
-        // Simulate batch processing
-        for (int batch = 1; batch <= 5; batch++) {
-            result.addLogToCurrentStage("Processing batch " + batch + "/5 (" + batchSize + " records)");
-            Thread.sleep(parallel ? 150 : 200); // Parallel processing is slightly faster
-            
-            if (batch == 3) {
-                result.addLogToCurrentStage("Applying data transformations for batch " + batch);
+        try (StockRecordSource source = openSource(parameters, recordCount, result)) {
+            List<String> window;
+            while (!(window = source.read(batchSize * batchesPerWindow)).isEmpty()) {
+                cancellation.throwIfCancelled();
+                long windowStartNanos = System.nanoTime();
+                List<StockRecordProcessor.ChunkResult> chunks = parallel
+                    ? processor.processParallel(window, batchSize, stocksBatch.getProcessingPool())
+                    : processor.processSequential(window, batchSize);
+                processingNanos += System.nanoTime() - windowStartNanos;
+                
+                // Chunks come back in order in both modes, so the output order is deterministic
+                for (StockRecordProcessor.ChunkResult chunk : chunks) {
+                    batchCount++;
+                    minBatchNanos = Math.min(minBatchNanos, chunk.getElapsedNanos());
+                    maxBatchNanos = Math.max(maxBatchNanos, chunk.getElapsedNanos());
+                    if (batchCount <= LOGGED_BATCHES) {
+                        result.info("Batch {}: records {}-{} in {}ms on {}",
+                            batchCount, processedRecords + 1, processedRecords + chunk.getRecords().size(),
+                            millis(chunk.getElapsedNanos()), chunk.getThreadName());
+                    }
+                    for (StockRecord record : chunk.getRecords()) {
+                        if (record.isParsed()) {
+                            totalValueCents += record.getExtendedValueCents();
+                        } else {
+                            unparseableRecords++;
+                        }
+                    }
+                    processedRecords += chunk.getRecords().size();
+                    output.send(chunk.getRecords());
+                }
             }
+        } finally {
+            result.addWaitTimeToCurrentStage(0, output.getSendWaitNanos());
         }
+        output.complete();
+        long elapsedNanos = System.nanoTime() - startNanos;
         
-        result.addLogToCurrentStage("All data batches processed successfully");
-        result.addLogToCurrentStage("Total records processed: " + (batchSize * 5));
+        if (batchCount > LOGGED_BATCHES) {
+            result.info("... {} more batches processed", batchCount - LOGGED_BATCHES);
+        }
+        if (batchCount > 0) {
+            result.info("Batch timings: {} batches, min {}ms, avg {}ms, max {}ms",
+                batchCount, millis(minBatchNanos), millis(processingNanos / batchCount), millis(maxBatchNanos));
+        }
+        result.info("Throughput: {} records in {}ms processing ({} records/sec), {}ms including I/O",
+            processedRecords, millis(processingNanos), Math.round(recordsPerSecond(processedRecords, processingNanos)),
+            millis(elapsedNanos));
+        result.info("Back-pressure: blocked {}ms waiting for validation to accept batches",
+            millis(output.getSendWaitNanos()));
+        
+        result.info("All data batches processed successfully");
+        result.info("Total records processed: {} ({} unparseable), total stock value: {}",
+            processedRecords, unparseableRecords, BigDecimal.valueOf(totalValueCents, 2));
         
-        result.addLogToCurrentStage("Data processing stage completed successfully");
+        result.info("Data processing stage completed successfully");
+    }
+    
+    private StockRecordSource openSource(Map<String, String> parameters, int recordCount, ExecutionResult result) throws IOException {
+        String sourceFile = parameters != null ? parameters.get("sourceFile") : null;
+        if (sourceFile != null && !sourceFile.isBlank()) {
+            Path file = stocksBatch.resolveInputFile(sourceFile);
+            result.info("Reading stocks data feed from {}...", file);
+            return StockRecordSource.fromFile(file);
+        }
+        result.info("Reading stocks data feed ({} synthetic records)...", recordCount);
+        return StockRecordSource.synthetic(recordCount);
+    }
+    
+    /**
+     * Milliseconds rounded to two decimals, for the log templates
+     */
+    private static double millis(long nanos) {
+        return Math.round(nanos / 10_000.0) / 100.0;
+    }
+    
+    private static double recordsPerSecond(long records, long nanos) {
+        return nanos > 0 ? records * 1_000_000_000.0 / nanos : 0;
+    }
+    
+    @Override
+    public boolean isCheckpointable() {
+        // The processed records are written to the checkpoint
+        return true;
     }
     
     @Override
@@ -62,4 +159,9 @@ public class DataProcessingStage implements StageExecutor {
     public String getDescription() {
         return "Process stocks data feed and transform records";
     }
+    
+    @Override
+    public List<String> getDependencies() {
+        return List.of("Configuration", "Delivery Status Check");
+    }
 }
\ No newline at end of file
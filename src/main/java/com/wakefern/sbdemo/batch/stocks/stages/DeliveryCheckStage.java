@@ -1,10 +1,17 @@
 package com.wakefern.sbdemo.batch.stocks.stages;
 
+import com.wakefern.sbdemo.batch.feeds.CancellationToken;
 import com.wakefern.sbdemo.batch.feeds.ExecutionResult;
 import com.wakefern.sbdemo.batch.feeds.StageExecutor;
 import com.wakefern.sbdemo.batch.stocks.StocksBatch;
 
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 public class DeliveryCheckStage implements StageExecutor {
     
@@ -15,36 +22,41 @@ public class DeliveryCheckStage implements StageExecutor {
     }
     
     @Override
-    public void execute(Map<String, String> parameters, ExecutionResult result) throws Exception {
-        result.addLogToCurrentStage("Starting delivery status check");
+    public void execute(Map<String, String> parameters, ExecutionResult result, CancellationToken cancellation) throws Exception {
+        // Callers that can spare a thread simply wait for the scheduled attempts
+        try {
+            executeAsync(parameters, result, cancellation).get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+    }
+    
+    @Override
+    public CompletableFuture<Void> executeAsync(Map<String, String> parameters, ExecutionResult result, CancellationToken cancellation) {
+        result.info("Starting delivery status check");
         
         // Get retry parameters
         int retryCount = parameters != null && parameters.containsKey("retryCount") 
             ? Integer.parseInt(parameters.get("retryCount")) 
             : 3;
-        int retryDelay = parameters != null && parameters.containsKey("retryDelay") 
-            ? Integer.parseInt(parameters.get("retryDelay")) 
+        long retryDelay = parameters != null && parameters.containsKey("retryDelay") 
+            ? Long.parseLong(parameters.get("retryDelay")) 
             : 1000;
+        long maxRetryDelay = parameters != null && parameters.containsKey("maxRetryDelay") 
+            ? Long.parseLong(parameters.get("maxRetryDelay")) 
+            : 30000;
+        if (retryCount <= 0 || retryDelay < 0 || maxRetryDelay < 0) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("retryCount must be positive and retryDelay and "
+                + "maxRetryDelay must not be negative but were " + retryCount + ", " + retryDelay + " and " + maxRetryDelay));
+        }
             
-        result.addLogToCurrentStage("Retry configuration - Count: " + retryCount + ", Delay: " + retryDelay + "ms");
+        result.info("Retry configuration - Count: {}, Delay: {}ms, Max delay: {}ms (exponential backoff with jitter)",
+            retryCount, retryDelay, maxRetryDelay);
         
-        result.addLogToCurrentStage("Checking delivery system for file presence");
-        result.addLogToCurrentStage("NOTE: API calls are currently disabled for PoC");
+        result.info("Checking delivery system for file presence");
+        result.info("NOTE: API calls are currently disabled for PoC");
         
-        // Simulate delivery check with retries
-        for (int i = 1; i <= retryCount; i++) {
-            result.addLogToCurrentStage("Attempt " + i + " of " + retryCount + " - Checking delivery status");
-            Thread.sleep(retryDelay / 2); // Simulate API call
-            
-            if (i < retryCount) {
-                result.addLogToCurrentStage("File not found, retrying in " + retryDelay + "ms");
-                Thread.sleep(retryDelay / 2);
-            } else {
-                result.addLogToCurrentStage("Simulated delivery status check completed - Status: PENDING");
-            }
-        }
-        
-        result.addLogToCurrentStage("Delivery check stage completed successfully");
+        return new DeliveryPoll(result, cancellation, retryCount, retryDelay, maxRetryDelay).start();
     }
     
     @Override
@@ -56,4 +68,88 @@ public class DeliveryCheckStage implements StageExecutor {
     public String getDescription() {
         return "Check if data file is available in the delivery system";
     }
-}
\ No newline at end of file
+    
+    /**
+     * Delivery check attempts chained on the retry timer, no thread is held between attempts
+     */
+    private final class DeliveryPoll {
+        
+        private final ExecutionResult result;
+        private final CancellationToken cancellation;
+        private final int retryCount;
+        private final long retryDelay;
+        private final long maxRetryDelay;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private volatile ScheduledFuture<?> pending;
+        // Only updated by the attempt currently running on the timer
+        private volatile int attempt;
+        
+        DeliveryPoll(ExecutionResult result, CancellationToken cancellation, int retryCount, long retryDelay, long maxRetryDelay) {
+            this.result = result;
+            this.cancellation = cancellation;
+            this.retryCount = retryCount;
+            this.retryDelay = retryDelay;
+            this.maxRetryDelay = maxRetryDelay;
+        }
+        
+        CompletableFuture<Void> start() {
+            CancellationToken.Registration registration = cancellation.onCancel(() -> {
+                ScheduledFuture<?> scheduled = pending;
+                if (scheduled != null) {
+                    scheduled.cancel(false);
+                }
+                done.completeExceptionally(new CancellationException(cancellation.getReason()));
+            });
+            done.whenComplete((ignored, error) -> registration.close());
+            schedule(0);
+            return done;
+        }
+        
+        private void schedule(long delayMillis) {
+            try {
+                pending = stocksBatch.getRetryTimer().schedule(result.withCurrentStage(this::attempt), delayMillis, TimeUnit.MILLISECONDS);
+            } catch (RuntimeException e) {
+                done.completeExceptionally(e);
+            }
+            // Cancelled while scheduling, make sure the attempt does not linger on the timer
+            if (done.isDone() && pending != null) {
+                pending.cancel(false);
+            }
+        }
+        
+        private void attempt() {
+            if (done.isDone()) {
+                return;
+            }
+            try {
+                cancellation.throwIfCancelled();
+                attempt++;
+                result.info("Attempt {} of {} - Checking delivery status", attempt, retryCount);
+                
+                if (attempt < retryCount) {
+                    long delay = nextDelay(attempt);
+                    result.info("File not found, retrying in {}ms", delay);
+                    schedule(delay);
+                } else {
+                    result.info("Simulated delivery status check completed - Status: PENDING");
+                    result.info("Delivery check stage completed successfully");
+                    done.complete(null);
+                }
+            } catch (RuntimeException e) {
+                done.completeExceptionally(e);
+            }
+        }
+        
+        /**
+         * Exponential backoff capped at the maximum delay, with equal jitter so feeds polling the
+         * delivery system at the same time spread out their retries instead of retrying in lockstep
+         */
+        private long nextDelay(int failedAttempts) {
+            int shift = Math.min(failedAttempts - 1, Long.SIZE - 2);
+            // Saturate at the maximum instead of letting the shift overflow
+            long backoff = retryDelay > maxRetryDelay >> shift ? maxRetryDelay : retryDelay << shift;
+            long half = backoff / 2;
+            return half + ThreadLocalRandom.current().nextLong(backoff - half + 1);
+        }
+    }
+}
@@ -1,13 +1,20 @@
 package com.wakefern.sbdemo.batch.stocks.stages;
 
+import com.wakefern.sbdemo.batch.feeds.CancellationToken;
 import com.wakefern.sbdemo.batch.feeds.ExecutionResult;
+import com.wakefern.sbdemo.batch.feeds.RecordChannel;
 import com.wakefern.sbdemo.batch.feeds.StageExecutor;
+import com.wakefern.sbdemo.batch.stocks.StockRecord;
 import com.wakefern.sbdemo.batch.stocks.StocksBatch;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 public class ValidationStage implements StageExecutor {
     
+    private static final int MAX_ERROR_SAMPLES = 5;
+    
     private final StocksBatch stocksBatch;
     
     public ValidationStage(StocksBatch stocksBatch) {
@@ -15,8 +22,8 @@ public class ValidationStage implements StageExecutor {
     }
     
     @Override
-    public void execute(Map<String, String> parameters, ExecutionResult result) throws Exception {
-        result.addLogToCurrentStage("Starting data validation");
+    public void execute(Map<String, String> parameters, ExecutionResult result, CancellationToken cancellation) throws Exception {
+        result.info("Starting data validation");
         
         // Get validation parameters
         boolean strictMode = parameters != null && parameters.containsKey("strictMode") 
@@ -26,39 +33,79 @@ public class ValidationStage implements StageExecutor {
             ? Double.parseDouble(parameters.get("errorThreshold")) 
             : 0.05; // 5% error threshold
             
-        result.addLogToCurrentStage("Validation configuration - Strict mode: " + strictMode + ", Error threshold: " + (errorThreshold * 100) + "%");
-        
-        // Simulate validation steps
-        result.addLogToCurrentStage("Validating data format and structure...");
-        Thread.sleep(300);
-        
-        result.addLogToCurrentStage("Checking required fields presence...");
-        Thread.sleep(200);
+        result.info("Validation configuration - Strict mode: {}, Error threshold: {}%", strictMode, errorThreshold * 100);
         
-        result.addLogToCurrentStage("Validating data types and ranges...");
-        Thread.sleep(250);
-        
-        result.addLogToCurrentStage("Running business rule validations...");
-        Thread.sleep(200);
+        // Validate the processed records batch by batch as they come off the channel
+        result.info("Validating processed records (format, required fields, ranges)...");
+        RecordChannel<StockRecord> input = result.getChannel(StocksBatch.STOCK_RECORDS_CHANNEL);
+        long totalRecords = 0;
+        long errorCount = 0;
+        List<String> errorSamples = new ArrayList<>();
+        List<StockRecord> batch;
+        try {
+            while (!(batch = input.receive()).isEmpty()) {
+                cancellation.throwIfCancelled();
+                for (StockRecord record : batch) {
+                    totalRecords++;
+                    String error = validate(record);
+                    if (error != null) {
+                        errorCount++;
+                        if (errorSamples.size() < MAX_ERROR_SAMPLES) {
+                            errorSamples.add("Record " + totalRecords + ": " + error);
+                        }
+                    }
+                }
+            }
+        } finally {
+            result.addWaitTimeToCurrentStage(input.getReceiveWaitNanos(), 0);
+        }
+        result.info("Input wait: idle {}ms waiting for processed batches",
+            Math.round(input.getReceiveWaitNanos() / 10_000.0) / 100.0);
+        errorSamples.forEach(sample -> result.warn("Invalid record - {}", sample));
         
-        // Simulate validation results
-        int totalRecords = 500;
-        int errorCount = 12;
+        if (totalRecords == 0) {
+            throw new Exception("Validation failed - No records were received from data processing");
+        }
         double errorRate = (double) errorCount / totalRecords;
         
-        result.addLogToCurrentStage("Validation results: " + totalRecords + " records, " + errorCount + " errors (" + String.format("%.2f%%", errorRate * 100) + ")");
+        result.info("Validation results: {} records, {} errors ({}%)", totalRecords, errorCount, Math.round(errorRate * 10_000) / 100.0);
         
         if (errorRate > errorThreshold) {
             if (strictMode) {
                 throw new Exception("Validation failed - Error rate " + String.format("%.2f%%", errorRate * 100) + " exceeds threshold " + String.format("%.2f%%", errorThreshold * 100));
             } else {
-                result.addLogToCurrentStage("WARNING: Error rate exceeds threshold but continuing due to non-strict mode");
+                result.warn("Error rate exceeds threshold but continuing due to non-strict mode");
             }
         } else {
-            result.addLogToCurrentStage("Data quality validation passed - Error rate within acceptable limits");
+            result.info("Data quality validation passed - Error rate within acceptable limits");
         }
         
-        result.addLogToCurrentStage("Data validation stage completed successfully");
+        result.info("Data validation stage completed successfully");
+    }
+    
+    private String validate(StockRecord record) {
+        if (!record.isParsed()) {
+            return record.getError();
+        }
+        if (record.getStoreId() <= 0) {
+            return "invalid store ID " + record.getStoreId();
+        }
+        if (record.getSku() == null || record.getSku().isBlank()) {
+            return "missing SKU";
+        }
+        if (record.getQuantity() < 0) {
+            return "negative quantity " + record.getQuantity() + " for " + record.getSku();
+        }
+        if (record.getUnitCostCents() <= 0) {
+            return "non-positive unit cost for " + record.getSku();
+        }
+        return null;
+    }
+    
+    @Override
+    public boolean isCheckpointable() {
+        // Validation has no outputs, a passed validation does not need to be repeated
+        return true;
     }
     
     @Override
@@ -70,4 +117,10 @@ public class ValidationStage implements StageExecutor {
     public String getDescription() {
         return "Validate data format, structure, and business rules";
     }
+    
+    @Override
+    public List<String> getStreamingDependencies() {
+        // Validates batches while data processing is still producing them
+        return List.of("Data Processing");
+    }
 }
\ No newline at end of file
@@ -67,8 +67,9 @@ public class DataInitializer implements ApplicationRunner {
             feed.setType(feedData.type);
             feed.setStatus(feedData.status);
             
-            // Set next run to tomorrow at midnight for active feeds
+            // Run active feeds every night at midnight, starting tomorrow
             if ("ACTIVE".equals(feedData.status)) {
+                feed.setCron("0 0 0 * * *");
                 feed.setNextRun(LocalDateTime.now().plusDays(1).withHour(0).withMinute(0).withSecond(0).withNano(0));
             }
             
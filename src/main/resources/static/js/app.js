@@ -0,0 +1,90 @@
+/**
+ * Follow a running execution on the execute page over Server-Sent Events. Log lines are
+ * appended as they arrive, the execution fragment is only refreshed when a stage changes
+ * status and once the execution has finished.
+ */
+(function () {
+    let source = null;
+    let streamUrl = null;
+    let refreshPending = false;
+
+    function fragment() {
+        return document.getElementById('executionResult');
+    }
+
+    function refresh() {
+        const element = fragment();
+        if (refreshPending || !element || !element.getAttribute('hx-get')) {
+            return;
+        }
+        // Stage events come in bursts, one refresh covers them all
+        refreshPending = true;
+        setTimeout(function () {
+            refreshPending = false;
+            const current = fragment();
+            if (current && current.getAttribute('hx-get')) {
+                htmx.ajax('GET', current.getAttribute('hx-get'), { target: '#executionResult', swap: 'outerHTML' });
+            }
+        }, 100);
+    }
+
+    function appendLine(pre, text) {
+        if (pre) {
+            pre.textContent += (pre.textContent ? '\n' : '') + text;
+        }
+    }
+
+    function appendLog(event) {
+        const element = fragment();
+        // Lines up to this position were rendered with the fragment
+        const rendered = element ? Number(element.dataset.logSize || 0) : 0;
+        JSON.parse(event.data).forEach(function (line) {
+            if (line.seq < rendered) {
+                return;
+            }
+            appendLine(document.getElementById('executionLogs'), line.text);
+            if (line.stage >= 0) {
+                appendLine(document.getElementById('stageLogs' + line.stage), line.text);
+            }
+        });
+    }
+
+    function close() {
+        if (source) {
+            source.close();
+        }
+        source = null;
+        streamUrl = null;
+    }
+
+    function follow() {
+        const element = fragment();
+        const url = element ? element.dataset.streamUrl : null;
+        if (url === streamUrl) {
+            return;
+        }
+        close();
+        if (!url || !window.EventSource) {
+            return;
+        }
+        streamUrl = url;
+        source = new EventSource(url + '?from=' + (element.dataset.logSize || 0));
+        source.addEventListener('log', appendLog);
+        source.addEventListener('stage', refresh);
+        source.addEventListener('complete', function () {
+            close();
+            refresh();
+        });
+        source.onerror = function () {
+            // The browser reconnects by itself unless the execution is no longer tracked
+            if (source && source.readyState === EventSource.CLOSED) {
+                close();
+                refresh();
+            }
+        };
+    }
+
+    document.addEventListener('DOMContentLoaded', function () {
+        htmx.onLoad(follow);
+    });
+})();
@@ -0,0 +1,136 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+@Timeout(10)
+class CancellationTokenTest {
+
+    private final CancellationToken token = new CancellationToken();
+
+    @Test
+    void onlyTheFirstCancelTakesEffect() {
+        assertThat(token.cancel("first")).isTrue();
+        assertThat(token.cancel("second")).isFalse();
+
+        assertThat(token.isCancelled()).isTrue();
+        assertThat(token.getReason()).isEqualTo("first");
+        assertThatThrownBy(token::throwIfCancelled)
+                .isInstanceOf(CancellationException.class)
+                .hasMessage("first");
+    }
+
+    @Test
+    void runsCallbacksOnceWhenCancelled() {
+        final AtomicInteger calls = new AtomicInteger();
+        token.onCancel(calls::incrementAndGet);
+        token.onCancel(calls::incrementAndGet);
+
+        token.cancel("stop");
+        token.cancel("again");
+
+        assertThat(calls.get()).isEqualTo(2);
+    }
+
+    @Test
+    void runsACallbackRightAwayWhenAlreadyCancelled() {
+        token.cancel("stop");
+        final AtomicInteger calls = new AtomicInteger();
+
+        token.onCancel(calls::incrementAndGet).close();
+
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    void neverRunsAClosedCallback() {
+        final AtomicInteger calls = new AtomicInteger();
+        token.onCancel(calls::incrementAndGet).close();
+
+        token.cancel("stop");
+
+        assertThat(calls.get()).isZero();
+    }
+
+    @Test
+    void closeWaitsForARunningCallback() throws InterruptedException {
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger finishedCallbacks = new AtomicInteger();
+        final CancellationToken.Registration registration = token.onCancel(() -> {
+            running.countDown();
+            awaitQuietly(release);
+            finishedCallbacks.incrementAndGet();
+        });
+        final Thread canceller = new Thread(() -> token.cancel("stop"));
+        canceller.start();
+        assertThat(running.await(5, TimeUnit.SECONDS)).isTrue();
+
+        final AtomicInteger finishedWhenClosed = new AtomicInteger(-1);
+        final Thread closer = new Thread(() -> {
+            registration.close();
+            finishedWhenClosed.set(finishedCallbacks.get());
+        });
+        closer.start();
+        closer.join(200);
+        assertThat(closer.isAlive()).isTrue();
+
+        release.countDown();
+        closer.join();
+        canceller.join();
+        assertThat(finishedWhenClosed.get()).isEqualTo(1);
+    }
+
+    @Test
+    void aCallbackMayCloseItsOwnRegistration() throws InterruptedException {
+        final AtomicReference<CancellationToken.Registration> registration = new AtomicReference<>();
+        final CountDownLatch registered = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+        registration.set(token.onCancel(() -> {
+            awaitQuietly(registered);
+            registration.get().close();
+            calls.incrementAndGet();
+        }));
+        registered.countDown();
+
+        final Thread canceller = new Thread(() -> token.cancel("stop"));
+        canceller.start();
+        canceller.join(5_000);
+
+        assertThat(canceller.isAlive()).isFalse();
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    void cancelAndCloseRacingRunTheCallbackAtMostOnceAndNeverAfterClose() throws InterruptedException {
+        for (int i = 0; i < 1_000; i++) {
+            final CancellationToken raced = new CancellationToken();
+            final AtomicInteger calls = new AtomicInteger();
+            final CancellationToken.Registration registration = raced.onCancel(calls::incrementAndGet);
+            final Thread canceller = new Thread(() -> raced.cancel("stop"));
+            canceller.start();
+            registration.close();
+            final int callsWhenClosed = calls.get();
+            canceller.join();
+
+            assertThat(calls.get()).isLessThanOrEqualTo(1).isEqualTo(callsWhenClosed);
+        }
+    }
+
+    private static void awaitQuietly(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,133 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class DurationHistogramTest {
+
+    @Test
+    void countsShortDurationsExactly() {
+        for (long value = 0; value < 64; value++) {
+            assertThat(DurationHistogram.indexOf(value)).isEqualTo((int) value);
+            assertThat(DurationHistogram.highestValueOf((int) value)).isEqualTo(value);
+        }
+    }
+
+    @Test
+    void bucketsAreContiguousUpToTheLargestDuration() {
+        final int last = DurationHistogram.indexOf(Long.MAX_VALUE);
+        for (int index = 0; index < last; index++) {
+            final long highest = DurationHistogram.highestValueOf(index);
+            assertThat(DurationHistogram.indexOf(highest)).as("highest value of bucket %d", index).isEqualTo(index);
+            assertThat(DurationHistogram.indexOf(highest + 1)).as("value after bucket %d", index).isEqualTo(index + 1);
+        }
+        assertThat(DurationHistogram.highestValueOf(last)).isEqualTo(Long.MAX_VALUE);
+        // Indexes are encoded as unsigned shorts
+        assertThat(last).isLessThan(1 << 16);
+    }
+
+    @Test
+    void bucketsAreWithinThreePercentOfTheirValues() {
+        final Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            final long value = 64 + (random.nextLong() >>> (2 + random.nextInt(56)));
+            final long highest = DurationHistogram.highestValueOf(DurationHistogram.indexOf(value));
+            assertThat(highest).isGreaterThanOrEqualTo(value);
+            assertThat((double) (highest - value) / value).isLessThanOrEqualTo(1.0 / 32);
+        }
+    }
+
+    @Test
+    void reportsPercentilesAsTheUpperEndOfTheirBucket() {
+        final DurationHistogram histogram = new DurationHistogram();
+        for (long value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+        histogram.record(10_000);
+
+        assertThat(histogram.getTotalCount()).isEqualTo(101);
+        assertThat(histogram.getValueAtPercentile(50)).isEqualTo(51);
+        assertThat(histogram.getValueAtPercentile(100)).isEqualTo(10_000);
+        assertThat(histogram.getValueAtPercentile(0)).isEqualTo(1);
+        assertThat(histogram.getMax()).isEqualTo(10_000);
+        assertThat(histogram.getMean()).isEqualTo((5050 + 10_000) / 101.0);
+    }
+
+    @Test
+    void clampsNegativeDurationsToZero() {
+        final DurationHistogram histogram = new DurationHistogram();
+        histogram.record(-5);
+
+        assertThat(histogram.getValueAtPercentile(100)).isZero();
+        assertThat(histogram.getMean()).isZero();
+    }
+
+    @Test
+    void emptyHistogramReportsZero() {
+        final DurationHistogram histogram = new DurationHistogram();
+
+        assertThat(histogram.isEmpty()).isTrue();
+        assertThat(histogram.getValueAtPercentile(99)).isZero();
+        assertThat(histogram.getMean()).isZero();
+    }
+
+    @Test
+    void roundTripsThroughItsEncoding() {
+        final DurationHistogram histogram = new DurationHistogram();
+        final Random random = new Random(7);
+        for (int i = 0; i < 10_000; i++) {
+            histogram.record(random.nextInt(120_000));
+        }
+        histogram.record(0);
+        histogram.record(Long.MAX_VALUE / 2);
+
+        final DurationHistogram decoded = DurationHistogram.decode(histogram.encode());
+
+        assertThat(decoded.getTotalCount()).isEqualTo(histogram.getTotalCount());
+        assertThat(decoded.getMax()).isEqualTo(Long.MAX_VALUE / 2);
+        assertThat(decoded.getMean()).isEqualTo(histogram.getMean());
+        for (double percentile : new double[] {0, 1, 50, 90, 99, 99.9, 100}) {
+            assertThat(decoded.getValueAtPercentile(percentile)).isEqualTo(histogram.getValueAtPercentile(percentile));
+        }
+        assertThat(decoded.encode()).isEqualTo(histogram.encode());
+    }
+
+    @Test
+    void roundTripsAnEmptyHistogram() {
+        final DurationHistogram decoded = DurationHistogram.decode(new DurationHistogram().encode());
+
+        assertThat(decoded.isEmpty()).isTrue();
+        assertThat(decoded.getMax()).isZero();
+    }
+
+    @Test
+    void rejectsAnUnknownVersion() {
+        final byte[] data = new DurationHistogram().encode();
+        data[0] = 2;
+
+        assertThatThrownBy(() -> DurationHistogram.decode(data)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void mergesLikeRecordingEverythingInOne() {
+        final DurationHistogram first = new DurationHistogram();
+        final DurationHistogram second = new DurationHistogram();
+        final DurationHistogram all = new DurationHistogram();
+        for (long value = 0; value < 1_000; value++) {
+            first.record(value * 3);
+            all.record(value * 3);
+        }
+        for (long value = 0; value < 500; value++) {
+            second.record(value * 1_000_000);
+            all.record(value * 1_000_000);
+        }
+
+        first.merge(second);
+
+        assertThat(first.encode()).isEqualTo(all.encode());
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import org.junit.jupiter.api.Test;
+
+class ExecutionCursorTest {
+
+    @Test
+    void roundTripsThroughItsEncoding() {
+        final ExecutionCursor cursor = new ExecutionCursor(LocalDateTime.of(2024, 3, 1, 14, 5, 9, 123_456_789), 98_765L);
+
+        assertThat(ExecutionCursor.decode(cursor.encode())).isEqualTo(cursor);
+    }
+
+    @Test
+    void roundTripsTheFirstCursor() {
+        assertThat(ExecutionCursor.decode(ExecutionCursor.FIRST.encode())).isEqualTo(ExecutionCursor.FIRST);
+    }
+
+    @Test
+    void roundTripsAWholeSecond() {
+        // LocalDateTime leaves out zero seconds and fractions when printed
+        final ExecutionCursor cursor = new ExecutionCursor(LocalDateTime.of(2024, 3, 1, 14, 5), 1L);
+
+        assertThat(ExecutionCursor.decode(cursor.encode())).isEqualTo(cursor);
+    }
+
+    @Test
+    void encodesUrlSafely() {
+        for (long id = 0; id < 1_000; id++) {
+            final String encoded = new ExecutionCursor(LocalDateTime.of(2024, 1, 1, 0, 0).plusSeconds(id * 7919), id).encode();
+            assertThat(encoded).doesNotContain("+", "/", "=");
+        }
+    }
+
+    @Test
+    void startsAtTheFirstPageWithoutACursor() {
+        assertThat(ExecutionCursor.decode(null)).isEqualTo(ExecutionCursor.FIRST);
+        assertThat(ExecutionCursor.decode("")).isEqualTo(ExecutionCursor.FIRST);
+        assertThat(ExecutionCursor.decode("  ")).isEqualTo(ExecutionCursor.FIRST);
+    }
+
+    @Test
+    void rejectsInvalidCursors() {
+        assertThatThrownBy(() -> ExecutionCursor.decode("not base64!")).isInstanceOf(InvalidCursorException.class);
+        assertThatThrownBy(() -> ExecutionCursor.decode(encode("no separator"))).isInstanceOf(InvalidCursorException.class);
+        assertThatThrownBy(() -> ExecutionCursor.decode(encode("yesterday|12"))).isInstanceOf(InvalidCursorException.class);
+        assertThatThrownBy(() -> ExecutionCursor.decode(encode("2024-03-01T14:05:09|twelve")))
+                .isInstanceOf(InvalidCursorException.class)
+                .hasMessageContaining("Invalid cursor");
+    }
+
+    private static String encode(final String value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,180 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+@Timeout(30)
+class ExecutionHistoryWriterTest {
+
+    private final FeedExecutionHistoryService executionHistoryService = mock(FeedExecutionHistoryService.class);
+    private final FeedLatencyService latencyService = mock(FeedLatencyService.class);
+    private final CountingTransactionManager transactionManager = new CountingTransactionManager();
+    // The first execution written blocks the writer until released, so the next ones queue up behind it
+    private final CountDownLatch firstWriteStarted = new CountDownLatch(1);
+    private final CountDownLatch releaseFirstWrite = new CountDownLatch(1);
+    private ExecutionHistoryWriter writer;
+
+    @BeforeEach
+    void createWriter() {
+        when(executionHistoryService.persistExecution(anyLong(), any(), any())).thenAnswer(invocation -> {
+            final ExecutionResult result = invocation.getArgument(2);
+            if (result.getExecutionId() == 1L) {
+                firstWriteStarted.countDown();
+                releaseFirstWrite.await();
+            }
+            if (result.getError() != null && result.getError().startsWith("unwritable")) {
+                throw new IllegalStateException("Value too long for column");
+            }
+            return null;
+        });
+        writer = new ExecutionHistoryWriter(executionHistoryService, latencyService, transactionManager,
+                new SimpleMeterRegistry(), 100, 20, Duration.ofMillis(50), 1000, Duration.ofSeconds(10));
+    }
+
+    @AfterEach
+    void shutdown() throws InterruptedException {
+        releaseFirstWrite.countDown();
+        writer.shutdown();
+    }
+
+    @Test
+    void writesQueuedExecutionsInOneTransaction() throws InterruptedException {
+        writer.write(1L, "p", finished(1L));
+        assertThat(firstWriteStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        for (long id = 2; id <= 6; id++) {
+            writer.write(1L, "p", finished(id));
+        }
+        assertThat(writer.getQueueDepth()).isEqualTo(5);
+
+        releaseFirstWrite.countDown();
+
+        verify(latencyService, timeout(5_000).times(6)).record(eq(1L), any());
+        assertThat(transactionManager.commits.get()).isEqualTo(2);
+        assertThat(transactionManager.rollbacks.get()).isZero();
+    }
+
+    @Test
+    void writesTheOtherExecutionsOfAFailedTransactionOneByOne() throws InterruptedException {
+        writer.write(1L, "p", finished(1L));
+        assertThat(firstWriteStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        final List<ExecutionResult> batch = new ArrayList<>();
+        for (long id = 2; id <= 5; id++) {
+            batch.add(id == 3 ? failed(id, "unwritable") : finished(id));
+        }
+        batch.forEach(result -> writer.write(1L, "p", result));
+
+        releaseFirstWrite.countDown();
+
+        // Retried with the following flushes, then only marked as failed
+        verify(executionHistoryService, timeout(5_000)).failExecution(eq(3L), startsWith("Execution history could not be saved"));
+        verify(executionHistoryService, times(4)).persistExecution(eq(1L), eq("p"), same(batch.get(1)));
+        verify(latencyService, times(4)).record(eq(1L), any());
+        verify(latencyService, never()).record(eq(1L), same(batch.get(1)));
+    }
+
+    @Test
+    void drainsTheQueueOnShutdown() throws InterruptedException {
+        releaseFirstWrite.countDown();
+        for (long id = 1; id <= 10; id++) {
+            writer.write(1L, "p", finished(id));
+        }
+
+        writer.shutdown();
+
+        verify(executionHistoryService, times(10)).persistExecution(eq(1L), eq("p"), any());
+    }
+
+    @Test
+    void writesOnTheCallingThreadOnceShutDown() throws InterruptedException {
+        writer.shutdown();
+        final ExecutionResult result = finished(7L);
+
+        writer.write(1L, "p", result);
+
+        verify(executionHistoryService).persistExecution(1L, "p", result);
+        assertThat(transactionManager.commits.get()).isEqualTo(1);
+    }
+
+    @Test
+    void writesTrackedExecutionsIncrementally() {
+        final ExecutionResult result = new ExecutionResult();
+        result.setExecutionId(9L);
+        final ExecutionStage stage = result.addStage("load", "Load the input");
+        when(executionHistoryService.insertStage(9L, stage)).thenReturn(90L);
+        writer.track(1L, "p", result);
+        result.info("Started");
+
+        verify(executionHistoryService, timeout(5_000)).insertStage(9L, stage);
+        verify(executionHistoryService, timeout(5_000)).appendLogs(eq(9L), any(), any());
+
+        result.setSuccess();
+        writer.write(1L, "p", result);
+
+        verify(executionHistoryService, timeout(5_000)).updateStage(90L, stage);
+        verify(latencyService, timeout(5_000)).record(1L, result);
+        verify(executionHistoryService, times(1)).insertStage(9L, stage);
+        verify(executionHistoryService, never()).persistExecution(anyLong(), any(), any());
+    }
+
+    private static ExecutionResult finished(final long executionId) {
+        final ExecutionResult result = new ExecutionResult();
+        result.setExecutionId(executionId);
+        result.setSuccess();
+        return result;
+    }
+
+    private static ExecutionResult failed(final long executionId, final String error) {
+        final ExecutionResult result = new ExecutionResult();
+        result.setExecutionId(executionId);
+        result.setFailed(error);
+        return result;
+    }
+
+    private static final class CountingTransactionManager implements PlatformTransactionManager {
+
+        private final AtomicInteger commits = new AtomicInteger();
+        private final AtomicInteger rollbacks = new AtomicInteger();
+
+        @Override
+        public TransactionStatus getTransaction(final TransactionDefinition definition) {
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public void commit(final TransactionStatus status) {
+            commits.incrementAndGet();
+        }
+
+        @Override
+        public void rollback(final TransactionStatus status) {
+            rollbacks.incrementAndGet();
+        }
+    }
+
+}
@@ -0,0 +1,122 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+class ExecutionProgressTest {
+
+    private final ExecutionProgress progress = new ExecutionProgress();
+
+    @Test
+    void countsStagesByStatus() {
+        for (int i = 0; i < 5; i++) {
+            progress.stageAdded();
+        }
+        progress.stageTransitioned(ExecutionStage.Status.PENDING, ExecutionStage.Status.IN_PROGRESS, 0);
+        progress.stageTransitioned(ExecutionStage.Status.PENDING, ExecutionStage.Status.IN_PROGRESS, 0);
+        progress.stageTransitioned(ExecutionStage.Status.IN_PROGRESS, ExecutionStage.Status.SUCCESS, 120);
+        progress.stageTransitioned(ExecutionStage.Status.PENDING, ExecutionStage.Status.FAILED, 0);
+        progress.stageTransitioned(ExecutionStage.Status.PENDING, ExecutionStage.Status.CANCELLED, 30);
+
+        assertThat(progress.getCounts()).isEqualTo(new ExecutionProgress.Counts(1, 1, 1, 1, 1));
+        assertThat(progress.getCount(ExecutionStage.Status.SUCCESS)).isEqualTo(1);
+        assertThat(progress.getTotal()).isEqualTo(5);
+        assertThat(progress.getCounts().completed()).isEqualTo(2);
+        assertThat(progress.getCounts().completionPercentage()).isEqualTo(40.0);
+    }
+
+    @Test
+    void accountsTheDurationOfStagesReachingAFinalStatusOnce() {
+        progress.stageAdded();
+        progress.stageAdded();
+        progress.stageTransitioned(ExecutionStage.Status.PENDING, ExecutionStage.Status.IN_PROGRESS, 0);
+        progress.stageTransitioned(ExecutionStage.Status.IN_PROGRESS, ExecutionStage.Status.SUCCESS, 250);
+        // From one final status to another
+        progress.stageTransitioned(ExecutionStage.Status.SUCCESS, ExecutionStage.Status.FAILED, 250);
+        // Finished without taking any measurable time
+        progress.stageTransitioned(ExecutionStage.Status.PENDING, ExecutionStage.Status.SUCCESS, 0);
+
+        assertThat(progress.getFinishedStagesMillis()).isEqualTo(250);
+        assertThat(progress.getTimedStages()).isEqualTo(1);
+    }
+
+    @Test
+    void anEmptyExecutionIsNotComplete() {
+        assertThat(progress.getCounts()).isEqualTo(new ExecutionProgress.Counts(0, 0, 0, 0, 0));
+        assertThat(progress.getCounts().completionPercentage()).isZero();
+    }
+
+    @Test
+    void fullCountersDoNotSpillIntoTheNextStatus() {
+        for (int i = 0; i < ExecutionProgress.MAX_STAGES; i++) {
+            progress.stageAdded();
+        }
+        assertThat(progress.getCounts().pending()).isEqualTo(ExecutionProgress.MAX_STAGES);
+
+        for (int i = 0; i < ExecutionProgress.MAX_STAGES; i++) {
+            progress.stageTransitioned(ExecutionStage.Status.PENDING, ExecutionStage.Status.CANCELLED, 1);
+        }
+
+        assertThat(progress.getCounts()).isEqualTo(new ExecutionProgress.Counts(0, 0, 0, 0, ExecutionProgress.MAX_STAGES));
+        assertThat(progress.getTotal()).isEqualTo(ExecutionProgress.MAX_STAGES);
+    }
+
+    @Test
+    void rejectsMoreStagesThanFitInACounter() {
+        for (int i = 0; i < ExecutionProgress.MAX_STAGES; i++) {
+            progress.stageAdded();
+        }
+
+        assertThatThrownBy(progress::stageAdded).isInstanceOf(IllegalStateException.class);
+        assertThat(progress.getTotal()).isEqualTo(ExecutionProgress.MAX_STAGES);
+    }
+
+    @Test
+    @Timeout(30)
+    void readersNeverSeeAStageInTwoStatuses() throws InterruptedException {
+        final int stagesPerThread = 500;
+        final int threads = 4;
+        for (int i = 0; i < stagesPerThread * threads; i++) {
+            progress.stageAdded();
+        }
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicReference<ExecutionProgress.Counts> inconsistent = new AtomicReference<>();
+        final Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                final ExecutionProgress.Counts counts = progress.getCounts();
+                if (counts.total() != stagesPerThread * threads) {
+                    inconsistent.set(counts);
+                }
+            }
+        });
+        reader.start();
+        final List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final Thread writer = new Thread(() -> {
+                for (int i = 0; i < stagesPerThread; i++) {
+                    progress.stageTransitioned(ExecutionStage.Status.PENDING, ExecutionStage.Status.IN_PROGRESS, 0);
+                    progress.stageTransitioned(ExecutionStage.Status.IN_PROGRESS, ExecutionStage.Status.SUCCESS, 1);
+                }
+            });
+            writers.add(writer);
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        done.set(true);
+        reader.join();
+
+        assertThat(inconsistent.get()).isNull();
+        assertThat(progress.getCounts()).isEqualTo(new ExecutionProgress.Counts(0, 0, stagesPerThread * threads, 0, 0));
+        assertThat(progress.getFinishedStagesMillis()).isEqualTo(stagesPerThread * threads);
+    }
+
+}
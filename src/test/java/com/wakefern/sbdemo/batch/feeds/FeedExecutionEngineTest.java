@@ -0,0 +1,299 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+@Timeout(30)
+class FeedExecutionEngineTest {
+
+    private final FeedService feedService = mock(FeedService.class);
+    private final FeedExecutionHistoryService executionHistoryService = mock(FeedExecutionHistoryService.class);
+    private final ExecutionHistoryWriter historyWriter = mock(ExecutionHistoryWriter.class);
+    private final CheckpointStore checkpointStore = mock(CheckpointStore.class);
+    private final AtomicLong executionIds = new AtomicLong();
+    // Executions of a feed block until its gate is opened
+    private final Map<Long, CountDownLatch> gates = new ConcurrentHashMap<>();
+    private final List<Long> started = new CopyOnWriteArrayList<>();
+    private final Map<Long, Thread> threads = new ConcurrentHashMap<>();
+    private final Map<Long, AtomicInteger> running = new ConcurrentHashMap<>();
+    private final AtomicInteger maxRunningPerFeed = new AtomicInteger();
+    private volatile boolean released;
+    private FeedExecutionEngine engine;
+
+    @BeforeEach
+    void stubServices() {
+        when(executionHistoryService.createExecution(anyLong(), any(), any())).thenAnswer(invocation -> {
+            final FeedExecution execution = new FeedExecution();
+            execution.setId(executionIds.incrementAndGet());
+            return execution;
+        });
+        when(feedService.executeFeed(anyLong(), any(), any())).thenAnswer(invocation -> {
+            final Long feedId = invocation.getArgument(0);
+            final ExecutionResult result = invocation.getArgument(2);
+            final AtomicInteger runningForFeed = running.computeIfAbsent(feedId, id -> new AtomicInteger());
+            maxRunningPerFeed.accumulateAndGet(runningForFeed.incrementAndGet(), Math::max);
+            threads.put(result.getExecutionId(), Thread.currentThread());
+            started.add(result.getExecutionId());
+            try {
+                gate(feedId).await();
+            } finally {
+                runningForFeed.decrementAndGet();
+            }
+            result.setSuccess();
+            return result;
+        });
+    }
+
+    @AfterEach
+    void shutdown() throws InterruptedException {
+        released = true;
+        gates.values().forEach(CountDownLatch::countDown);
+        if (engine != null) {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    void queuesExecutionsOfABusyFeedAndRunsThemInOrder() throws InterruptedException {
+        engine = engine(4, 20, FeedExecutionEngine.RejectionPolicy.REJECT, FeedExecutionEngine.OverlapPolicy.QUEUE, 5, 4);
+
+        final ExecutionResult first = engine.submit(1L, "a");
+        awaitUntil(() -> started.contains(first.getExecutionId()));
+        final ExecutionResult second = engine.submit(1L, "b");
+        final ExecutionResult third = engine.submit(1L, "c");
+        Thread.sleep(100);
+
+        assertThat(second.getStatus()).isEqualTo(ExecutionResult.Status.QUEUED);
+        assertThat(third.getStatus()).isEqualTo(ExecutionResult.Status.QUEUED);
+        assertThat(started).containsExactly(first.getExecutionId());
+
+        open(1L);
+        awaitUntil(third::isFinished);
+        assertThat(started).containsExactly(first.getExecutionId(), second.getExecutionId(), third.getExecutionId());
+        assertThat(maxRunningPerFeed.get()).isEqualTo(1);
+    }
+
+    @Test
+    void runsOtherFeedsWhileOneIsBusy() {
+        engine = engine(4, 20, FeedExecutionEngine.RejectionPolicy.REJECT, FeedExecutionEngine.OverlapPolicy.QUEUE, 5, 4);
+        open(2L);
+
+        final ExecutionResult busy = engine.submit(1L, "a");
+        final ExecutionResult other = engine.submit(2L, "a");
+
+        awaitUntil(other::isFinished);
+        assertThat(busy.isFinished()).isFalse();
+    }
+
+    @Test
+    void rejectsExecutionsBeyondTheFeedsQueueLimit() {
+        engine = engine(4, 20, FeedExecutionEngine.RejectionPolicy.REJECT, FeedExecutionEngine.OverlapPolicy.QUEUE, 1, 4);
+        engine.submit(1L, "a");
+        engine.submit(1L, "b");
+
+        assertThatThrownBy(() -> engine.submit(1L, "c")).isInstanceOf(ExecutionRejectedException.class);
+        verify(executionHistoryService, times(2)).createExecution(anyLong(), any(), any());
+    }
+
+    @Test
+    void rejectsOverlappingExecutionsWithTheRejectOverlapPolicy() {
+        engine = engine(4, 20, FeedExecutionEngine.RejectionPolicy.REJECT, FeedExecutionEngine.OverlapPolicy.REJECT, 5, 4);
+        engine.submit(1L, "a");
+
+        assertThatThrownBy(() -> engine.submit(1L, "b")).isInstanceOf(FeedBusyException.class);
+        verify(executionHistoryService, times(1)).createExecution(anyLong(), any(), any());
+    }
+
+    @Test
+    void coalescesIntoTheExecutionInProgress() {
+        engine = engine(4, 20, FeedExecutionEngine.RejectionPolicy.REJECT, FeedExecutionEngine.OverlapPolicy.COALESCE, 5, 4);
+
+        final ExecutionResult first = engine.submit(1L, "a");
+        final ExecutionResult second = engine.submit(1L, "b");
+
+        assertThat(second).isSameAs(first);
+        open(1L);
+        awaitUntil(first::isFinished);
+        verify(executionHistoryService, times(1)).createExecution(anyLong(), any(), any());
+        verify(feedService, times(1)).executeFeed(anyLong(), any(), any());
+    }
+
+    @Test
+    void rejectsExecutionsOnceTheQueueIsFull() {
+        engine = engine(1, 1, FeedExecutionEngine.RejectionPolicy.REJECT, FeedExecutionEngine.OverlapPolicy.QUEUE, 5, 4);
+        final ExecutionResult runningExecution = engine.submit(1L, "a");
+        awaitUntil(() -> started.contains(runningExecution.getExecutionId()));
+        engine.submit(2L, "a");
+
+        assertThat(engine.getQueueDepth()).isEqualTo(1);
+        assertThatThrownBy(() -> engine.submit(3L, "a")).isInstanceOf(ExecutionRejectedException.class);
+        verify(executionHistoryService, times(2)).createExecution(anyLong(), any(), any());
+    }
+
+    @Test
+    void runsExecutionsOnTheCallerOnceTheQueueIsFull() {
+        engine = engine(1, 1, FeedExecutionEngine.RejectionPolicy.CALLER_RUNS, FeedExecutionEngine.OverlapPolicy.QUEUE, 5, 4);
+        final ExecutionResult runningExecution = engine.submit(1L, "a");
+        awaitUntil(() -> started.contains(runningExecution.getExecutionId()));
+        engine.submit(2L, "a");
+        open(3L);
+
+        final ExecutionResult callerRun = engine.submit(3L, "a");
+
+        assertThat(callerRun.getStatus()).isEqualTo(ExecutionResult.Status.SUCCESS);
+        assertThat(threads.get(callerRun.getExecutionId())).isSameAs(Thread.currentThread());
+    }
+
+    @Test
+    void runsExecutionsOnTheCallerOnceTheSlotQueueIsFull() {
+        engine = engine(2, 2, FeedExecutionEngine.RejectionPolicy.CALLER_RUNS, FeedExecutionEngine.OverlapPolicy.QUEUE, 5, 2);
+        final ExecutionResult first = engine.submit(1L, "a");
+        final ExecutionResult second = engine.submit(2L, "a");
+        awaitUntil(() -> started.size() == 2);
+        engine.submit(3L, "a");
+        engine.submit(4L, "a");
+        assertThat(engine.getQueueDepth()).isEqualTo(2);
+        open(5L);
+
+        // All slots are taken and the executions waiting for one fill the queue
+        final ExecutionResult callerRun = engine.submit(5L, "a");
+
+        assertThat(callerRun.getStatus()).isEqualTo(ExecutionResult.Status.SUCCESS);
+        assertThat(threads.get(callerRun.getExecutionId())).isSameAs(Thread.currentThread());
+        assertThat(engine.getQueueDepth()).isEqualTo(2);
+        assertThat(first.isFinished()).isFalse();
+        assertThat(second.isFinished()).isFalse();
+
+        // The caller run took no slot and gives none back, two executions still run at most
+        List.of(1L, 2L, 3L, 4L).forEach(this::open);
+        awaitUntil(() -> started.size() == 5 && engine.getQueueDepth() == 0 && engine.getActiveCount() == 0);
+        engine.submit(6L, "a");
+        engine.submit(7L, "a");
+        awaitUntil(() -> started.size() == 7);
+        engine.submit(8L, "a");
+        assertThat(engine.getQueueDepth()).isEqualTo(1);
+    }
+
+    @Test
+    void waitsForASlotBeyondTheConcurrencyLimit() throws InterruptedException {
+        engine = engine(4, 20, FeedExecutionEngine.RejectionPolicy.REJECT, FeedExecutionEngine.OverlapPolicy.QUEUE, 5, 1);
+        open(2L);
+        final ExecutionResult first = engine.submit(1L, "a");
+        awaitUntil(() -> started.contains(first.getExecutionId()));
+
+        final ExecutionResult second = engine.submit(2L, "a");
+        Thread.sleep(100);
+
+        assertThat(started).containsExactly(first.getExecutionId());
+        assertThat(engine.getQueueDepth()).isEqualTo(1);
+        open(1L);
+        awaitUntil(second::isFinished);
+        assertThat(second.getStatus()).isEqualTo(ExecutionResult.Status.SUCCESS);
+        assertThat(engine.getQueueDepth()).isZero();
+    }
+
+    @Test
+    void cancelsAnExecutionQueuedBehindItsFeed() {
+        engine = engine(4, 20, FeedExecutionEngine.RejectionPolicy.REJECT, FeedExecutionEngine.OverlapPolicy.QUEUE, 5, 4);
+        final ExecutionResult first = engine.submit(1L, "a");
+        final ExecutionResult second = engine.submit(1L, "b");
+
+        engine.cancel(1L, second.getExecutionId());
+
+        assertThat(second.getStatus()).isEqualTo(ExecutionResult.Status.CANCELLED);
+        verify(historyWriter).write(eq(1L), eq("b"), same(second));
+        open(1L);
+        awaitUntil(first::isFinished);
+        assertThat(started).containsExactly(first.getExecutionId());
+    }
+
+    @Test
+    void cancelsAnExecutionWaitingForASlot() {
+        engine = engine(4, 20, FeedExecutionEngine.RejectionPolicy.REJECT, FeedExecutionEngine.OverlapPolicy.QUEUE, 5, 1);
+        final ExecutionResult first = engine.submit(1L, "a");
+        final ExecutionResult waiting = engine.submit(2L, "a");
+
+        engine.cancel(2L, waiting.getExecutionId());
+
+        assertThat(waiting.getStatus()).isEqualTo(ExecutionResult.Status.CANCELLED);
+        assertThat(engine.getQueueDepth()).isZero();
+        open(1L);
+        awaitUntil(first::isFinished);
+        assertThat(started).containsExactly(first.getExecutionId());
+    }
+
+    @Test
+    void failsAnExecutionThePoolRejectsWhenItsFeedFrees() {
+        engine = engine(1, 1, FeedExecutionEngine.RejectionPolicy.REJECT, FeedExecutionEngine.OverlapPolicy.QUEUE, 5, 5);
+        open(2L);
+        final ExecutionResult first = engine.submit(1L, "a");
+        awaitUntil(() -> started.contains(first.getExecutionId()));
+        final ExecutionResult queuedBehindFeed = engine.submit(1L, "b");
+        final ExecutionResult queuedForWorker = engine.submit(2L, "a");
+
+        // The worker frees the feed while the pool's queue is still full, the next execution must not run on it
+        open(1L);
+
+        awaitUntil(queuedBehindFeed::isFinished);
+        assertThat(queuedBehindFeed.getStatus()).isEqualTo(ExecutionResult.Status.FAILED);
+        assertThat(queuedBehindFeed.getError()).contains("rejected");
+        verify(historyWriter).write(eq(1L), eq("b"), same(queuedBehindFeed));
+        awaitUntil(queuedForWorker::isFinished);
+        assertThat(started).containsExactly(first.getExecutionId(), queuedForWorker.getExecutionId());
+    }
+
+    private FeedExecutionEngine engine(final int poolSize, final int queueCapacity,
+                                       final FeedExecutionEngine.RejectionPolicy rejectionPolicy,
+                                       final FeedExecutionEngine.OverlapPolicy overlapPolicy,
+                                       final int maxQueuedPerFeed, final int maxConcurrent) {
+        return new FeedExecutionEngine(feedService, executionHistoryService, historyWriter, checkpointStore, poolSize,
+                queueCapacity, rejectionPolicy, overlapPolicy, maxQueuedPerFeed, maxConcurrent, Duration.ofMinutes(10));
+    }
+
+    private CountDownLatch gate(final Long feedId) {
+        final CountDownLatch gate = gates.computeIfAbsent(feedId, id -> new CountDownLatch(1));
+        if (released) {
+            gate.countDown();
+        }
+        return gate;
+    }
+
+    private void open(final Long feedId) {
+        gate(feedId).countDown();
+    }
+
+    private static void awaitUntil(final BooleanSupplier condition) {
+        final long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("Condition not met within 10 seconds");
+            }
+            LockSupport.parkNanos(1_000_000);
+        }
+    }
+
+}
@@ -0,0 +1,103 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class FeedExecutionHistoryServiceTest {
+
+    private static final int CHUNK_LINES = 10;
+
+    private final FeedExecutionRepository executionRepository = mock(FeedExecutionRepository.class);
+    private final FeedExecutionLogChunkRepository chunkRepository = mock(FeedExecutionLogChunkRepository.class);
+    private final EntityManager entityManager = mock(EntityManager.class);
+    // The chunks persisted, in ID order
+    private final List<FeedExecutionLogChunk> chunks = new ArrayList<>();
+    private final FeedExecutionHistoryService historyService = new FeedExecutionHistoryService(
+            executionRepository, mock(FeedExecutionStageRepository.class),
+            mock(FeedExecutionLogRepository.class), chunkRepository, mock(FeedExecutionStatsService.class),
+            new ObjectMapper(), entityManager, 1000, FeedExecutionHistoryService.LogStorage.CHUNKED, CHUNK_LINES);
+
+    @BeforeEach
+    void storeChunks() {
+        doAnswer(invocation -> {
+            if (invocation.getArgument(0) instanceof FeedExecutionLogChunk chunk) {
+                chunk.setId((long) chunks.size() + 1);
+                chunks.add(chunk);
+            }
+            return null;
+        }).when(entityManager).persist(any());
+        when(chunkRepository.findFirstByExecutionIdAndStageIdOrderByIdDesc(anyLong(), anyLong()))
+                .thenAnswer(invocation -> last(invocation.getArgument(0), invocation.getArgument(1)));
+        when(chunkRepository.findFirstByExecutionIdAndStageIdIsNullOrderByIdDesc(anyLong()))
+                .thenAnswer(invocation -> last(invocation.getArgument(0), null));
+    }
+
+    @Test
+    void fillsUpTheOpenChunkOfAStageWithIncrementalAppends() {
+        final List<Long> stageIds = List.of(90L);
+        int line = 0;
+        for (int append = 0; append < 7; append++) {
+            final List<LogEvent> events = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                events.add(event(0, line++));
+            }
+            events.add(event(LogEvent.NO_STAGE, append));
+            historyService.appendLogs(9L, events, stageIds);
+        }
+
+        // 28 stage lines fill two chunks and start a third, the 7 execution lines share one chunk
+        assertThat(chunks).hasSize(4);
+        assertThat(chunks).extracting(FeedExecutionLogChunk::getLineCount).containsExactly(10, 7, 10, 8);
+        final List<String> stageLines = new ArrayList<>();
+        for (FeedExecutionLogChunk chunk : chunks) {
+            if (Long.valueOf(90L).equals(chunk.getStageId())) {
+                LogChunkCodec.decode(chunk).forEach(log -> stageLines.add(log.getMessage()));
+            }
+        }
+        assertThat(stageLines).hasSize(28);
+        for (int i = 0; i < 28; i++) {
+            assertThat(stageLines.get(i)).endsWith("Line " + i);
+        }
+    }
+
+    @Test
+    void writesAFinishedExecutionInFullChunks() {
+        final ExecutionResult result = new ExecutionResult();
+        for (int i = 0; i < 25; i++) {
+            result.info("Line {}", i);
+        }
+        when(executionRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        historyService.persistExecution(1L, "p", result);
+
+        assertThat(chunks).extracting(FeedExecutionLogChunk::getLineCount).containsExactly(10, 10, 5);
+    }
+
+    private Optional<FeedExecutionLogChunk> last(final Long executionId, final Long stageId) {
+        for (int i = chunks.size() - 1; i >= 0; i--) {
+            final FeedExecutionLogChunk chunk = chunks.get(i);
+            if (chunk.getExecutionId().equals(executionId) && Objects.equals(chunk.getStageId(), stageId)) {
+                return Optional.of(chunk);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static LogEvent event(final int stageIndex, final int line) {
+        return new LogEvent(LogEvent.Level.INFO, stageIndex, "Line {}", new Object[] {line});
+    }
+
+}
@@ -0,0 +1,200 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+class FeedExecutionStatsServiceTest {
+
+    private final FeedExecutionStatsRollupRepository rollupRepository = mock(FeedExecutionStatsRollupRepository.class);
+    private final FeedExecutionRepository feedExecutionRepository = mock(FeedExecutionRepository.class);
+    private final FeedExecutionStatsService statsService = new FeedExecutionStatsService(rollupRepository,
+            feedExecutionRepository, mock(FeedRepository.class), mock(PlatformTransactionManager.class));
+
+    @BeforeEach
+    void beginTransaction() {
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    @AfterEach
+    void endTransaction() {
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+
+    @Test
+    void servesStatisticsFromMemoryOnceRead() {
+        when(rollupRepository.findById(1L)).thenReturn(Optional.of(rollup(10, 8, 2, 800, 8, 5)));
+
+        statsService.getStats(1L);
+        final FeedExecutionHistoryService.FeedExecutionStats stats = statsService.getStats(1L);
+
+        assertThat(stats.getTotalExecutions()).isEqualTo(10);
+        assertThat(stats.getSuccessfulExecutions()).isEqualTo(8);
+        assertThat(stats.getFailedExecutions()).isEqualTo(2);
+        assertThat(stats.getAverageDurationMillis()).isEqualTo(100.0);
+        verify(rollupRepository, times(1)).findById(1L);
+    }
+
+    @Test
+    void appliesACommittedChangeToTheCopyInMemory() {
+        when(rollupRepository.findById(1L)).thenReturn(Optional.of(rollup(10, 8, 2, 800, 8, 5)));
+        statsService.getStats(1L);
+        whenIncremented(1L, 6);
+
+        statsService.executionChanged(1L, null, null, FeedExecution.Status.SUCCESS, 1_000L);
+        assertThat(statsService.getStats(1L).getTotalExecutions()).isEqualTo(10);
+        commit(takeSynchronizations());
+
+        final FeedExecutionHistoryService.FeedExecutionStats stats = statsService.getStats(1L);
+        assertThat(stats.getTotalExecutions()).isEqualTo(11);
+        assertThat(stats.getSuccessfulExecutions()).isEqualTo(9);
+        assertThat(stats.getAverageDurationMillis()).isEqualTo(200.0);
+        verify(rollupRepository, times(1)).findById(1L);
+    }
+
+    @Test
+    void appliesAChangeOfStatusAsOneDelta() {
+        when(rollupRepository.findById(1L)).thenReturn(Optional.of(rollup(10, 8, 2, 800, 8, 5)));
+        statsService.getStats(1L);
+        whenIncremented(1L, 6);
+
+        statsService.executionChanged(1L, FeedExecution.Status.IN_PROGRESS, null, FeedExecution.Status.FAILED, 300L);
+        commit(takeSynchronizations());
+
+        final FeedExecutionHistoryService.FeedExecutionStats stats = statsService.getStats(1L);
+        assertThat(stats.getTotalExecutions()).isEqualTo(10);
+        assertThat(stats.getFailedExecutions()).isEqualTo(3);
+        verify(rollupRepository).increment(eq(1L), eq(0L), eq(0L), eq(1L), eq(0L), eq(0L), any());
+    }
+
+    @Test
+    void dropsTheCopyWhenChangesCommitOutOfVersionOrder() {
+        when(rollupRepository.findById(1L)).thenReturn(Optional.of(rollup(10, 8, 2, 800, 8, 5)));
+        statsService.getStats(1L);
+
+        whenIncremented(1L, 6);
+        statsService.executionChanged(1L, null, null, FeedExecution.Status.SUCCESS, 100L);
+        final List<TransactionSynchronization> first = takeSynchronizations();
+        whenIncremented(1L, 7);
+        statsService.executionChanged(1L, null, null, FeedExecution.Status.FAILED, null);
+        final List<TransactionSynchronization> second = takeSynchronizations();
+
+        // The later version commits first, the copy cannot apply it without the earlier one
+        commit(second);
+        commit(first);
+        when(rollupRepository.findById(1L)).thenReturn(Optional.of(rollup(12, 9, 3, 900, 9, 7)));
+
+        assertThat(statsService.getStats(1L).getTotalExecutions()).isEqualTo(12);
+        verify(rollupRepository, times(2)).findById(1L);
+    }
+
+    @Test
+    void keepsACopyThatWasReadWithTheChange() {
+        // Read after the change was made, so it already includes version 6
+        when(rollupRepository.findById(1L)).thenReturn(Optional.of(rollup(11, 9, 2, 900, 9, 6)));
+        statsService.getStats(1L);
+        whenIncremented(1L, 6);
+
+        statsService.executionChanged(1L, null, null, FeedExecution.Status.SUCCESS, 100L);
+        commit(takeSynchronizations());
+
+        assertThat(statsService.getStats(1L).getTotalExecutions()).isEqualTo(11);
+        verify(rollupRepository, times(1)).findById(1L);
+    }
+
+    @Test
+    void ignoresChangesRolledBack() {
+        when(rollupRepository.findById(1L)).thenReturn(Optional.of(rollup(10, 8, 2, 800, 8, 5)));
+        statsService.getStats(1L);
+        whenIncremented(1L, 6);
+
+        statsService.executionChanged(1L, null, null, FeedExecution.Status.SUCCESS, 100L);
+        takeSynchronizations();
+
+        assertThat(statsService.getStats(1L).getTotalExecutions()).isEqualTo(10);
+    }
+
+    @Test
+    void rebuildsAMissingRowFromTheHistory() {
+        final FeedExecutionStatsRollup created = rollup(0, 0, 0, 0, 0, -1);
+        when(rollupRepository.findByIdForUpdate(1L)).thenReturn(Optional.empty(), Optional.of(created));
+        when(rollupRepository.insertEmpty(eq(1L), any())).thenThrow(new DataIntegrityViolationException("Duplicate key"));
+        final List<FeedExecutionRepository.StatusSummary> summaries = List.of(
+                summary(FeedExecution.Status.SUCCESS, 3, 600L, 3),
+                summary(FeedExecution.Status.FAILED, 1, null, 0));
+        when(feedExecutionRepository.summarizeByFeedId(1L)).thenReturn(summaries);
+
+        // No row to increment, the row created concurrently is locked and rebuilt instead
+        statsService.executionChanged(1L, null, null, FeedExecution.Status.SUCCESS, 200L);
+
+        assertThat(created.getTotalExecutions()).isEqualTo(4);
+        assertThat(created.getSuccessfulExecutions()).isEqualTo(3);
+        assertThat(created.getFailedExecutions()).isEqualTo(1);
+        assertThat(created.getSuccessDurationMillis()).isEqualTo(600);
+        assertThat(created.getTimedSuccessfulExecutions()).isEqualTo(3);
+        assertThat(created.getVersion()).isZero();
+        verify(rollupRepository).insertEmpty(eq(1L), any());
+        verify(rollupRepository, times(2)).findByIdForUpdate(1L);
+    }
+
+    private void whenIncremented(final Long feedId, final long version) {
+        when(rollupRepository.increment(eq(feedId), anyLong(), anyLong(), anyLong(), anyLong(), anyLong(), any()))
+                .thenReturn(1);
+        when(rollupRepository.findVersion(feedId)).thenReturn(version);
+    }
+
+    /**
+     * End the current transaction without committing it, and start the next one
+     */
+    private static List<TransactionSynchronization> takeSynchronizations() {
+        final List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        TransactionSynchronizationManager.initSynchronization();
+        return synchronizations;
+    }
+
+    private static void commit(final List<TransactionSynchronization> synchronizations) {
+        synchronizations.forEach(TransactionSynchronization::afterCommit);
+    }
+
+    private static FeedExecutionStatsRollup rollup(final long total, final long successful, final long failed,
+                                                   final long durationMillis, final long timed, final long version) {
+        final FeedExecutionStatsRollup rollup = new FeedExecutionStatsRollup();
+        rollup.setFeedId(1L);
+        rollup.setTotalExecutions(total);
+        rollup.setSuccessfulExecutions(successful);
+        rollup.setFailedExecutions(failed);
+        rollup.setSuccessDurationMillis(durationMillis);
+        rollup.setTimedSuccessfulExecutions(timed);
+        rollup.setVersion(version);
+        rollup.setUpdatedAt(LocalDateTime.now());
+        return rollup;
+    }
+
+    private static FeedExecutionRepository.StatusSummary summary(final FeedExecution.Status status, final long executions,
+                                                                 final Long durationMillis, final long timed) {
+        final FeedExecutionRepository.StatusSummary summary = mock(FeedExecutionRepository.StatusSummary.class);
+        when(summary.getStatus()).thenReturn(status);
+        when(summary.getExecutions()).thenReturn(executions);
+        when(summary.getDurationMillis()).thenReturn(durationMillis);
+        when(summary.getTimedExecutions()).thenReturn(timed);
+        return summary;
+    }
+
+}
@@ -0,0 +1,84 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+
+
+/**
+ * Measures how long persisting the history of an execution takes for growing log sizes.
+ * The name keeps it out of the regular test run, run it with
+ * {@code ./mvnw test -Dtest=HistoryPersistenceBenchmark} and read the results from the log.
+ * Add {@code -Dapp.feeds.history.log-storage=CHUNKED} to measure the compressed log storage.
+ */
+// The BY API is never called, its settings only need to resolve
+@SpringBootTest(properties = {"app.data.initialize=false", "app.feeds.scheduler.enabled=false",
+        "by.api.url=http://localhost", "by.api.user=benchmark", "by.api.pass=benchmark",
+        "by.api.timeout.connect=1000", "by.api.timeout.request=1000", "by.api.category=benchmark"})
+class HistoryPersistenceBenchmark {
+
+    private static final Logger logger = LoggerFactory.getLogger(HistoryPersistenceBenchmark.class);
+
+    private static final int STAGES = 5;
+
+    @Autowired
+    private FeedRepository feedRepository;
+
+    @Autowired
+    private FeedExecutionHistoryService executionHistoryService;
+
+    @Value("${app.benchmark.history.log-lines:10,1000,100000}")
+    private List<Integer> logLines;
+
+    @Value("${app.benchmark.history.runs:3}")
+    private int runs;
+
+    @Test
+    void persistExecutionHistory() {
+        final Feed feed = new Feed();
+        feed.setName("History Persistence Benchmark");
+        feed.setType("BENCHMARK");
+        feed.setStatus("INACTIVE");
+        final Long feedId = feedRepository.save(feed).getId();
+
+        // Warm up the connection pool, statement caches and the JIT
+        for (int i = 0; i < 3; i++) {
+            executionHistoryService.persistExecution(feedId, null, createResult(1000));
+        }
+
+        for (int lines : logLines) {
+            long best = Long.MAX_VALUE;
+            long total = 0;
+            for (int run = 0; run < runs; run++) {
+                final ExecutionResult result = createResult(lines);
+                final long start = System.nanoTime();
+                executionHistoryService.persistExecution(feedId, null, result);
+                final long elapsed = System.nanoTime() - start;
+                best = Math.min(best, elapsed);
+                total += elapsed;
+            }
+            logger.info("Persisted {} stages with {} log lines - best {}ms, mean {}ms, {} rows/s",
+                    STAGES, lines, best / 1_000_000, total / runs / 1_000_000,
+                    (long) ((lines + STAGES) / (best / 1e9)));
+        }
+    }
+
+    private ExecutionResult createResult(final int lines) {
+        final ExecutionResult result = new ExecutionResult();
+        result.info("Benchmark execution with {} log lines", lines);
+        for (int stage = 0; stage < STAGES; stage++) {
+            result.startStage("Stage " + (stage + 1), "Benchmark stage", null);
+            for (int line = stage; line < lines; line += STAGES) {
+                result.info("Processed batch {} - {} records", line, 100);
+            }
+            result.completeCurrentStage();
+        }
+        result.setSuccess();
+        return result;
+    }
+
+}
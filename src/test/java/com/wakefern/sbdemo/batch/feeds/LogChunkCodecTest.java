@@ -0,0 +1,139 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class LogChunkCodecTest {
+
+    @Test
+    void roundTripsLevelsTimestampsAndMessages() {
+        final List<LogEvent> events = List.of(
+                new LogEvent(LogEvent.Level.INFO, 0, "Reading {} records", new Object[] {42}),
+                new LogEvent(LogEvent.Level.WARN, 0, "Store {} is missing", new Object[] {"0107"}),
+                new LogEvent(LogEvent.Level.ERROR, 1, "Failed: {}", new Object[] {"timeout"}));
+
+        final List<FeedExecutionLog> logs = LogChunkCodec.decode(chunk(events, events.get(0).getTimestamp()));
+
+        assertThat(logs).hasSize(3);
+        for (int i = 0; i < events.size(); i++) {
+            assertThat(logs.get(i).getLogLevel()).isEqualTo(events.get(i).getLevel().name());
+            assertThat(logs.get(i).getTimestamp()).isEqualTo(events.get(i).getTimestamp());
+            assertThat(logs.get(i).getMessage()).isEqualTo(events.get(i).format());
+            assertThat(logs.get(i).getExecutionId()).isEqualTo(7L);
+            assertThat(logs.get(i).getStageId()).isEqualTo(11L);
+        }
+    }
+
+    @Test
+    void appendsEventsToAChunk() {
+        final List<LogEvent> first = List.of(
+                new LogEvent(LogEvent.Level.INFO, 0, "Reading {} records", new Object[] {42}),
+                new LogEvent(LogEvent.Level.WARN, 0, "Store {} is missing", new Object[] {"0107"}));
+        final List<LogEvent> more = List.of(new LogEvent(LogEvent.Level.ERROR, 0, "Failed: {}", new Object[] {"timeout"}));
+        final FeedExecutionLogChunk chunk = chunk(first, first.get(0).getTimestamp());
+
+        chunk.setData(LogChunkCodec.append(chunk, more));
+
+        final List<FeedExecutionLog> logs = LogChunkCodec.decode(chunk);
+        assertThat(logs).extracting(FeedExecutionLog::getMessage)
+                .containsExactly(first.get(0).format(), first.get(1).format(), more.get(0).format());
+        assertThat(logs).extracting(FeedExecutionLog::getLogLevel).containsExactly("INFO", "WARN", "ERROR");
+        assertThat(logs.get(2).getTimestamp()).isEqualTo(more.get(0).getTimestamp());
+    }
+
+    @Test
+    void roundTripsAnEmptyChunk() {
+        assertThat(LogChunkCodec.decode(chunk(List.of(), LocalDateTime.now()))).isEmpty();
+    }
+
+    @Test
+    void roundTripsLongAndMultiByteMessages() {
+        final String longMessage = "x".repeat(100_000);
+        final String multiByte = "Prix unitaire 12,50 \u20ac, magasin Z\u00fcrich \u6771\u4eac";
+        final List<LogEvent> events = List.of(
+                new LogEvent(LogEvent.Level.INFO, 0, longMessage, null),
+                new LogEvent(LogEvent.Level.INFO, 0, multiByte, null),
+                new LogEvent(LogEvent.Level.INFO, 0, "", null));
+
+        final List<FeedExecutionLog> logs = LogChunkCodec.decode(chunk(events, events.get(0).getTimestamp()));
+
+        assertThat(logs).extracting(FeedExecutionLog::getMessage)
+                .containsExactly(events.get(0).format(), events.get(1).format(), events.get(2).format());
+    }
+
+    @Test
+    void roundTripsTimestampsBeforeTheFirstTimestamp() {
+        final List<LogEvent> events = List.of(new LogEvent(LogEvent.Level.INFO, 0, "early", null));
+        // The chunk's first timestamp is only a base, a later one makes the offset negative
+        final LocalDateTime first = events.get(0).getTimestamp().plusDays(3);
+
+        final List<FeedExecutionLog> logs = LogChunkCodec.decode(chunk(events, first));
+
+        assertThat(logs.get(0).getTimestamp()).isEqualTo(events.get(0).getTimestamp());
+    }
+
+    @Test
+    void roundTripsManyLines() {
+        final List<LogEvent> events = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            events.add(new LogEvent(LogEvent.Level.values()[i % 3], 0, "Line {}", new Object[] {i}));
+        }
+
+        final List<FeedExecutionLog> logs = LogChunkCodec.decode(chunk(events, events.get(0).getTimestamp()));
+
+        assertThat(logs).hasSize(5_000);
+        assertThat(logs.get(4_999).getMessage()).isEqualTo(events.get(4_999).format());
+        assertThat(logs.get(4_999).getTimestamp()).isEqualTo(events.get(4_999).getTimestamp());
+    }
+
+    @Test
+    void rejectsAnUnknownVersion() {
+        final FeedExecutionLogChunk chunk = chunk(List.of(new LogEvent(LogEvent.Level.INFO, 0, "line", null)),
+                LocalDateTime.now());
+        chunk.getData()[0] = 99;
+
+        assertThatThrownBy(() -> LogChunkCodec.decode(chunk))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Unsupported log chunk format");
+    }
+
+    @Test
+    void rejectsAnEmptyChunk() {
+        final FeedExecutionLogChunk chunk = chunk(List.of(), LocalDateTime.now());
+        chunk.setData(new byte[0]);
+
+        assertThatThrownBy(() -> LogChunkCodec.decode(chunk)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void rejectsATruncatedChunk() {
+        final List<LogEvent> events = List.of(
+                new LogEvent(LogEvent.Level.INFO, 0, "first line of the chunk", null),
+                new LogEvent(LogEvent.Level.INFO, 0, "second line of the chunk", null));
+        final FeedExecutionLogChunk chunk = chunk(events, events.get(0).getTimestamp());
+        chunk.setData(Arrays.copyOf(chunk.getData(), chunk.getData().length / 2));
+
+        assertThatThrownBy(() -> LogChunkCodec.decode(chunk))
+                .isInstanceOf(UncheckedIOException.class)
+                .hasMessageContaining("Corrupt log chunk");
+    }
+
+    private static FeedExecutionLogChunk chunk(final List<LogEvent> events, final LocalDateTime first) {
+        final FeedExecutionLogChunk chunk = new FeedExecutionLogChunk();
+        chunk.setId(3L);
+        chunk.setExecutionId(7L);
+        chunk.setStageId(11L);
+        chunk.setFirstTimestamp(first);
+        chunk.setLineCount(events.size());
+        chunk.setData(LogChunkCodec.encode(events, first));
+        return chunk;
+    }
+
+}
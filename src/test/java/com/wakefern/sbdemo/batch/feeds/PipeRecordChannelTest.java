@@ -0,0 +1,130 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+@Timeout(10)
+class PipeRecordChannelTest {
+
+    @Test
+    void rejectsANonPositiveCapacity() {
+        assertThatThrownBy(() -> new PipeRecordChannel<String>(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void deliversBatchesInOrderThenTheEndOfTheStream() throws InterruptedException {
+        final PipeRecordChannel<String> channel = new PipeRecordChannel<>(4);
+        channel.send(List.of("a", "b"));
+        channel.send(List.of("c"));
+        channel.complete();
+
+        assertThat(channel.getSentCount()).isEqualTo(3);
+        assertThat(channel.receive()).containsExactly("a", "b");
+        assertThat(channel.receive()).containsExactly("c");
+        assertThat(channel.receive()).isEmpty();
+        // Drained, further receives keep reporting the end of the stream
+        assertThat(channel.receive()).isEmpty();
+    }
+
+    @Test
+    void copiesTheBatchesItIsSent() throws InterruptedException {
+        final PipeRecordChannel<String> channel = new PipeRecordChannel<>(1);
+        final List<String> batch = new ArrayList<>(List.of("a"));
+        channel.send(batch);
+        batch.clear();
+
+        assertThat(channel.receive()).containsExactly("a");
+    }
+
+    @Test
+    void ignoresEmptyBatches() throws InterruptedException {
+        final PipeRecordChannel<String> channel = new PipeRecordChannel<>(1);
+        channel.send(List.of());
+
+        assertThat(channel.getBufferedBatches()).isZero();
+        assertThat(channel.getSentCount()).isZero();
+    }
+
+    @Test
+    void rejectsSendsOnceCompleted() {
+        final PipeRecordChannel<String> channel = new PipeRecordChannel<>(1);
+        channel.complete();
+
+        assertThatThrownBy(() -> channel.send(List.of("a"))).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void blocksTheProducerWhileTheBufferIsFull() throws InterruptedException {
+        final PipeRecordChannel<String> channel = new PipeRecordChannel<>(1);
+        channel.send(List.of("a"));
+        final Thread producer = new Thread(() -> {
+            try {
+                channel.send(List.of("b"));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        producer.join(300);
+        assertThat(producer.isAlive()).isTrue();
+        assertThat(channel.getBufferedBatches()).isEqualTo(1);
+
+        assertThat(channel.receive()).containsExactly("a");
+        producer.join();
+        assertThat(channel.receive()).containsExactly("b");
+    }
+
+    @Test
+    void abortReleasesABlockedConsumer() throws InterruptedException {
+        final PipeRecordChannel<String> channel = new PipeRecordChannel<>(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final Thread consumer = new Thread(() -> {
+            try {
+                channel.receive();
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        consumer.start();
+        consumer.join(200);
+
+        channel.abort();
+        consumer.join(2_000);
+
+        assertThat(consumer.isAlive()).isFalse();
+        assertThat(failure.get()).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void abortReleasesABlockedProducer() throws InterruptedException {
+        final PipeRecordChannel<String> channel = new PipeRecordChannel<>(1);
+        channel.send(List.of("a"));
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final Thread producer = new Thread(() -> {
+            try {
+                // Aborting clears the buffer, so keep sending until the abort is noticed
+                for (int i = 0; i < 1_000; i++) {
+                    channel.send(List.of("b"));
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        producer.start();
+        producer.join(200);
+
+        channel.abort();
+        producer.join(2_000);
+
+        assertThat(producer.isAlive()).isFalse();
+        assertThat(failure.get()).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(channel::receive).isInstanceOf(IllegalStateException.class);
+    }
+
+}
@@ -0,0 +1,236 @@
+package com.wakefern.sbdemo.batch.feeds;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+@Timeout(30)
+class StageSchedulerTest {
+
+    private final StageScheduler scheduler = new StageScheduler(2, Duration.ofSeconds(10));
+    private final ExecutionResult result = new ExecutionResult();
+    private final List<String> events = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    void shutdown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    void runsStagesAfterTheirDependencies() throws InterruptedException {
+        scheduler.run(List.of(
+                new TestStage("load", List.of(), recording("load")),
+                new TestStage("validate", List.of("load"), recording("validate")),
+                new TestStage("price", List.of("load"), recording("price")),
+                new TestStage("publish", List.of("validate", "price"), recording("publish"))), Map.of(), result);
+
+        assertThat(events).hasSize(8);
+        assertThat(events.get(0)).isEqualTo("start load");
+        assertThat(events.get(1)).isEqualTo("end load");
+        assertThat(events.indexOf("start publish")).isGreaterThan(events.indexOf("end validate"));
+        assertThat(events.indexOf("start publish")).isGreaterThan(events.indexOf("end price"));
+        assertThat(result.getStages()).extracting(ExecutionStage::getName)
+                .containsExactly("load", "validate", "price", "publish");
+        assertThat(result.getStages()).extracting(ExecutionStage::getStatus)
+                .containsOnly(ExecutionStage.Status.SUCCESS);
+    }
+
+    @Test
+    void runsIndependentStagesConcurrently() throws InterruptedException {
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        final StageBody meet = (parameters, execution, cancellation) -> {
+            bothStarted.countDown();
+            if (!bothStarted.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("The other stage did not start");
+            }
+        };
+
+        scheduler.run(List.of(new TestStage("left", List.of(), meet), new TestStage("right", List.of(), meet)),
+                Map.of(), result);
+
+        assertThat(result.getStages()).extracting(ExecutionStage::getStatus)
+                .containsOnly(ExecutionStage.Status.SUCCESS);
+    }
+
+    @Test
+    void stopsStartingStagesOnceOneFailed() throws InterruptedException {
+        scheduler.run(List.of(
+                new TestStage("load", List.of(), (parameters, execution, cancellation) -> {
+                    throw new IllegalStateException("No input file");
+                }),
+                new TestStage("publish", List.of("load"), recording("publish"))), Map.of(), result);
+
+        assertThat(events).isEmpty();
+        assertThat(result.getStages().get(0).getStatus()).isEqualTo(ExecutionStage.Status.FAILED);
+        assertThat(result.getStages().get(0).getError()).isEqualTo("No input file");
+        assertThat(result.getStages().get(1).getStatus()).isEqualTo(ExecutionStage.Status.PENDING);
+    }
+
+    @Test
+    void rejectsInvalidGraphsBeforeRegisteringStages() {
+        assertThatThrownBy(() -> scheduler.run(List.of(
+                new TestStage("load", List.of(), recording("load")),
+                new TestStage("load", List.of(), recording("load"))), Map.of(), result))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Duplicate stage name");
+        assertThatThrownBy(() -> scheduler.run(List.of(
+                new TestStage("publish", List.of("load"), recording("publish"))), Map.of(), result))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("unknown stage 'load'");
+        assertThatThrownBy(() -> scheduler.run(List.of(
+                new TestStage("first", List.of("second"), recording("first")),
+                new TestStage("second", List.of("first"), recording("second"))), Map.of(), result))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("cycle");
+
+        assertThat(result.getStages()).isEmpty();
+        assertThat(events).isEmpty();
+    }
+
+    @Test
+    void failsAStageThatExceedsItsTimeout() throws InterruptedException {
+        final long started = System.nanoTime();
+
+        scheduler.run(List.of(new TestStage("slow", List.of(), (parameters, execution, cancellation) -> Thread.sleep(60_000))),
+                Map.of("slow", Map.of("timeout", "PT0.2S")), result);
+
+        assertThat(Duration.ofNanos(System.nanoTime() - started)).isLessThan(Duration.ofSeconds(10));
+        assertThat(result.getStages().get(0).getStatus()).isEqualTo(ExecutionStage.Status.FAILED);
+        assertThat(result.getStages().get(0).getError()).contains("timed out");
+    }
+
+    @Test
+    void rejectsAnInvalidTimeout() throws InterruptedException {
+        scheduler.run(List.of(new TestStage("load", List.of(), recording("load"))),
+                Map.of("load", Map.of("timeout", "ten seconds")), result);
+
+        assertThat(events).isEmpty();
+        assertThat(result.getStages().get(0).getStatus()).isEqualTo(ExecutionStage.Status.FAILED);
+        assertThat(result.getStages().get(0).getError()).contains("Invalid stage timeout");
+    }
+
+    @Test
+    void cancelsRunningStagesWhenTheExecutionIsCancelled() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final Thread canceller = new Thread(() -> {
+            try {
+                if (started.await(5, TimeUnit.SECONDS)) {
+                    result.getCancellationToken().cancel("Cancelled on request");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        canceller.start();
+
+        scheduler.run(List.of(
+                new TestStage("slow", List.of(), (parameters, execution, cancellation) -> {
+                    started.countDown();
+                    Thread.sleep(60_000);
+                }),
+                new TestStage("publish", List.of("slow"), recording("publish"))), Map.of(), result);
+        canceller.join();
+
+        assertThat(result.getStages().get(0).getStatus()).isEqualTo(ExecutionStage.Status.CANCELLED);
+        assertThat(result.getStages().get(1).getStatus()).isEqualTo(ExecutionStage.Status.PENDING);
+        assertThat(events).isEmpty();
+    }
+
+    @Test
+    void streamsThroughAPipeEvenWithASingleStageThread() throws InterruptedException {
+        final StageScheduler singleThreaded = new StageScheduler(1, Duration.ofSeconds(10));
+        final PipeRecordChannel<Integer> pipe = new PipeRecordChannel<>(1);
+        result.openChannel("numbers", pipe);
+        final AtomicLong sum = new AtomicLong();
+        try {
+            singleThreaded.run(List.of(
+                    new TestStage("produce", List.of(), (parameters, execution, cancellation) -> {
+                        for (int i = 1; i <= 100; i++) {
+                            pipe.send(List.of(i));
+                        }
+                        pipe.complete();
+                    }),
+                    new TestStage("consume", List.of(), List.of("produce"), (parameters, execution, cancellation) -> {
+                        List<Integer> batch;
+                        while (!(batch = pipe.receive()).isEmpty()) {
+                            batch.forEach(sum::addAndGet);
+                        }
+                    })), Map.of(), result);
+        } finally {
+            singleThreaded.shutdown();
+        }
+
+        assertThat(sum.get()).isEqualTo(5050);
+        assertThat(result.getStages()).extracting(ExecutionStage::getStatus)
+                .containsOnly(ExecutionStage.Status.SUCCESS);
+    }
+
+    private StageBody recording(final String name) {
+        return (parameters, execution, cancellation) -> {
+            events.add("start " + name);
+            events.add("end " + name);
+        };
+    }
+
+    @FunctionalInterface
+    private interface StageBody {
+        void run(Map<String, String> parameters, ExecutionResult result, CancellationToken cancellation) throws Exception;
+    }
+
+    private static final class TestStage implements StageExecutor {
+
+        private final String name;
+        private final List<String> dependencies;
+        private final List<String> streamingDependencies;
+        private final StageBody body;
+
+        TestStage(final String name, final List<String> dependencies, final StageBody body) {
+            this(name, dependencies, List.of(), body);
+        }
+
+        TestStage(final String name, final List<String> dependencies, final List<String> streamingDependencies,
+                  final StageBody body) {
+            this.name = name;
+            this.dependencies = dependencies;
+            this.streamingDependencies = streamingDependencies;
+            this.body = body;
+        }
+
+        @Override
+        public void execute(final Map<String, String> parameters, final ExecutionResult result,
+                            final CancellationToken cancellation) throws Exception {
+            body.run(parameters, result, cancellation);
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getDescription() {
+            return "Test stage " + name;
+        }
+
+        @Override
+        public List<String> getDependencies() {
+            return dependencies;
+        }
+
+        @Override
+        public List<String> getStreamingDependencies() {
+            return streamingDependencies;
+        }
+    }
+
+}
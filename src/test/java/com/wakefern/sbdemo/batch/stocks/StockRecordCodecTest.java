@@ -0,0 +1,52 @@
+package com.wakefern.sbdemo.batch.stocks;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class StockRecordCodecTest {
+
+    private final StockRecordCodec codec = new StockRecordCodec();
+
+    @Test
+    void roundTripsAParsedRecord() {
+        final StockRecord decoded = codec.decode(codec.encode(new StockRecord(107, "SKU-00042", 12, 1_999, 3_141_592_653L)));
+
+        assertThat(decoded.isParsed()).isTrue();
+        assertThat(decoded.getStoreId()).isEqualTo(107);
+        assertThat(decoded.getSku()).isEqualTo("SKU-00042");
+        assertThat(decoded.getQuantity()).isEqualTo(12);
+        assertThat(decoded.getUnitCostCents()).isEqualTo(1_999);
+        assertThat(decoded.getExtendedValueCents()).isEqualTo(12 * 1_999);
+        assertThat(decoded.getChecksum()).isEqualTo(3_141_592_653L);
+    }
+
+    @Test
+    void roundTripsEdgeValues() {
+        final StockRecord decoded = codec.decode(codec.encode(
+                new StockRecord(Integer.MAX_VALUE, "", Integer.MIN_VALUE, Long.MAX_VALUE, 0xFFFFFFFFL)));
+
+        assertThat(decoded.getStoreId()).isEqualTo(Integer.MAX_VALUE);
+        assertThat(decoded.getSku()).isEmpty();
+        assertThat(decoded.getQuantity()).isEqualTo(Integer.MIN_VALUE);
+        assertThat(decoded.getUnitCostCents()).isEqualTo(Long.MAX_VALUE);
+        assertThat(decoded.getChecksum()).isEqualTo(0xFFFFFFFFL);
+    }
+
+    @Test
+    void roundTripsAnUnparseableRecord() {
+        final StockRecord decoded = codec.decode(codec.encode(StockRecord.unparseable("Line 12: expected 4 fields, got 2")));
+
+        assertThat(decoded.isParsed()).isFalse();
+        assertThat(decoded.getError()).isEqualTo("Line 12: expected 4 fields, got 2");
+    }
+
+    @Test
+    void keepsAnUnparseableRecordOnOneLine() {
+        final String encoded = codec.encode(StockRecord.unparseable("Bad line:\nA,B"));
+
+        assertThat(encoded).doesNotContain("\n");
+        assertThat(codec.decode(encoded).getError()).isEqualTo("Bad line: A,B");
+    }
+
+}
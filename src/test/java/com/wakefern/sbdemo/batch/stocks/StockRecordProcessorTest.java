@@ -0,0 +1,78 @@
+package com.wakefern.sbdemo.batch.stocks;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
+import org.junit.jupiter.api.Test;
+
+class StockRecordProcessorTest {
+
+    private final StockRecordProcessor processor = new StockRecordProcessor();
+
+    @Test
+    void parsesAndNormalizesALine() {
+        final StockRecord record = transform(" 107 , sku-42 , 12 , 19.99 ");
+
+        assertThat(record.isParsed()).isTrue();
+        assertThat(record.getStoreId()).isEqualTo(107);
+        assertThat(record.getSku()).isEqualTo("SKU00000042");
+        assertThat(record.getQuantity()).isEqualTo(12);
+        assertThat(record.getUnitCostCents()).isEqualTo(1_999);
+    }
+
+    @Test
+    void parsesUnitCostsIntoCents() {
+        assertThat(cents("19")).isEqualTo(1_900);
+        assertThat(cents("19.5")).isEqualTo(1_950);
+        assertThat(cents("19.05")).isEqualTo(1_905);
+        assertThat(cents("0.07")).isEqualTo(7);
+        assertThat(cents("19.999")).isEqualTo(1_999);
+        assertThat(cents("19.")).isEqualTo(1_900);
+    }
+
+    @Test
+    void keepsTheSignOfNegativeUnitCosts() {
+        assertThat(cents("-1")).isEqualTo(-100);
+        assertThat(cents("-1.50")).isEqualTo(-150);
+        assertThat(cents("-0.50")).isEqualTo(-50);
+        assertThat(cents("-0.05")).isEqualTo(-5);
+        assertThat(cents("-0.0")).isZero();
+    }
+
+    @Test
+    void rejectsMalformedUnitCosts() {
+        assertThat(transform("107,SKU-42,12,1.-5").isParsed()).isFalse();
+        assertThat(transform("107,SKU-42,12,1.5x").isParsed()).isFalse();
+        assertThat(transform("107,SKU-42,12,abc").isParsed()).isFalse();
+        assertThat(transform("107,SKU-42,12,.50").isParsed()).isFalse();
+        assertThat(transform("107,SKU-42,12").getError()).isEqualTo("Expected 4 fields but found 3");
+    }
+
+    @Test
+    void processesChunksInOrderInEitherMode() {
+        final List<String> lines = List.of("1,A-1,1,1.00", "2,A-2,2,-0.50", "3,A-3,3,bad", "4,A-4,4,4.25", "5,A-5,5,5");
+
+        final List<StockRecordProcessor.ChunkResult> sequential = processor.processSequential(lines, 2);
+        final List<StockRecordProcessor.ChunkResult> parallel = processor.processParallel(lines, 2, ForkJoinPool.commonPool());
+
+        assertThat(sequential).hasSize(3);
+        for (List<StockRecordProcessor.ChunkResult> results : List.of(sequential, parallel)) {
+            assertThat(results).extracting(StockRecordProcessor.ChunkResult::getIndex).containsExactly(0, 1, 2);
+            assertThat(results.get(0).getRecords().get(1).getUnitCostCents()).isEqualTo(-50);
+            assertThat(results.get(1).getRecords().get(0).isParsed()).isFalse();
+        }
+    }
+
+    private long cents(final String unitCost) {
+        final StockRecord record = transform("107,SKU-42,1," + unitCost);
+        assertThat(record.isParsed()).isTrue();
+        return record.getUnitCostCents();
+    }
+
+    private StockRecord transform(final String line) {
+        return processor.transform(line, new CRC32());
+    }
+
+}